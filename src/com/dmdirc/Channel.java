@@ -27,8 +27,8 @@ import com.dmdirc.actions.CoreActionType;
 import com.dmdirc.commandparser.CommandManager;
 import com.dmdirc.commandparser.CommandType;
 import com.dmdirc.commandparser.parsers.ChannelCommandParser;
+import com.dmdirc.config.ConfigHandle;
 import com.dmdirc.config.ConfigManager;
-import com.dmdirc.interfaces.ConfigChangeListener;
 import com.dmdirc.interfaces.NicklistListener;
 import com.dmdirc.interfaces.TopicChangeListener;
 import com.dmdirc.parser.interfaces.ChannelClientInfo;
@@ -55,7 +55,7 @@ import java.util.Map;
  * callbacks for channel events from the parser, maintains the corresponding
  * ChannelWindow, and handles user input for the channel.
  */
-public class Channel extends MessageTarget implements ConfigChangeListener {
+public class Channel extends MessageTarget {
 
     /** The parser's pChannel class. */
     private ChannelInfo channelInfo;
@@ -76,13 +76,13 @@ public class Channel extends MessageTarget implements ConfigChangeListener {
     private boolean onChannel;
 
     /** Whether we should send WHO requests for this channel. */
-    private volatile boolean sendWho;
+    private final ConfigHandle<Boolean> sendWho;
 
     /** Whether we should show mode prefixes in text. */
-    private volatile boolean showModePrefix;
+    private final ConfigHandle<Boolean> showModePrefix;
 
     /** Whether we should show colours in nicks. */
-    private volatile boolean showColours;
+    private final ConfigHandle<Boolean> showColours;
 
     /**
      * Creates a new instance of Channel.
@@ -108,15 +108,12 @@ public class Channel extends MessageTarget implements ConfigChangeListener {
         channelInfo = newChannelInfo;
         server = newServer;
 
-        getConfigManager().addChangeListener("channel", this);
-        getConfigManager().addChangeListener("ui", "shownickcoloursintext", this);
-
         topics = new RollingList<Topic>(getConfigManager().getOptionInt("channel",
                 "topichistorysize"));
 
-        sendWho = getConfigManager().getOptionBool("channel", "sendwho");
-        showModePrefix = getConfigManager().getOptionBool("channel", "showmodeprefix");
-        showColours = getConfigManager().getOptionBool("ui", "shownickcoloursintext");
+        sendWho = getConfigManager().bindBool("channel", "sendwho");
+        showModePrefix = getConfigManager().bindBool("channel", "showmodeprefix");
+        showColours = getConfigManager().bindBool("ui", "shownickcoloursintext");
 
         tabCompleter = new TabCompleter(server.getTabCompleter());
         tabCompleter.addEntries(TabCompletionType.COMMAND,
@@ -367,7 +364,7 @@ public class Channel extends MessageTarget implements ConfigChangeListener {
      * to send a who request.
      */
     public void checkWho() {
-        if (onChannel && sendWho) {
+        if (onChannel && sendWho.get()) {
             channelInfo.sendWho();
         }
     }
@@ -475,25 +472,13 @@ public class Channel extends MessageTarget implements ConfigChangeListener {
      * if there are no (known) modes.
      */
     private String getModes(final ChannelClientInfo channelClient) {
-        if (channelClient == null || !showModePrefix) {
+        if (channelClient == null || !showModePrefix.get()) {
             return "";
         } else {
             return channelClient.getImportantModePrefix();
         }
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public void configChanged(final String domain, final String key) {
-        if ("sendwho".equals(key)) {
-            sendWho = getConfigManager().getOptionBool("channel", "sendwho");
-        } else if ("showmodeprefix".equals(key)) {
-            showModePrefix = getConfigManager().getOptionBool("channel", "showmodeprefix");
-        } else if ("shownickcoloursintext".equals(key)) {
-            showColours = getConfigManager().getOptionBool("ui", "shownickcoloursintext");
-        }
-    }
-
     /**
      * Returns a string[] containing the nickname/ident/host of a channel
      * client.
@@ -515,7 +500,7 @@ public class Channel extends MessageTarget implements ConfigChangeListener {
             client.getClient().getHostname(),
         };
 
-        if (showColours) {
+        if (showColours.get()) {
             final Map<?, ?> map = client.getMap();
 
             if (map.containsKey(ChannelClientProperty.TEXT_FOREGROUND)) {
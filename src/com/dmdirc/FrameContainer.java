@@ -22,27 +22,29 @@
 
 package com.dmdirc;
 
-import com.dmdirc.actions.ActionManager;
-import com.dmdirc.actions.CoreActionType;
 import com.dmdirc.config.ConfigManager;
 import com.dmdirc.interfaces.ConfigChangeListener;
 import com.dmdirc.interfaces.FrameCloseListener;
 import com.dmdirc.interfaces.FrameInfoListener;
 import com.dmdirc.interfaces.NotificationListener;
+import com.dmdirc.logger.ErrorLevel;
+import com.dmdirc.logger.Logger;
 import com.dmdirc.ui.WindowManager;
 import com.dmdirc.ui.interfaces.Window;
 import com.dmdirc.ui.messages.Formatter;
 import com.dmdirc.ui.messages.IRCDocument;
+import com.dmdirc.ui.messages.ScrollbackStore;
 import com.dmdirc.ui.messages.Styliser;
 import com.dmdirc.util.ListenerList;
 
 import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -212,11 +214,78 @@ public abstract class FrameContainer {
         synchronized (documentSync) {
             if (document == null) {
                 document = new IRCDocument(getConfigManager(), getStyliser());
+
+                if (getConfigManager().hasOptionBool("ui", "persistentScrollback")
+                        && getConfigManager().getOptionBool("ui", "persistentScrollback")) {
+                    openScrollback(document);
+                }
             }
             return document;
         }
     }
 
+    /**
+     * Opens this container's persistent scrollback store and attaches it to
+     * the specified document.
+     *
+     * @param document The document to attach the store to
+     */
+    private void openScrollback(final IRCDocument document) {
+        final Server server = getServer();
+        final String path;
+
+        if (server == null) {
+            path = sanitiseFileName(getName());
+        } else if (server == this) {
+            path = sanitiseFileName(getName()) + File.separator + "!server";
+        } else {
+            path = sanitiseFileName(server.getName()) + File.separator
+                    + sanitiseFileName(getName());
+        }
+
+        try {
+            final ScrollbackStore store = new ScrollbackStore(new File(
+                    Main.getConfigDir() + "scrollback" + File.separator + path));
+            final Integer maxSize = getConfigManager().getOptionInt("ui",
+                    "persistentScrollbackSize", false);
+
+            if (maxSize != null && maxSize > 0) {
+                store.setMaxSize(maxSize * 1024L);
+            }
+
+            document.attachScrollback(store);
+        } catch (IOException ex) {
+            Logger.userError(ErrorLevel.LOW, "Unable to open scrollback for "
+                    + getName() + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Percent-encodes any characters in the specified name which may not be
+     * safe to use in a file name. The encoding is reversible, so distinct
+     * names always result in distinct file names.
+     *
+     * @param name The name to be sanitised
+     * @return A version of the name suitable for use as a file name
+     */
+    static String sanitiseFileName(final String name) {
+        final StringBuilder builder = new StringBuilder(name.length());
+
+        for (byte b : name.getBytes(Charset.forName("UTF-8"))) {
+            final char c = (char) (b & 0xff);
+
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || "_#&!+-".indexOf(c) != -1
+                    || (c == '.' && builder.length() > 0)) {
+                builder.append(c);
+            } else {
+                builder.append(String.format("%%%02X", (int) c));
+            }
+        }
+
+        return builder.toString();
+    }
+
     /**
      * Retrieves the name of this container.
      *
@@ -288,6 +357,12 @@ public abstract class FrameContainer {
 
         windowClosing();
 
+        synchronized (documentSync) {
+            if (document != null) {
+                document.detachScrollback();
+            }
+        }
+
         WindowManager.getWindowManager().removeWindow(this);
     }
 
@@ -513,25 +588,22 @@ public abstract class FrameContainer {
      * @since 0.6.4
      */
     public void addLine(final String line, final Date timestamp) {
-        final List<String[]> lines = new LinkedList<String[]>();
-        for (final String myLine : line.split("\n")) {
-            if (timestamp != null) {
-                lines.add(new String[]{
-                    Formatter.formatMessage(getConfigManager(), "timestamp",
-                            timestamp),
-                    myLine,
-                });
-            } else {
-                lines.add(new String[]{
-                    myLine,
-                });
-            }
-
-            ActionManager.getActionManager().triggerEvent(
-                    CoreActionType.CLIENT_LINE_ADDED, null, this, myLine);
-        }
+        final LineBatch batch = new LineBatch(this);
+        batch.addLine(line, timestamp);
+        batch.commit();
+    }
 
-        getDocument().addText(lines);
+    /**
+     * Creates a new, empty, batch of lines for this container. Adding many
+     * lines via a batch is considerably cheaper than adding them
+     * individually, as the document and its listeners are only updated once
+     * when the batch is committed.
+     *
+     * @return A new line batch for this container
+     * @since 0.6.5
+     */
+    public LineBatch createLineBatch() {
+        return new LineBatch(this);
     }
 
     /**
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import com.dmdirc.actions.ActionManager;
+import com.dmdirc.actions.CoreActionType;
+import com.dmdirc.ui.messages.Formatter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Collects formatted lines for a {@link FrameContainer} so that they can be
+ * added to its document in one go. Committing a batch results in a single
+ * document mutation (and hence a single listener notification and trim),
+ * regardless of how many lines it contains.
+ * <p>
+ * In addition to the per-line {@link CoreActionType#CLIENT_LINE_ADDED}
+ * events, a single {@link CoreActionType#CLIENT_LINES_ADDED} event is
+ * raised for each committed batch, if anything is listening for it.
+ * <p>
+ * Batches are not thread safe, and should be used and committed by a single
+ * thread.
+ *
+ * @since 0.6.5
+ */
+public class LineBatch {
+
+    /** The container the lines are for. */
+    private final FrameContainer container;
+
+    /** The lines to be added to the document, including timestamps. */
+    private final List<String[]> lines = new ArrayList<String[]>();
+
+    /** The raw text of each line, used for action events. */
+    private final List<String> messages = new ArrayList<String>();
+
+    /** The timestamp most recently formatted. */
+    private Date lastTimestamp;
+
+    /** The formatted version of {@link #lastTimestamp}. */
+    private String lastFormattedTimestamp;
+
+    /**
+     * Creates a new line batch for the specified container.
+     *
+     * @param container The container the lines will be added to
+     */
+    public LineBatch(final FrameContainer container) {
+        this.container = container;
+    }
+
+    /**
+     * Formats a message and adds it to this batch.
+     *
+     * @param type The message type to use
+     * @param timestamp The timestamp to use for this line
+     * @param args The message's arguments
+     */
+    public void addLine(final String type, final Date timestamp,
+            final Object ... args) {
+        if (type != null && !type.isEmpty()) {
+            addLine(Formatter.formatMessage(container.getConfigManager(),
+                    type, args), timestamp);
+        }
+    }
+
+    /**
+     * Adds the specified raw line to this batch, without using a formatter.
+     * If the timestamp is <code>null</code>, no timestamp is added. Lines
+     * containing newlines are split into multiple lines.
+     *
+     * @param line The line to be added
+     * @param timestamp The timestamp to use for the line
+     */
+    public void addLine(final String line, final Date timestamp) {
+        for (final String myLine : line.split("\n")) {
+            if (timestamp == null) {
+                lines.add(new String[]{
+                    myLine,
+                });
+            } else {
+                lines.add(new String[]{
+                    formatTimestamp(timestamp),
+                    myLine,
+                });
+            }
+
+            messages.add(myLine);
+        }
+    }
+
+    /**
+     * Retrieves the number of lines currently in this batch.
+     *
+     * @return The number of lines in the batch
+     */
+    public int size() {
+        return lines.size();
+    }
+
+    /**
+     * Adds all lines in this batch to the container's document and raises
+     * the relevant action events. The batch is then emptied, and may be
+     * reused.
+     */
+    public void commit() {
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        for (String message : messages) {
+            ActionManager.getActionManager().triggerEvent(
+                    CoreActionType.CLIENT_LINE_ADDED, null, container, message);
+        }
+
+        if (ActionManager.getActionManager().hasHandlers(
+                CoreActionType.CLIENT_LINES_ADDED)) {
+            ActionManager.getActionManager().triggerEvent(
+                    CoreActionType.CLIENT_LINES_ADDED, null, container,
+                    messages.toArray(new String[messages.size()]));
+        }
+
+        container.getDocument().addText(lines);
+
+        lines.clear();
+        messages.clear();
+    }
+
+    /**
+     * Formats the specified timestamp, reusing the previous result if the
+     * timestamp hasn't changed.
+     *
+     * @param timestamp The timestamp to be formatted
+     * @return The formatted timestamp
+     */
+    private String formatTimestamp(final Date timestamp) {
+        if (!timestamp.equals(lastTimestamp)) {
+            lastFormattedTimestamp = Formatter.formatMessage(
+                    container.getConfigManager(), "timestamp", timestamp);
+            lastTimestamp = new Date(timestamp.getTime());
+        }
+
+        return lastFormattedTimestamp;
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits outgoing lines into chunks that fit within a maximum number of
+ * bytes when encoded in a specific character set.
+ * <p>
+ * Split points are found in a single pass by encoding each chunk directly
+ * into a reused buffer whose limit is the maximum line length; the encoder
+ * stops as soon as the next character would not fit. Surrogate pairs are
+ * always encoded as a unit, so they are never split across chunks.
+ *
+ * @since 0.6.5
+ */
+public class LineSplitter {
+
+    /** The charset used by this splitter. */
+    private final Charset charset;
+
+    /** The encoder used to measure chunks. */
+    private final CharsetEncoder encoder;
+
+    /** The buffer that chunks are encoded into. */
+    private ByteBuffer buffer = ByteBuffer.allocate(512);
+
+    /**
+     * Creates a new line splitter for the specified charset.
+     *
+     * @param charset The charset lines will be encoded with
+     */
+    public LineSplitter(final Charset charset) {
+        this.charset = charset;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Creates a new line splitter for the specified encoding. If the
+     * encoding is null or not supported, the platform's default charset
+     * is used instead.
+     *
+     * @param encoding The name of the encoding lines will be encoded with
+     * @return A line splitter for the specified encoding
+     */
+    public static LineSplitter forEncoding(final String encoding) {
+        Charset charset = Charset.defaultCharset();
+
+        if (encoding != null) {
+            try {
+                charset = Charset.forName(encoding);
+            } catch (IllegalCharsetNameException ex) {
+                // Use the default
+            } catch (UnsupportedCharsetException ex) {
+                // Use the default
+            }
+        }
+
+        return new LineSplitter(charset);
+    }
+
+    /**
+     * Retrieves the charset used by this splitter.
+     *
+     * @return This splitter's charset
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Splits the specified line into chunks that each encode to at most the
+     * specified number of bytes. The line is also split at any newline
+     * characters.
+     *
+     * @param line The line to be split
+     * @param maxLength The maximum length of each chunk in bytes, or a
+     * non-positive value to disable splitting by length
+     * @return An ordered list of chunks
+     */
+    public List<String> split(final String line, final int maxLength) {
+        final List<String> result = new ArrayList<String>();
+
+        if (line.indexOf('\n') > -1) {
+            for (String part : line.split("\n")) {
+                result.addAll(split(part, maxLength));
+            }
+        } else if (maxLength <= 0) {
+            result.add(line);
+        } else {
+            synchronized (this) {
+                int start = 0;
+                int end;
+
+                do {
+                    end = findSplit(line, start, maxLength);
+                    result.add(line.substring(start, end));
+                    start = end;
+                } while (end < line.length());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Counts the number of chunks the specified line would be sent as. Line
+     * breaks may be any of <code>\n</code>, <code>\r\n</code> or
+     * <code>\r</code>; empty lines are not counted.
+     *
+     * @param line The line to be measured
+     * @param maxLength The maximum length of each chunk in bytes, or a
+     * non-positive value to disable splitting by length
+     * @return The number of chunks needed to send the line
+     */
+    public int countLines(final String line, final int maxLength) {
+        int lines = 0;
+        int start = 0;
+
+        while (start <= line.length()) {
+            int end = start;
+            while (end < line.length() && line.charAt(end) != '\n'
+                    && line.charAt(end) != '\r') {
+                end++;
+            }
+
+            if (maxLength <= 0) {
+                lines++;
+            } else {
+                lines += countChunks(line.substring(start, end), maxLength);
+            }
+
+            if (end < line.length() - 1 && line.charAt(end) == '\r'
+                    && line.charAt(end + 1) == '\n') {
+                end++;
+            }
+
+            start = end + 1;
+        }
+
+        return lines;
+    }
+
+    /**
+     * Counts the number of chunks a line without line breaks would be split
+     * into.
+     *
+     * @param line The line to be measured
+     * @param maxLength The maximum length of each chunk in bytes
+     * @return The number of chunks, or zero if the line is empty
+     */
+    private synchronized int countChunks(final String line, final int maxLength) {
+        int chunks = 0;
+        int start = 0;
+
+        while (start < line.length()) {
+            start = findSplit(line, start, maxLength);
+            chunks++;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Finds the end of the longest chunk starting at the specified offset
+     * which encodes to at most the specified number of bytes. At least one
+     * character (or surrogate pair) is always included, even if it doesn't
+     * fit, to guarantee progress.
+     *
+     * @param line The line being split
+     * @param start The offset of the start of the chunk
+     * @param maxLength The maximum length of the chunk in bytes
+     * @return The offset of the end of the chunk
+     */
+    private int findSplit(final String line, final int start, final int maxLength) {
+        if (buffer.capacity() < maxLength) {
+            buffer = ByteBuffer.allocate(maxLength);
+        }
+
+        final CharBuffer in = CharBuffer.wrap(line, start, line.length());
+        buffer.clear();
+        buffer.limit(maxLength);
+        encoder.reset();
+
+        final CoderResult result = encoder.encode(in, buffer, true);
+        int end = in.position();
+
+        if (result.isUnderflow()) {
+            // Make sure any trailing state (e.g. for stateful encodings)
+            // also fits
+            if (encoder.flush(buffer).isOverflow() && end > start) {
+                end--;
+            }
+        }
+
+        if (end > start && end < line.length()
+                && Character.isHighSurrogate(line.charAt(end - 1))
+                && Character.isLowSurrogate(line.charAt(end))) {
+            // Never split a surrogate pair
+            end--;
+        }
+
+        if (end == start && start < line.length()) {
+            end = start + Character.charCount(line.codePointAt(start));
+        }
+
+        return end;
+    }
+
+}
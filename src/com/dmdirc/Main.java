@@ -27,6 +27,7 @@ import com.dmdirc.actions.CoreActionType;
 import com.dmdirc.commandline.CommandLineParser;
 import com.dmdirc.commandparser.CommandManager;
 import com.dmdirc.config.ConfigManager;
+import com.dmdirc.config.ConfigStats;
 import com.dmdirc.config.IdentityManager;
 import com.dmdirc.config.InvalidIdentityFileException;
 import com.dmdirc.logger.DMDircExceptionHandler;
@@ -117,6 +118,8 @@ public final class Main {
             handleInvalidConfigFile();
         }
 
+        ConfigStats.registerMBean();
+
         final PluginManager pm = PluginManager.getPluginManager();
         checkBundledPlugins(pm, IdentityManager.getGlobalConfig());
 
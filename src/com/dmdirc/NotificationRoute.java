@@ -0,0 +1,662 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import com.dmdirc.config.ConfigManager;
+import com.dmdirc.interfaces.ConfigChangeListener;
+import com.dmdirc.logger.ErrorLevel;
+import com.dmdirc.logger.Logger;
+import com.dmdirc.ui.StatusMessage;
+import com.dmdirc.ui.WindowManager;
+import com.dmdirc.ui.core.components.StatusBarManager;
+import com.dmdirc.ui.messages.Formatter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled notification target, describing where notifications of a
+ * certain type should be sent. Routes are compiled from the values in the
+ * "notifications" config domain, and are cached per config manager until
+ * that domain changes, so that despatching a notification doesn't require
+ * its target to be parsed.
+ *
+ * @since 0.6.5
+ */
+abstract class NotificationRoute {
+
+    /**
+     * The compiled routes for each config manager. The cache and the route
+     * sets within it are synchronised on this map.
+     */
+    private static final Map<ConfigManager, RouteSet> ROUTE_CACHE
+            = new WeakHashMap<ConfigManager, RouteSet>();
+
+    /** The format to use instead of the message type, if any. */
+    private final String format;
+
+    /**
+     * Creates a new notification route.
+     *
+     * @param format The format to use instead of the message type, or null
+     * to use the message type
+     */
+    protected NotificationRoute(final String format) {
+        this.format = format;
+    }
+
+    /**
+     * Retrieves the format that should be used for a notification.
+     *
+     * @param messageType The type of the notification
+     * @return The format to use for the notification
+     */
+    protected String getFormat(final String messageType) {
+        return format == null ? messageType : format;
+    }
+
+    /**
+     * Despatches a notification along this route.
+     *
+     * @param source The container that the notification originated from
+     * @param date The date/time at which the event occured
+     * @param messageType The type of the message that is being sent
+     * @param args The arguments for the message
+     */
+    public abstract void despatch(WritableFrameContainer source, Date date,
+            String messageType, Object... args);
+
+    /**
+     * Retrieves the route for the specified message type, compiling and
+     * caching it if required. The first time a config manager is used, a
+     * listener is added to it to discard its routes when the notifications
+     * domain changes. The listener is added before any route is read, and
+     * routes read while a change is being made are not cached.
+     *
+     * @param config The config manager to read notification targets from
+     * @param messageType The type of message being sent
+     * @return The route for messages of the specified type
+     */
+    public static NotificationRoute getRoute(final ConfigManager config,
+            final String messageType) {
+        final RouteSet routes;
+
+        synchronized (ROUTE_CACHE) {
+            RouteSet existing = ROUTE_CACHE.get(config);
+
+            if (existing == null) {
+                existing = new RouteSet();
+                config.addChangeListener("notifications", existing);
+                ROUTE_CACHE.put(config, existing);
+            }
+
+            routes = existing;
+        }
+
+        final int generation = routes.getGeneration();
+        NotificationRoute route = routes.get(messageType);
+
+        if (route == null) {
+            route = compile(config,
+                    config.hasOptionString("notifications", messageType)
+                    ? config.getOption("notifications", messageType) : "self");
+            routes.put(messageType, route, generation);
+        }
+
+        return route;
+    }
+
+    /**
+     * Compiles the specified notification target into a route.
+     *
+     * @param config The config manager to read notification groups from
+     * @param messageTarget The target to be compiled
+     * @return A route corresponding to the target
+     */
+    public static NotificationRoute compile(final ConfigManager config,
+            final String messageTarget) {
+        String target = messageTarget;
+        String format = null;
+
+        if (target.startsWith("format:")) {
+            final int end = target.indexOf(':', 7);
+
+            if (end == -1) {
+                return new InvalidRoute(null, target);
+            }
+
+            format = target.substring(7, end);
+            target = target.substring(end + 1);
+        }
+
+        if (target.startsWith("group:")) {
+            target = config.hasOptionString("notifications", target.substring(6))
+                    ? config.getOption("notifications", target.substring(6))
+                    : "self";
+        }
+
+        if (target.startsWith("fork:")) {
+            final List<NotificationRoute> routes = new ArrayList<NotificationRoute>();
+
+            for (String newtarget : target.substring(5).split("\\|")) {
+                routes.add(compile(config, newtarget));
+            }
+
+            return new ForkRoute(format, routes.toArray(
+                    new NotificationRoute[routes.size()]));
+        }
+
+        if ("self".equals(target)) {
+            return new SelfRoute(format);
+        } else if (WritableFrameContainer.NOTIFICATION_SERVER.equals(target)) {
+            return new ServerRoute(format);
+        } else if ("all".equals(target)) {
+            return new AllRoute(format);
+        } else if ("statusbar".equals(target)) {
+            return new StatusBarRoute(format);
+        } else if (target.startsWith("window:")) {
+            return new WindowRoute(format, target.substring(7));
+        } else if (target.startsWith("lastcommand:")) {
+            return new LastCommandRoute(format, target.substring(12));
+        } else if (target.startsWith(WritableFrameContainer.NOTIFICATION_CHANNEL + ":")) {
+            final int sp = target.indexOf(' ');
+            return new ChannelRoute(format,
+                    target.substring(8, sp > -1 ? sp : target.length()),
+                    sp > -1 ? compile(config, target.substring(sp + 1)) : null);
+        } else if (target.startsWith("comchans:")) {
+            final int sp = target.indexOf(' ');
+            return new CommonChannelsRoute(format,
+                    target.substring(9, sp > -1 ? sp : target.length()),
+                    sp > -1 ? compile(config, target.substring(sp + 1)) : null);
+        } else if ("none".equals(target)) {
+            return new NoRoute(format);
+        } else {
+            return new InvalidRoute(format, target);
+        }
+    }
+
+    /**
+     * Substitutes notification arguments into a target template. Templates
+     * without any format specifiers are returned as-is.
+     *
+     * @param template The template to be formatted
+     * @param args The arguments for the message
+     * @return The formatted template
+     */
+    private static String format(final String template, final Object... args) {
+        return template.indexOf('%') == -1 ? template
+                : String.format(template, args);
+    }
+
+    /**
+     * The compiled routes for a single config manager, which discards them
+     * when the notifications domain changes. As routes may refer to other
+     * notification settings via groups, all routes are discarded whenever
+     * any setting changes.
+     */
+    private static final class RouteSet implements ConfigChangeListener {
+
+        /** The compiled routes, keyed on message type. */
+        private final Map<String, NotificationRoute> routes
+                = new HashMap<String, NotificationRoute>();
+
+        /** The number of notification setting changes seen by this set. */
+        private int generation;
+
+        /**
+         * Retrieves the number of changes seen by this set. This should be
+         * read before the settings that a route is compiled from.
+         *
+         * @return The current generation of this set
+         */
+        public int getGeneration() {
+            synchronized (ROUTE_CACHE) {
+                return generation;
+            }
+        }
+
+        /**
+         * Retrieves the route for the specified message type.
+         *
+         * @param messageType The type of message being sent
+         * @return The cached route, or null if there isn't one
+         */
+        public NotificationRoute get(final String messageType) {
+            synchronized (ROUTE_CACHE) {
+                return routes.get(messageType);
+            }
+        }
+
+        /**
+         * Caches a compiled route, unless a setting has changed since the
+         * specified generation, in which case the route may be stale.
+         *
+         * @param messageType The type of message the route is for
+         * @param route The compiled route
+         * @param readGeneration The generation of this set when the route's
+         * settings were read
+         */
+        public void put(final String messageType, final NotificationRoute route,
+                final int readGeneration) {
+            synchronized (ROUTE_CACHE) {
+                if (generation == readGeneration) {
+                    routes.put(messageType, route);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void configChanged(final String domain, final String key) {
+            synchronized (ROUTE_CACHE) {
+                generation++;
+                routes.clear();
+            }
+        }
+
+    }
+
+    /**
+     * Sends notifications to each of a number of other routes.
+     */
+    private static final class ForkRoute extends NotificationRoute {
+
+        /** The routes to send notifications to. */
+        private final NotificationRoute[] routes;
+
+        /**
+         * Creates a new fork route.
+         *
+         * @param format The format to use instead of the message type
+         * @param routes The routes to send notifications to
+         */
+        public ForkRoute(final String format, final NotificationRoute[] routes) {
+            super(format);
+            this.routes = routes;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            for (NotificationRoute route : routes) {
+                route.despatch(source, date, getFormat(messageType), args);
+            }
+        }
+
+    }
+
+    /**
+     * Sends notifications to the originating container.
+     */
+    private static final class SelfRoute extends NotificationRoute {
+
+        /**
+         * Creates a new self route.
+         *
+         * @param format The format to use instead of the message type
+         */
+        public SelfRoute(final String format) {
+            super(format);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            source.addLine(getFormat(messageType), date, args);
+        }
+
+    }
+
+    /**
+     * Sends notifications to the originating container's server.
+     */
+    private static final class ServerRoute extends NotificationRoute {
+
+        /**
+         * Creates a new server route.
+         *
+         * @param format The format to use instead of the message type
+         */
+        public ServerRoute(final String format) {
+            super(format);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            source.getServer().addLine(getFormat(messageType), date, args);
+        }
+
+    }
+
+    /**
+     * Sends notifications to every window belonging to the originating
+     * container's server.
+     */
+    private static final class AllRoute extends NotificationRoute {
+
+        /**
+         * Creates a new all route.
+         *
+         * @param format The format to use instead of the message type
+         */
+        public AllRoute(final String format) {
+            super(format);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            source.getServer().addLineToAll(getFormat(messageType), args);
+        }
+
+    }
+
+    /**
+     * Shows notifications in the status bar.
+     */
+    private static final class StatusBarRoute extends NotificationRoute {
+
+        /**
+         * Creates a new status bar route.
+         *
+         * @param format The format to use instead of the message type
+         */
+        public StatusBarRoute(final String format) {
+            super(format);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            final String message = Formatter.formatMessage(
+                    source.getConfigManager(), getFormat(messageType), args);
+            StatusBarManager.getStatusBarManager().setMessage(
+                    new StatusMessage(message, source.getConfigManager()));
+        }
+
+    }
+
+    /**
+     * Sends notifications to a named custom window, creating it if needed.
+     */
+    private static final class WindowRoute extends NotificationRoute {
+
+        /** The name of the window. */
+        private final String windowName;
+
+        /**
+         * Creates a new window route.
+         *
+         * @param format The format to use instead of the message type
+         * @param windowName The name of the window
+         */
+        public WindowRoute(final String format, final String windowName) {
+            super(format);
+            this.windowName = windowName;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            FrameContainer targetWindow = WindowManager.getWindowManager()
+                    .findCustomWindow(source.getServer(), windowName);
+
+            if (targetWindow == null) {
+                targetWindow = new CustomWindow(windowName, windowName,
+                        source.getServer());
+            }
+
+            targetWindow.addLine(getFormat(messageType), date, args);
+        }
+
+    }
+
+    /**
+     * Sends notifications to whichever of the server's windows most recently
+     * had a matching command entered in it.
+     */
+    private static final class LastCommandRoute extends NotificationRoute {
+
+        /** The template of the regular expression matching the command. */
+        private final String command;
+
+        /**
+         * Creates a new last command route.
+         *
+         * @param format The format to use instead of the message type
+         * @param command The template of the regular expression matching
+         * the command
+         */
+        public LastCommandRoute(final String format, final String command) {
+            super(format);
+            this.command = command;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            final Object[] escapedargs = new Object[args.length];
+
+            for (int i = 0; i < args.length; i++) {
+                escapedargs[i] = "\\Q" + args[i] + "\\E";
+            }
+
+            // Compile once, rather than for every history entry of every window
+            final Pattern pattern = Pattern.compile(format(command, escapedargs),
+                    Pattern.CASE_INSENSITIVE);
+
+            WritableFrameContainer best = source;
+            long besttime = 0;
+
+            final List<FrameContainer> containers = new ArrayList<FrameContainer>();
+
+            containers.add(source.getServer());
+            containers.addAll(source.getServer().getChildren());
+
+            for (FrameContainer container : containers) {
+                if (!(container instanceof WritableFrameContainer)) {
+                    continue;
+                }
+
+                final long time = ((WritableFrameContainer) container)
+                        .getCommandParser().getCommandTime(pattern);
+                if (time > besttime) {
+                    besttime = time;
+                    best = (WritableFrameContainer) container;
+                }
+            }
+
+            best.addLine(getFormat(messageType), date, args);
+        }
+
+    }
+
+    /**
+     * Sends notifications to a named channel, or to a fallback route if the
+     * channel isn't joined.
+     */
+    private static final class ChannelRoute extends NotificationRoute {
+
+        /** The template of the channel name. */
+        private final String channel;
+        /** The route to use if the channel isn't joined, if any. */
+        private final NotificationRoute fallback;
+
+        /**
+         * Creates a new channel route.
+         *
+         * @param format The format to use instead of the message type
+         * @param channel The template of the channel name
+         * @param fallback The route to use if the channel isn't joined, or
+         * null to use the originating container
+         */
+        public ChannelRoute(final String format, final String channel,
+                final NotificationRoute fallback) {
+            super(format);
+            this.channel = channel;
+            this.fallback = fallback;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            final String name = format(channel, args);
+
+            if (source.getServer().hasChannel(name)) {
+                source.getServer().getChannel(name).addLine(messageType, date, args);
+            } else if (fallback != null) {
+                fallback.despatch(source, date, getFormat(messageType), args);
+            } else {
+                source.addLine(getFormat(messageType), date, args);
+                Logger.userError(ErrorLevel.LOW,
+                        "Invalid notification target for type " + messageType
+                        + ": channel " + name + " doesn't exist");
+            }
+        }
+
+    }
+
+    /**
+     * Sends notifications to each channel shared with a user, or to a
+     * fallback route if there are none.
+     */
+    private static final class CommonChannelsRoute extends NotificationRoute {
+
+        /** The template of the user's nickname. */
+        private final String user;
+        /** The route to use if there are no common channels, if any. */
+        private final NotificationRoute fallback;
+
+        /**
+         * Creates a new common channels route.
+         *
+         * @param format The format to use instead of the message type
+         * @param user The template of the user's nickname
+         * @param fallback The route to use if there are no common channels,
+         * or null to use the originating container
+         */
+        public CommonChannelsRoute(final String format, final String user,
+                final NotificationRoute fallback) {
+            super(format);
+            this.user = user;
+            this.fallback = fallback;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            final String nickname = format(user, args);
+            boolean found = false;
+
+            for (String channelName : source.getServer().getChannels()) {
+                final Channel channel = source.getServer().getChannel(channelName);
+                if (channel.getChannelInfo().getChannelClient(nickname) != null) {
+                    channel.addLine(messageType, date, args);
+                    found = true;
+                }
+            }
+
+            if (!found) {
+                if (fallback != null) {
+                    fallback.despatch(source, date, getFormat(messageType), args);
+                } else {
+                    source.addLine(messageType, date, args);
+                    Logger.userError(ErrorLevel.LOW,
+                            "Invalid notification target for type " + messageType
+                            + ": no common channels with " + nickname);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Discards notifications.
+     */
+    private static final class NoRoute extends NotificationRoute {
+
+        /**
+         * Creates a new route which discards notifications.
+         *
+         * @param format The format to use instead of the message type
+         */
+        public NoRoute(final String format) {
+            super(format);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            // Do nothing
+        }
+
+    }
+
+    /**
+     * Handles unrecognised targets by sending notifications to the
+     * originating container and reporting an error.
+     */
+    private static final class InvalidRoute extends NotificationRoute {
+
+        /** The unrecognised target. */
+        private final String target;
+
+        /**
+         * Creates a new invalid route.
+         *
+         * @param format The format to use instead of the message type
+         * @param target The unrecognised target
+         */
+        public InvalidRoute(final String format, final String target) {
+            super(format);
+            this.target = target;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void despatch(final WritableFrameContainer source, final Date date,
+                final String messageType, final Object... args) {
+            source.addLine(getFormat(messageType), date, args);
+            Logger.userError(ErrorLevel.MEDIUM, "Invalid notification target "
+                    + "for type " + messageType + ": " + target);
+        }
+
+    }
+
+}
@@ -28,6 +28,7 @@ import com.dmdirc.actions.wrappers.AliasWrapper;
 import com.dmdirc.commandparser.CommandManager;
 import com.dmdirc.commandparser.CommandType;
 import com.dmdirc.commandparser.parsers.ServerCommandParser;
+import com.dmdirc.config.ConfigHandle;
 import com.dmdirc.config.ConfigManager;
 import com.dmdirc.config.Identity;
 import com.dmdirc.config.IdentityManager;
@@ -172,6 +173,10 @@ public class Server extends WritableFrameContainer
     /** The certificate manager in use, if any. */
     private CertificateManager certificateManager;
 
+    /** The ping time after which the server is considered stoned. */
+    private final ConfigHandle<Integer> pingTimeout
+            = getConfigManager().bindInt(DOMAIN_SERVER, "pingtimeout");
+
     // </editor-fold>
 
     // </editor-fold>
@@ -1486,7 +1491,7 @@ public class Server extends WritableFrameContainer
                 Long.valueOf(parser.getPingTime()));
 
         if (parser.getPingTime()
-                 >= getConfigManager().getOptionInt(DOMAIN_SERVER, "pingtimeout")) {
+                 >= pingTimeout.get()) {
             handleNotification("stonedServer", getAddress());
             reconnect();
         }
@@ -215,10 +215,17 @@ public class Action extends ActionModel implements ConfigChangeListener {
             setStopping(Boolean.parseBoolean(config.getKeyDomain(DOMAIN_MISC).get("stopping")));
         }
 
+        if (config.isKeyDomain(DOMAIN_MISC)
+                && config.getKeyDomain(DOMAIN_MISC).containsKey("asynchronous")) {
+            setAsynchronous(Boolean.parseBoolean(config.getKeyDomain(DOMAIN_MISC)
+                    .get("asynchronous")));
+        }
+
         if (status == ActionStatus.DISABLED) {
             status = ActionStatus.ACTIVE;
         }
 
+        compile();
         checkMetaData();
     }
 
@@ -240,6 +247,10 @@ public class Action extends ActionModel implements ConfigChangeListener {
                 myGroup.setAuthor(data.get("author"));
             }
 
+            if (data.containsKey("asynchronous")) {
+                myGroup.setAsynchronous(Boolean.parseBoolean(data.get("asynchronous")));
+            }
+
             if (data.containsKey("version")) {
                 myGroup.setVersion(new Version(data.get("version")));
             }
@@ -337,11 +348,18 @@ public class Action extends ActionModel implements ConfigChangeListener {
             newConfig.getKeyDomain(DOMAIN_CONCURRENCY).put("group", concurrencyGroup);
         }
 
-        if (stop) {
+        if (stop || asynchronous) {
             newConfig.addDomain(DOMAIN_MISC, new HashMap<String, String>());
+        }
+
+        if (stop) {
             newConfig.getKeyDomain(DOMAIN_MISC).put("stopping", "true");
         }
 
+        if (asynchronous) {
+            newConfig.getKeyDomain(DOMAIN_MISC).put("asynchronous", "true");
+        }
+
         int i = 0;
         for (ActionCondition condition : conditions) {
             final Map<String, String> data = new HashMap<String, String>();
@@ -372,6 +390,8 @@ public class Action extends ActionModel implements ConfigChangeListener {
             }
         }
 
+        ActionManager.getActionManager().refreshAction(this);
+
         try {
             newConfig.write();
 
@@ -25,6 +25,9 @@ package com.dmdirc.actions;
 import com.dmdirc.actions.interfaces.ActionComparison;
 import com.dmdirc.actions.interfaces.ActionComponent;
 
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 /**
  * An action condition represents one condition within an action.
  */
@@ -45,6 +48,15 @@ public class ActionCondition {
     /** The source target for this comparison. */
     private String starget = "";
 
+    /** The compiled form of the target, or null if not yet compiled. */
+    private volatile ActionSubstitutor.Template compiledTarget;
+
+    /** The compiled form of the source target, or null if not yet compiled. */
+    private volatile ActionSubstitutor.Template compiledStarget;
+
+    /** The compiled regular expression for a constant regex target, if any. */
+    private volatile Pattern compiledPattern;
+
     /**
      * Creates a new instance of ActionCondition that compares the output of
      * a component to a string.
@@ -89,16 +101,100 @@ public class ActionCondition {
      * @return True if the condition holds, false otherwise
      */
     public boolean test(final ActionSubstitutor sub, final Object ... args) {
-        final String thisTarget = sub.doSubstitution(getTarget(), args);
+        if (compiledTarget == null || !compiledTarget.isCompiledFor(sub.getType())
+                || (arg == -1 && compiledStarget == null)) {
+            compile(sub);
+        }
+
+        final Pattern pattern = compiledPattern;
+
+        if (pattern != null && comparison == CoreActionComparison.STRING_REGEX) {
+            final Object value = arg == -1 ? sub.doSubstitution(compiledStarget, args)
+                    : getComponent().get(args[getArg()]);
+            return pattern.matcher((String) value).matches();
+        }
+
+        final String thisTarget = sub.doSubstitution(compiledTarget, args);
 
         if (arg == -1) {
-            final String thisStarget = sub.doSubstitution(starget, args);
+            final String thisStarget = sub.doSubstitution(compiledStarget, args);
             return getComparison().test(thisStarget, thisTarget);
         } else {
             return getComparison().test(getComponent().get(args[getArg()]), thisTarget);
         }
     }
 
+    /**
+     * Compiles this condition's targets using the specified substitutor, so
+     * that they do not need to be parsed each time the condition is tested.
+     *
+     * @param sub The substitutor to compile the targets with
+     * @since 0.6.5
+     */
+    public void compile(final ActionSubstitutor sub) {
+        final ActionSubstitutor.Template newTarget = sub.compile(target);
+        Pattern pattern = null;
+
+        if (comparison == CoreActionComparison.STRING_REGEX
+                && newTarget.getConstant() != null) {
+            try {
+                pattern = CoreActionComparison.getPattern(newTarget.getConstant());
+            } catch (PatternSyntaxException ex) {
+                // Left to the comparison, which treats it as not matching
+            }
+        }
+
+        compiledPattern = pattern;
+        compiledStarget = arg == -1 ? sub.compile(starget) : null;
+        compiledTarget = newTarget;
+    }
+
+    /**
+     * Retrieves the value of this condition's target if it contains no
+     * substitutions, and so is the same for every event.
+     *
+     * @return This condition's constant target, or null if the target
+     * depends on the event
+     * @since 0.6.5
+     */
+    String getConstantTarget() {
+        final String value = target;
+
+        if (value.indexOf('$') == -1 && value.indexOf('\\') == -1) {
+            return value;
+        }
+
+        final ActionSubstitutor.Template template = compiledTarget;
+        return template == null ? null : template.getConstant();
+    }
+
+    /**
+     * Estimates the relative cost of testing this condition, so that cheaper
+     * conditions can be tested first. Regular expressions and targets which
+     * need substituting for each event are considered more expensive than
+     * plain comparisons against constant strings.
+     *
+     * @return The estimated cost of testing this condition
+     * @since 0.6.5
+     */
+    int getCost() {
+        int cost = 1;
+
+        if (comparison == CoreActionComparison.STRING_REGEX) {
+            cost += compiledPattern == null ? 4 : 2;
+        }
+
+        if (compiledTarget == null || compiledTarget.getConstant() == null) {
+            cost += 2;
+        }
+
+        if (arg == -1 && (compiledStarget == null || compiledStarget.getConstant() == null)) {
+            cost += 2;
+        }
+
+        return cost;
+    }
+
     /**
      * Returns the argument number this condition applies to.
      *
@@ -142,6 +238,7 @@ public class ActionCondition {
      */
     public void setArg(final int arg) {
         this.arg = arg;
+        this.compiledTarget = null;
     }
 
     /**
@@ -160,6 +257,8 @@ public class ActionCondition {
      */
     public void setComparison(final ActionComparison comparison) {
         this.comparison = comparison;
+        this.compiledTarget = null;
+        this.compiledPattern = null;
     }
 
     /**
@@ -168,6 +267,8 @@ public class ActionCondition {
      */
     public void setTarget(final String target) {
         this.target = target;
+        this.compiledTarget = null;
+        this.compiledPattern = null;
     }
 
     /**
@@ -186,6 +287,7 @@ public class ActionCondition {
      */
     public void setStarget(final String starget) {
         this.starget = starget;
+        this.compiledTarget = null;
     }
 
     /** {@inheritDoc} */
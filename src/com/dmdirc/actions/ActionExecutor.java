@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.actions;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs asynchronous actions on a small pool of worker threads. Tasks
+ * submitted with the same key (normally the window an event occurred in) are
+ * executed one at a time in the order they were submitted, while tasks for
+ * different keys may run concurrently. Each key's queue has a maximum depth;
+ * once it is reached, submitters wait until there is room, slowing the
+ * producer down rather than queueing without bound or reordering tasks.
+ * Tasks submitted from the worker threads themselves are always queued
+ * without waiting, so that an action which raises further events cannot
+ * deadlock the pool.
+ *
+ * @since 0.6.5
+ */
+public final class ActionExecutor {
+
+    /** The default maximum number of tasks queued for a single key. */
+    private static final int DEFAULT_QUEUE_LIMIT
+            = Integer.getInteger("dmdirc.actions.queuelimit", 64);
+
+    /** The maximum number of tasks queued for a single key. */
+    private final int queueLimit;
+
+    /** The number of worker threads to use. */
+    private final int threads;
+
+    /** The queue for each key with pending or running tasks. */
+    private final ConcurrentMap<Object, SerialQueue> queues
+            = new ConcurrentHashMap<Object, SerialQueue>();
+
+    /** The number of tasks which have been accepted. */
+    private final AtomicLong submitted = new AtomicLong();
+
+    /** The number of tasks which have finished executing. */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** The number of submissions which had to wait for room in a queue. */
+    private final AtomicLong blocked = new AtomicLong();
+
+    /** Whether the current thread is one of this executor's workers. */
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+
+    /** The deepest any single queue has been. */
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    /** The worker pool, created when the first task is submitted. */
+    private ExecutorService executor;
+
+    /** Creates a new action executor with the default queue limit. */
+    public ActionExecutor() {
+        this(DEFAULT_QUEUE_LIMIT, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new action executor.
+     *
+     * @param queueLimit The maximum number of tasks queued for a single key
+     * @param threads The number of worker threads to use
+     */
+    public ActionExecutor(final int queueLimit, final int threads) {
+        this.queueLimit = Math.max(1, queueLimit);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Submits a task to be executed after any other tasks with the same key.
+     * If the key's queue is full, this waits until there is room for the
+     * task.
+     *
+     * @param key The key to order the task by
+     * @param task The task to be executed
+     */
+    public void submit(final Object key, final Runnable task) {
+        while (true) {
+            SerialQueue queue = queues.get(key);
+
+            if (queue == null) {
+                final SerialQueue newQueue = new SerialQueue(key);
+                queue = queues.putIfAbsent(key, newQueue);
+
+                if (queue == null) {
+                    queue = newQueue;
+                }
+            }
+
+            if (queue.offer(task)) {
+                submitted.incrementAndGet();
+                return;
+            }
+
+            // The queue was retired as we found it; look again
+        }
+    }
+
+    /**
+     * Retrieves the number of tasks which have been accepted for execution.
+     *
+     * @return The number of tasks submitted
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * Retrieves the number of accepted tasks which have finished executing.
+     *
+     * @return The number of tasks completed
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Retrieves the number of tasks which are queued or running.
+     *
+     * @return The number of tasks pending
+     */
+    public long getPending() {
+        return submitted.get() - completed.get();
+    }
+
+    /**
+     * Retrieves the number of submissions which had to wait because their
+     * queue was full.
+     *
+     * @return The number of submissions blocked
+     */
+    public long getBlocked() {
+        return blocked.get();
+    }
+
+    /**
+     * Retrieves the greatest number of tasks that have been queued for a
+     * single key at once.
+     *
+     * @return The maximum queue depth observed
+     */
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Retrieves the worker pool, creating it if necessary.
+     *
+     * @return The executor service used to run queues
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                /** {@inheritDoc} */
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "Action executor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Records the specified depth if it is the deepest seen so far.
+     *
+     * @param depth The depth of a queue
+     */
+    private void recordDepth(final long depth) {
+        long current = maxDepth.get();
+
+        while (depth > current && !maxDepth.compareAndSet(current, depth)) {
+            current = maxDepth.get();
+        }
+    }
+
+    /**
+     * The ordered queue of tasks for a single key. At most one worker runs a
+     * queue at a time; once it is drained it is removed from the map of
+     * queues and retired.
+     */
+    private final class SerialQueue implements Runnable {
+
+        /** The key this queue belongs to. */
+        private final Object key;
+
+        /** The tasks waiting to be executed. */
+        private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+        /** Whether this queue is currently scheduled on a worker. */
+        private boolean running;
+
+        /** Whether this queue has been removed from the map of queues. */
+        private boolean retired;
+
+        /**
+         * Creates a new queue for the specified key.
+         *
+         * @param key The key this queue belongs to
+         */
+        public SerialQueue(final Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Offers a task to this queue, scheduling the queue if it is idle.
+         * If the queue is full, this waits until there is room, unless it is
+         * called from a worker thread.
+         *
+         * @param task The task to be queued
+         * @return True if the task was queued, or false if this queue has
+         * been retired and can no longer accept tasks
+         */
+        public boolean offer(final Runnable task) {
+            final boolean schedule;
+            boolean interrupted = false;
+
+            synchronized (this) {
+                if (tasks.size() >= queueLimit && worker.get() == null) {
+                    blocked.incrementAndGet();
+
+                    while (tasks.size() >= queueLimit && !retired) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ex) {
+                            // Queue the task anyway rather than lose it
+                            interrupted = true;
+                            break;
+                        }
+                    }
+                }
+
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+
+                if (retired) {
+                    return false;
+                }
+
+                tasks.add(task);
+                recordDepth(tasks.size());
+                schedule = !running;
+                running = true;
+            }
+
+            if (schedule) {
+                getExecutor().execute(this);
+            }
+
+            return true;
+        }
+
+        /**
+         * Executes the next task in this queue, and then either reschedules
+         * the queue behind other waiting work or retires it if it is empty.
+         */
+        @Override
+        public void run() {
+            final Runnable task;
+
+            synchronized (this) {
+                task = tasks.poll();
+                notifyAll();
+            }
+
+            worker.set(Boolean.TRUE);
+
+            try {
+                if (task != null) {
+                    task.run();
+                }
+            } finally {
+                worker.remove();
+
+                if (task != null) {
+                    completed.incrementAndGet();
+                }
+
+                final boolean more;
+
+                synchronized (this) {
+                    more = !tasks.isEmpty();
+                    running = more;
+                    retired = !more;
+                }
+
+                if (more) {
+                    getExecutor().execute(this);
+                } else {
+                    queues.remove(key, this);
+                }
+            }
+        }
+
+    }
+
+}
@@ -63,6 +63,9 @@ public class ActionGroup implements Iterable<Action> {
     /** The version of this action group. */
     private Version version;
 
+    /** Whether actions in this group may be executed asynchronously. */
+    private boolean asynchronous;
+
     /** A list of settings used by this action group. */
     private final Map<String, PreferencesSetting> settings
             = new HashMap<String, PreferencesSetting>();
@@ -123,6 +126,31 @@ public class ActionGroup implements Iterable<Action> {
         return name;
     }
 
+    /**
+     * Determines whether the actions in this group may be executed
+     * asynchronously.
+     *
+     * @return True if this group's actions are asynchronous, false otherwise
+     * @see ActionModel#isAsynchronous()
+     * @since 0.6.5
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Sets whether the actions in this group may be executed asynchronously.
+     *
+     * @param asynchronous The new asynchronous preference for this group
+     * @since 0.6.5
+     */
+    public void setAsynchronous(final boolean asynchronous) {
+        if (this.asynchronous != asynchronous) {
+            this.asynchronous = asynchronous;
+            ActionManager.getActionManager().refreshGroup(this);
+        }
+    }
+
     /**
      * Retrieves a map settings used by this action group.
      *
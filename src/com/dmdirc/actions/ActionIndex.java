@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.actions;
+
+import com.dmdirc.actions.interfaces.ActionComparison;
+import com.dmdirc.actions.interfaces.ActionComponent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Pre-filters the actions registered for an action type, so that only
+ * actions which might pass their conditions are fully tested for each event.
+ * <p>
+ * For each action, the index looks for a condition which must hold for the
+ * action to pass (i.e., one reached from the root of the condition tree
+ * through conjunctions alone) and which compares a component of an argument
+ * against a constant string using {@link CoreActionComparison#STRING_EQUALS},
+ * {@link CoreActionComparison#STRING_STARTSWITH} or
+ * {@link CoreActionComparison#STRING_CONTAINS}. Conditions on the same
+ * argument and component are grouped, so the component is evaluated once per
+ * event and matched against all of the group's targets at once: equality via
+ * a hash lookup, prefixes via a trie and substrings via an Aho-Corasick
+ * automaton. Actions without such a condition are always candidates.
+ * <p>
+ * The index only ever excludes actions which would certainly fail, so the
+ * candidates must still be triggered normally.
+ *
+ * @since 0.6.5
+ */
+final class ActionIndex {
+
+    /** The actions being indexed, in dispatch order. */
+    private final Action[] actions;
+
+    /** Which actions are candidates for every event. */
+    private final boolean[] unindexed;
+
+    /** The groups of indexed conditions. */
+    private final List<ComponentGroup> groups = new ArrayList<ComponentGroup>();
+
+    /**
+     * Creates a new index for the specified actions.
+     *
+     * @param actions The actions to be indexed, in dispatch order
+     */
+    ActionIndex(final Action[] actions) {
+        this.actions = actions;
+        this.unindexed = new boolean[actions.length];
+
+        for (int i = 0; i < actions.length; i++) {
+            final ActionCondition guard = getGuard(actions[i]);
+
+            if (guard == null) {
+                unindexed[i] = true;
+            } else {
+                getGroup(guard.getArg(), guard.getComponent()).add(guard, i);
+            }
+        }
+
+        for (ComponentGroup group : groups) {
+            group.build();
+        }
+    }
+
+    /**
+     * Retrieves the actions which may pass their conditions for an event
+     * with the specified arguments, in dispatch order.
+     *
+     * @param arguments The arguments for the event
+     * @return The candidate actions for the event
+     */
+    Action[] getCandidates(final Object[] arguments) {
+        final boolean[] selected = unindexed.clone();
+
+        for (ComponentGroup group : groups) {
+            group.select(arguments, selected);
+        }
+
+        int count = 0;
+        for (boolean value : selected) {
+            if (value) {
+                count++;
+            }
+        }
+
+        if (count == actions.length) {
+            return actions;
+        }
+
+        final Action[] res = new Action[count];
+
+        for (int i = 0, j = 0; j < count; i++) {
+            if (selected[i]) {
+                res[j++] = actions[i];
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Retrieves the group for the specified argument and component, creating
+     * it if necessary.
+     *
+     * @param arg The argument the group's conditions apply to
+     * @param component The component the group's conditions apply to
+     * @return The corresponding group
+     */
+    private ComponentGroup getGroup(final int arg, final ActionComponent component) {
+        for (ComponentGroup group : groups) {
+            if (group.arg == arg && group.component.equals(component)) {
+                return group;
+            }
+        }
+
+        final ComponentGroup group = new ComponentGroup(arg, component);
+        groups.add(group);
+        return group;
+    }
+
+    /**
+     * Finds the most selective indexable condition which must hold for the
+     * specified action to pass.
+     *
+     * @param action The action to be examined
+     * @return The condition to index the action by, or null if there is none
+     */
+    private static ActionCondition getGuard(final Action action) {
+        final List<ActionCondition> conditions = action.getConditions();
+
+        if (conditions == null || conditions.isEmpty()
+                || action.getStatus() != ActionStatus.ACTIVE) {
+            return null;
+        }
+
+        final List<Integer> required = new ArrayList<Integer>();
+        addRequired(action.getRealConditionTree(), required);
+
+        ActionCondition best = null;
+        int bestScore = 0;
+
+        for (int index : required) {
+            if (index < 0 || index >= conditions.size()) {
+                continue;
+            }
+
+            final ActionCondition condition = conditions.get(index);
+            final int score = getScore(condition);
+
+            if (score > bestScore) {
+                best = condition;
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Adds the conditions which must all hold for the specified tree to pass.
+     *
+     * @param tree The tree to be examined
+     * @param required The list to add condition numbers to
+     */
+    private static void addRequired(final ConditionTree tree, final List<Integer> required) {
+        switch (tree.getOperation()) {
+            case VAR:
+                required.add(tree.getArgument());
+                break;
+            case AND:
+                addRequired(tree.getLeftArg(), required);
+                addRequired(tree.getRightArg(), required);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Scores how selective the specified condition would be as an index key.
+     *
+     * @param condition The condition to be scored
+     * @return A positive score, higher for more selective conditions, or 0
+     * if the condition cannot be indexed
+     */
+    private static int getScore(final ActionCondition condition) {
+        final ActionComparison comparison = condition.getComparison();
+        final String target = condition.getConstantTarget();
+
+        if (condition.getArg() < 0 || condition.getComponent() == null || target == null) {
+            return 0;
+        }
+
+        final int length = Math.min(target.length(), 1000);
+
+        if (comparison == CoreActionComparison.STRING_EQUALS) {
+            return 3000;
+        } else if (comparison == CoreActionComparison.STRING_STARTSWITH && length > 0) {
+            return 1000 + length;
+        } else if (comparison == CoreActionComparison.STRING_CONTAINS && length > 0) {
+            return length;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Normalises a string so that two strings have equal keys exactly when
+     * they are equal ignoring case, as defined by
+     * {@link String#equalsIgnoreCase(String)}.
+     *
+     * @param value The string to be normalised
+     * @return The normalised key
+     */
+    private static String getKey(final String value) {
+        final char[] chars = value.toCharArray();
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * The indexed conditions which apply to one component of one argument.
+     */
+    private final class ComponentGroup {
+
+        /** The argument the conditions apply to. */
+        private final int arg;
+
+        /** The component the conditions apply to. */
+        private final ActionComponent component;
+
+        /** The actions in this group. */
+        private final List<Integer> members = new ArrayList<Integer>();
+
+        /** Actions keyed on the normalised value they must equal. */
+        private final Map<String, List<Integer>> equals
+                = new HashMap<String, List<Integer>>();
+
+        /** A trie of the prefixes actions require. */
+        private final Node prefixes = new Node();
+
+        /** An Aho-Corasick automaton of the substrings actions require. */
+        private final Node substrings = new Node();
+
+        /**
+         * Creates a new component group.
+         *
+         * @param arg The argument the conditions apply to
+         * @param component The component the conditions apply to
+         */
+        public ComponentGroup(final int arg, final ActionComponent component) {
+            this.arg = arg;
+            this.component = component;
+        }
+
+        /**
+         * Adds an action's guard condition to this group.
+         *
+         * @param condition The condition to be indexed
+         * @param action The index of the action in the dispatch order
+         */
+        public void add(final ActionCondition condition, final int action) {
+            final String target = condition.getConstantTarget();
+            members.add(action);
+
+            if (condition.getComparison() == CoreActionComparison.STRING_EQUALS) {
+                final String key = getKey(target);
+
+                if (!equals.containsKey(key)) {
+                    equals.put(key, new ArrayList<Integer>());
+                }
+
+                equals.get(key).add(action);
+            } else if (condition.getComparison() == CoreActionComparison.STRING_STARTSWITH) {
+                prefixes.insert(target).outputs.add(action);
+            } else {
+                substrings.insert(target).outputs.add(action);
+            }
+        }
+
+        /**
+         * Computes the failure links for the substring automaton, once all
+         * conditions have been added.
+         */
+        public void build() {
+            final Queue<Node> queue = new LinkedList<Node>();
+
+            for (Node child : substrings.children.values()) {
+                child.fail = substrings;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                final Node node = queue.poll();
+
+                for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                    final Node child = entry.getValue();
+                    Node fail = node.fail;
+
+                    while (fail != substrings && !fail.children.containsKey(entry.getKey())) {
+                        fail = fail.fail;
+                    }
+
+                    child.fail = fail.children.containsKey(entry.getKey())
+                            ? fail.children.get(entry.getKey()) : substrings;
+                    child.outputs.addAll(child.fail.outputs);
+                    queue.add(child);
+                }
+            }
+        }
+
+        /**
+         * Marks the actions in this group which may pass for an event with
+         * the specified arguments.
+         *
+         * @param arguments The arguments for the event
+         * @param selected The array of candidate flags to update
+         */
+        public void select(final Object[] arguments, final boolean[] selected) {
+            final Object value;
+
+            try {
+                value = component.get(arguments[arg]);
+            } catch (RuntimeException ex) {
+                selectAll(selected);
+                return;
+            }
+
+            if (!(value instanceof String)) {
+                // Let the conditions themselves deal with unexpected values
+                selectAll(selected);
+                return;
+            }
+
+            final String string = (String) value;
+
+            final List<Integer> equal = equals.get(getKey(string));
+            if (equal != null) {
+                mark(equal, selected);
+            }
+
+            Node node = prefixes;
+            mark(node.outputs, selected);
+
+            for (int i = 0; i < string.length() && node != null; i++) {
+                node = node.children.get(string.charAt(i));
+
+                if (node != null) {
+                    mark(node.outputs, selected);
+                }
+            }
+
+            node = substrings;
+
+            for (int i = 0; i < string.length(); i++) {
+                final char c = string.charAt(i);
+
+                while (node != substrings && !node.children.containsKey(c)) {
+                    node = node.fail;
+                }
+
+                if (node.children.containsKey(c)) {
+                    node = node.children.get(c);
+                    mark(node.outputs, selected);
+                }
+            }
+        }
+
+        /**
+         * Marks every action in this group as a candidate.
+         *
+         * @param selected The array of candidate flags to update
+         */
+        private void selectAll(final boolean[] selected) {
+            mark(members, selected);
+        }
+
+        /**
+         * Marks the specified actions as candidates.
+         *
+         * @param indices The indices of the actions to be marked
+         * @param selected The array of candidate flags to update
+         */
+        private void mark(final List<Integer> indices, final boolean[] selected) {
+            for (int index : indices) {
+                selected[index] = true;
+            }
+        }
+
+    }
+
+    /**
+     * A node in a trie or Aho-Corasick automaton.
+     */
+    private static final class Node {
+
+        /** The children of this node, keyed on character. */
+        private final Map<Character, Node> children = new HashMap<Character, Node>();
+
+        /** The actions whose target ends at this node. */
+        private final List<Integer> outputs = new ArrayList<Integer>();
+
+        /** The failure link of this node, for substring automata. */
+        private Node fail;
+
+        /**
+         * Inserts the specified string below this node.
+         *
+         * @param value The string to be inserted
+         * @return The node at which the string ends
+         */
+        public Node insert(final String value) {
+            Node node = this;
+
+            for (int i = 0; i < value.length(); i++) {
+                Node child = node.children.get(value.charAt(i));
+
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(value.charAt(i), child);
+                }
+
+                node = child;
+            }
+
+            return node;
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@
 
 package com.dmdirc.actions;
 
+import com.dmdirc.FrameContainer;
 import com.dmdirc.Main;
 import com.dmdirc.Precondition;
 import com.dmdirc.actions.interfaces.ActionComparison;
@@ -42,9 +43,14 @@ import com.dmdirc.util.resourcemanager.ZipResourceManager;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 /**
@@ -79,9 +85,12 @@ public final class ActionManager {
     private final Map<String, ActionGroup> groups
             = new HashMap<String, ActionGroup>();
 
+    /** The minimum number of actions for a type before they are indexed. */
+    private static final int MIN_INDEXED_ACTIONS = 8;
+
     /** A map of objects to synchronise on for concurrency groups. */
-    private final Map<String, Object> locks
-            = new HashMap<String, Object>();
+    private final ConcurrentMap<String, Object> locks
+            = new ConcurrentHashMap<String, Object>();
 
     /** A map of the action type groups to the action types within. */
     private final MapList<String, ActionType> typeGroups
@@ -91,6 +100,17 @@ public final class ActionManager {
     private final MapList<ActionType, ActionListener> listeners
             = new MapList<ActionType, ActionListener>();
 
+    /**
+     * Immutable snapshots of the listeners and actions for each type that has
+     * any, rebuilt whenever they change. Types without an entry have nothing
+     * to dispatch to. Modifications are synchronised on this map.
+     */
+    private final Map<ActionType, Dispatch> dispatch
+            = new ConcurrentHashMap<ActionType, Dispatch>();
+
+    /** The executor used to run asynchronous actions. */
+    private final ActionExecutor executor = new ActionExecutor();
+
     /** Indicates whether or not user actions should be killed (not processed). */
     private boolean killSwitch
             = IdentityManager.getGlobalConfig().getOptionBool("actions", "killswitch");
@@ -244,7 +264,10 @@ public final class ActionManager {
      * Loads actions from the user's directory.
      */
     public void loadUserActions() {
-        actions.clear();
+        synchronized (dispatch) {
+            actions.clear();
+            rebuildDispatch();
+        }
 
         for (ActionGroup group : groups.values()) {
             group.clear();
@@ -318,9 +341,12 @@ public final class ActionManager {
                 new Object[] { action.getGroup(), action.getName(), action.getStatus() });
 
         if (action.getStatus() != ActionStatus.FAILED) {
-            for (ActionType trigger : action.getTriggers()) {
-                LOGGER.log(Level.FINER, "Action has trigger {0}", trigger);
-                actions.add(trigger, action);
+            synchronized (dispatch) {
+                for (ActionType trigger : action.getTriggers()) {
+                    LOGGER.log(Level.FINER, "Action has trigger {0}", trigger);
+                    actions.add(trigger, action);
+                    rebuildDispatch(trigger);
+                }
             }
         }
 
@@ -351,7 +377,11 @@ public final class ActionManager {
     public void removeAction(final Action action) {
         Logger.assertTrue(action != null);
 
-        actions.removeFromAll(action);
+        synchronized (dispatch) {
+            actions.removeFromAll(action);
+            rebuildDispatch();
+        }
+
         getOrCreateGroup(action.getGroup()).remove(action);
     }
 
@@ -362,6 +392,7 @@ public final class ActionManager {
      * @param action The action to be reregistered
      */
     public void reregisterAction(final Action action) {
+        action.compile();
         removeAction(action);
         addAction(action);
     }
@@ -387,70 +418,242 @@ public final class ActionManager {
         Logger.assertTrue(type.getType() != null);
         Logger.assertTrue(type.getType().getArity() == arguments.length);
 
+        final Dispatch targets = dispatch.get(type);
+
+        if (targets == null) {
+            return true;
+        }
+
         boolean res = false;
 
-        if (listeners.containsKey(type)) {
-            for (ActionListener listener
-                    : new ArrayList<ActionListener>(listeners.get(type))) {
-                try {
-                    listener.processEvent(type, format, arguments);
-                } catch (Exception e) {
-                    Logger.appError(ErrorLevel.MEDIUM, "Error processing action: "
-                            + e.getMessage(), e);
-                }
+        for (ActionListener listener : targets.listeners) {
+            try {
+                listener.processEvent(type, format, arguments);
+            } catch (Exception e) {
+                Logger.appError(ErrorLevel.MEDIUM, "Error processing action: "
+                        + e.getMessage(), e);
             }
         }
 
-        if (!killSwitch) {
-            res |= triggerActions(type, format, arguments);
+        if (!killSwitch && targets.actions.length > 0) {
+            res |= triggerActions(targets, targets.getCandidates(arguments),
+                    format, arguments);
         }
 
         return !res;
     }
 
     /**
-     * Triggers actions that respond to the specified type.
+     * Determines whether any listeners or actions are registered for the
+     * specified type. Callers may use this to avoid building the arguments
+     * for events which nothing will receive.
      *
-     * @param type The type of the event to process
+     * @param type The type to be tested
+     * @return True if an event of the type would be handled, false otherwise
+     * @since 0.6.5
+     */
+    public boolean hasHandlers(final ActionType type) {
+        return dispatch.containsKey(type);
+    }
+
+    /**
+     * Triggers the specified actions, which respond to the event's type.
+     *
+     * @param snapshot The dispatch snapshot for the event's type
+     * @param targets The actions registered for the event's type
      * @param format The format of the message that's going to be displayed for
      * the event. Actions may change this format.
      * @param arguments The arguments for the event
      * @return True if the event should be skipped, or false if it can continue
      */
-    @Precondition("The specified ActionType is not null")
-    private boolean triggerActions(final ActionType type,
-            final StringBuffer format, final Object ... arguments) {
-        Logger.assertTrue(type != null);
-
+    private boolean triggerActions(final Dispatch snapshot,
+            final Action[] targets, final StringBuffer format,
+            final Object ... arguments) {
         boolean res = false;
 
-        if (actions.containsKey(type)) {
-            for (Action action : new ArrayList<Action>(actions.get(type))) {
-                try {
-                    if (action.getConcurrencyGroup() == null) {
-                        res |= action.trigger(format, arguments);
-                    } else {
-                        synchronized (locks) {
-                            if (!locks.containsKey(action.getConcurrencyGroup())) {
-                                locks.put(action.getConcurrencyGroup(), new Object());
-                            }
-                        }
-
-                        synchronized (locks.get(action.getConcurrencyGroup())) {
-                            res |= action.trigger(format, arguments);
-                        }
+        for (Action action : targets) {
+            if (snapshot.isAsynchronous(action)) {
+                executor.submit(getQueueKey(arguments),
+                        new AsyncAction(action, arguments));
+            } else {
+                res |= triggerAction(action, format, arguments);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Triggers a single action, respecting its concurrency group.
+     *
+     * @param action The action to be triggered
+     * @param format The format of the message that's going to be displayed for
+     * the event, or null if it may not be changed
+     * @param arguments The arguments for the event
+     * @return True if the event should be skipped, or false if it can continue
+     */
+    private boolean triggerAction(final Action action, final StringBuffer format,
+            final Object ... arguments) {
+        try {
+            if (action.getConcurrencyGroup() == null) {
+                return action.trigger(format, arguments);
+            } else {
+                synchronized (getLock(action.getConcurrencyGroup())) {
+                    return action.trigger(format, arguments);
+                }
+            }
+        } catch (LinkageError e) {
+            Logger.appError(ErrorLevel.MEDIUM, "Error processing action: "
+                    + e.getMessage(), e);
+        } catch (Exception e) {
+            Logger.appError(ErrorLevel.MEDIUM, "Error processing action: "
+                    + e.getMessage(), e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether the specified action should be executed
+     * asynchronously. Actions which stop the event or alter its format must
+     * run before the event continues, so are always executed synchronously.
+     * This is evaluated when dispatch snapshots are built, as the groups map
+     * is not safe to read from the threads which trigger events.
+     *
+     * @param action The action to be tested
+     * @return True if the action should be queued, false if it must be run
+     * immediately
+     */
+    private boolean isAsynchronous(final Action action) {
+        if (action.isStopping() || action.getNewFormat() != null) {
+            return false;
+        }
+
+        if (action.isAsynchronous()) {
+            return true;
+        }
+
+        final ActionGroup group = groups.get(action.getGroup());
+        return group != null && group.isAsynchronous();
+    }
+
+    /**
+     * Determines the key used to order asynchronous actions for an event.
+     * Actions for events in the same window are executed in order; all other
+     * events share a single queue.
+     *
+     * @param arguments The arguments for the event
+     * @return The key to queue the event's actions under
+     */
+    private Object getQueueKey(final Object ... arguments) {
+        return arguments.length > 0 && arguments[0] instanceof FrameContainer
+                ? arguments[0] : executor;
+    }
+
+    /**
+     * Retrieves the executor used to run asynchronous actions, which can be
+     * used to monitor queue depths and backpressure.
+     *
+     * @return The asynchronous action executor
+     * @since 0.6.5
+     */
+    public ActionExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Retrieves the object to synchronise on for the specified concurrency
+     * group, creating one if necessary.
+     *
+     * @param group The name of the concurrency group
+     * @return The lock object for the group
+     */
+    private Object getLock(final String group) {
+        final Object lock = locks.get(group);
+
+        if (lock != null) {
+            return lock;
+        }
+
+        final Object newLock = new Object();
+        final Object existing = locks.putIfAbsent(group, newLock);
+        return existing == null ? newLock : existing;
+    }
+
+    /**
+     * Rebuilds the dispatch snapshot for the specified type from the
+     * registered listeners and actions. Callers must hold the dispatch lock.
+     *
+     * @param type The type whose snapshot should be rebuilt
+     */
+    private void rebuildDispatch(final ActionType type) {
+        final List<ActionListener> typeListeners = listeners.get(type);
+        final List<Action> typeActions = actions.get(type);
+        final boolean noListeners = typeListeners == null || typeListeners.isEmpty();
+        final boolean noActions = typeActions == null || typeActions.isEmpty();
+
+        if (noListeners && noActions) {
+            dispatch.remove(type);
+        } else {
+            final Set<Action> asynchronous = Collections.newSetFromMap(
+                    new IdentityHashMap<Action, Boolean>());
+
+            if (!noActions) {
+                for (Action action : typeActions) {
+                    if (isAsynchronous(action)) {
+                        asynchronous.add(action);
                     }
-                } catch (LinkageError e) {
-                    Logger.appError(ErrorLevel.MEDIUM, "Error processing action: "
-                            + e.getMessage(), e);
-                } catch (Exception e) {
-                    Logger.appError(ErrorLevel.MEDIUM, "Error processing action: "
-                            + e.getMessage(), e);
                 }
             }
+
+            dispatch.put(type, new Dispatch(
+                    noListeners ? new ActionListener[0] : typeListeners.toArray(
+                    new ActionListener[typeListeners.size()]),
+                    noActions ? new Action[0] : typeActions.toArray(
+                    new Action[typeActions.size()]), asynchronous));
         }
+    }
 
-        return res;
+    /**
+     * Discards any dispatch snapshots which include the specified action, so
+     * that changes to its conditions are reflected in the action index.
+     *
+     * @param action The action which has changed
+     * @since 0.6.5
+     */
+    void refreshAction(final Action action) {
+        synchronized (dispatch) {
+            for (Map.Entry<ActionType, Dispatch> entry
+                    : new ArrayList<Map.Entry<ActionType, Dispatch>>(dispatch.entrySet())) {
+                if (entry.getValue().contains(action)) {
+                    rebuildDispatch(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards any dispatch snapshots which include actions in the specified
+     * group, so that changes to the group's preferences are reflected.
+     *
+     * @param group The group which has changed
+     * @since 0.6.5
+     */
+    void refreshGroup(final ActionGroup group) {
+        for (Action action : group.getActions()) {
+            refreshAction(action);
+        }
+    }
+
+    /**
+     * Rebuilds the dispatch snapshots for every type which currently has one,
+     * for use after removals which may affect several types. Callers must
+     * hold the dispatch lock.
+     */
+    private void rebuildDispatch() {
+        for (ActionType type : new ArrayList<ActionType>(dispatch.keySet())) {
+            rebuildDispatch(type);
+        }
     }
 
     /**
@@ -728,8 +931,11 @@ public final class ActionManager {
      * @param listener The listener to be added
      */
     public void registerListener(final ActionListener listener, final ActionType ... types) {
-        for (ActionType type : types) {
-            listeners.add(type, listener);
+        synchronized (dispatch) {
+            for (ActionType type : types) {
+                listeners.add(type, listener);
+                rebuildDispatch(type);
+            }
         }
     }
 
@@ -740,8 +946,11 @@ public final class ActionManager {
      * @param listener The listener to be removed
      */
     public void unregisterListener(final ActionListener listener, final ActionType ... types) {
-        for (ActionType type : types) {
-            listeners.remove(type, listener);
+        synchronized (dispatch) {
+            for (ActionType type : types) {
+                listeners.remove(type, listener);
+                rebuildDispatch(type);
+            }
         }
     }
 
@@ -751,6 +960,126 @@ public final class ActionManager {
      * @param listener The listener to be removed
      */
     public void unregisterListener(final ActionListener listener) {
-        listeners.removeFromAll(listener);
+        synchronized (dispatch) {
+            listeners.removeFromAll(listener);
+            rebuildDispatch();
+        }
+    }
+
+    /**
+     * A task which triggers an asynchronous action.
+     */
+    private final class AsyncAction implements Runnable {
+
+        /** The action to be triggered. */
+        private final Action action;
+
+        /** The arguments for the event. */
+        private final Object[] arguments;
+
+        /**
+         * Creates a new asynchronous action task.
+         *
+         * @param action The action to be triggered
+         * @param arguments The arguments for the event
+         */
+        public AsyncAction(final Action action, final Object[] arguments) {
+            this.action = action;
+            this.arguments = arguments;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            triggerAction(action, null, arguments);
+        }
+
     }
+
+    /**
+     * An immutable snapshot of the listeners and actions registered for one
+     * action type.
+     */
+    private static final class Dispatch {
+
+        /** The listeners registered for the type. */
+        private final ActionListener[] listeners;
+
+        /** The actions triggered by the type. */
+        private final Action[] actions;
+
+        /** The actions which should be executed asynchronously. */
+        private final Set<Action> asynchronous;
+
+        /** The pre-filter index over the actions, built when first needed. */
+        private volatile ActionIndex index;
+
+        /**
+         * Creates a new dispatch snapshot.
+         *
+         * @param listeners The listeners registered for the type
+         * @param actions The actions triggered by the type
+         * @param asynchronous The actions which should be executed
+         * asynchronously
+         */
+        public Dispatch(final ActionListener[] listeners, final Action[] actions,
+                final Set<Action> asynchronous) {
+            this.listeners = listeners;
+            this.actions = actions;
+            this.asynchronous = asynchronous;
+        }
+
+        /**
+         * Determines whether the specified action should be executed
+         * asynchronously.
+         *
+         * @param action One of the actions in this snapshot
+         * @return True if the action should be queued, false if it must be
+         * run immediately
+         */
+        public boolean isAsynchronous(final Action action) {
+            return asynchronous.contains(action);
+        }
+
+        /**
+         * Retrieves the actions which may pass their conditions for an event
+         * with the specified arguments. Small sets of actions are returned
+         * as they are, as filtering them would cost more than it saves.
+         *
+         * @param arguments The arguments for the event
+         * @return The candidate actions, in dispatch order
+         */
+        public Action[] getCandidates(final Object[] arguments) {
+            if (actions.length < MIN_INDEXED_ACTIONS) {
+                return actions;
+            }
+
+            ActionIndex actionIndex = index;
+
+            if (actionIndex == null) {
+                actionIndex = new ActionIndex(actions);
+                index = actionIndex;
+            }
+
+            return actionIndex.getCandidates(arguments);
+        }
+
+        /**
+         * Determines whether this snapshot includes the specified action.
+         *
+         * @param action The action to look for
+         * @return True if the action is included, false otherwise
+         */
+        public boolean contains(final Action action) {
+            for (Action other : actions) {
+                if (other == action) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+    }
+
 }
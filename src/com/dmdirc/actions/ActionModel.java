@@ -70,6 +70,9 @@ public class ActionModel {
     /** The concurrency group this action belongs to, if any. */
     protected String concurrencyGroup;
 
+    /** Whether this action may be executed off the event's thread. */
+    protected boolean asynchronous;
+
     /** The status of this action. */
     protected ActionStatus status = ActionStatus.ACTIVE;
 
@@ -79,6 +82,15 @@ public class ActionModel {
     /** The type of error that occurred, if any. */
     protected ActionErrorType errorType;
 
+    /** The substitutor for this action's primary trigger, if compiled. */
+    private volatile ActionSubstitutor substitutor;
+
+    /** The compiled form of this action's response, if compiled. */
+    private volatile ActionSubstitutor.Template[] compiledResponse;
+
+    /** The evaluator for this action's conditions, if compiled. */
+    private volatile ConditionEvaluator evaluator;
+
     /**
      * Creates a new instance of ActionModel with the specified properties.
      *
@@ -112,6 +124,45 @@ public class ActionModel {
         this.conditionTree = conditionTree;
         this.newFormat = newFormat;
         this.modified = true;
+        compile();
+    }
+
+    /**
+     * Compiles this action's response and condition targets for its primary
+     * trigger, so that triggering the action only needs to evaluate the
+     * pre-built templates. This is called whenever the triggers, response or
+     * conditions change; if the action is not yet complete it does nothing.
+     *
+     * @since 0.6.5
+     */
+    protected void compile() {
+        if (triggers == null || triggers.length == 0 || triggers[0] == null
+                || response == null) {
+            substitutor = null;
+            compiledResponse = null;
+            return;
+        }
+
+        final ActionSubstitutor sub = new ActionSubstitutor(triggers[0]);
+        final ActionSubstitutor.Template[] templates
+                = new ActionSubstitutor.Template[response.length];
+
+        for (int i = 0; i < response.length; i++) {
+            templates[i] = sub.compile(response[i]);
+        }
+
+        if (conditions != null) {
+            for (ActionCondition condition : conditions) {
+                condition.compile(sub);
+            }
+        }
+
+        // The condition tree may not match the conditions until both have
+        // been updated, so the evaluator is only built when next tested
+        evaluator = null;
+
+        compiledResponse = templates;
+        substitutor = sub;
     }
 
     /**
@@ -135,7 +186,12 @@ public class ActionModel {
             return false;
         }
 
-        final ActionSubstitutor sub = new ActionSubstitutor(triggers[0]);
+        if (substitutor == null || !substitutor.getType().equals(triggers[0])) {
+            compile();
+        }
+
+        final ActionSubstitutor sub = substitutor;
+        final ActionSubstitutor.Template[] templates = compiledResponse;
 
         if (!test(sub, arguments)) {
             return false;
@@ -162,7 +218,7 @@ public class ActionModel {
             cp = container.getCommandParser();
         }
 
-        for (String command : response) {
+        for (ActionSubstitutor.Template command : templates) {
             cp.parseCommand(container, window, sub.doSubstitution(command, arguments));
         }
 
@@ -175,7 +231,9 @@ public class ActionModel {
     }
 
     /**
-     * Tests to see if this action should be triggered or not.
+     * Tests to see if this action should be triggered or not. The condition
+     * evaluator is built the first time the action is tested after its
+     * conditions change.
      *
      * @param sub The ActionsSubstitutor to use to substitute args
      * @param arguments The arguments for the action event
@@ -183,14 +241,14 @@ public class ActionModel {
      */
     public boolean test(final ActionSubstitutor sub,
             final Object ... arguments) {
-        final boolean[] results = new boolean[conditions.size()];
+        ConditionEvaluator conditionEvaluator = evaluator;
 
-        int i = 0;
-        for (ActionCondition condition : conditions) {
-            results[i++] = condition.test(sub, arguments);
+        if (conditionEvaluator == null || conditionEvaluator.size() != conditions.size()) {
+            conditionEvaluator = new ConditionEvaluator(getRealConditionTree(), conditions);
+            evaluator = conditionEvaluator;
         }
 
-        return getRealConditionTree().evaluate(results);
+        return conditionEvaluator.evaluate(sub, arguments);
     }
 
     /**
@@ -209,6 +267,7 @@ public class ActionModel {
      */
     public void setConditions(final List<ActionCondition> conditions) {
         this.conditions = conditions;
+        compile();
         this.modified = true;
     }
 
@@ -260,6 +319,7 @@ public class ActionModel {
     public void setTriggers(final ActionType[] triggers) {
         this.triggers = triggers.clone();
         this.modified = true;
+        compile();
     }
 
     /**
@@ -298,6 +358,7 @@ public class ActionModel {
     public void setResponse(final String[] response) {
         this.response = response.clone();
         this.modified = true;
+        compile();
     }
 
     /**
@@ -369,6 +430,7 @@ public class ActionModel {
     public void setConditionTree(final ConditionTree conditionTree) {
         this.conditionTree = conditionTree;
         this.modified = true;
+        this.evaluator = null;
     }
 
     /**
@@ -418,6 +480,31 @@ public class ActionModel {
         this.stop = stop;
     }
 
+    /**
+     * Determines whether or not this action may be executed asynchronously.
+     * Asynchronous actions are run on a worker thread, in order with other
+     * asynchronous actions for the same window, instead of delaying the
+     * event which triggered them. Actions which stop the event or change its
+     * format are always executed synchronously.
+     *
+     * @return The asynchronous preference of this action
+     * @since 0.6.5
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Sets the asynchronous preference of this action.
+     *
+     * @param asynchronous The new asynchronous preference of this action
+     * @see #isAsynchronous()
+     * @since 0.6.5
+     */
+    public void setAsynchronous(final boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
     /**
      * Determine if this model has been modified since it was constructed or
      * its modified status was reset.
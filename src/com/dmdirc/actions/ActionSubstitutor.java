@@ -33,8 +33,10 @@ import com.dmdirc.config.ConfigManager;
 import com.dmdirc.config.IdentityManager;
 import com.dmdirc.ui.interfaces.Window;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -82,6 +84,16 @@ public class ActionSubstitutor {
         this.type = type;
     }
 
+    /**
+     * Retrieves the action type this substitutor is for.
+     *
+     * @return This substitutor's action type
+     * @since 0.6.5
+     */
+    public ActionType getType() {
+        return type;
+    }
+
     /**
      * Retrieves a list of global config variables that will be substituted.
      * Note: does not include initial $.
@@ -184,98 +196,238 @@ public class ActionSubstitutor {
     @Precondition("Number of arguments given equals the number of arguments "
     + "required by this substitutor's type")
     public String doSubstitution(final String target, final Object ... args) {
+        return doSubstitution(compile(target), args);
+    }
+
+    /**
+     * Performs all substitutions described by the specified compiled
+     * template, with the specified arguments. If the template was compiled
+     * for a different action type, it is recompiled for this substitutor's
+     * type first.
+     *
+     * @param template The compiled template to be evaluated
+     * @param args The arguments for the action type
+     * @return The substituted string
+     * @since 0.6.5
+     */
+    @Precondition("Number of arguments given equals the number of arguments "
+    + "required by this substitutor's type")
+    public String doSubstitution(final Template template, final Object ... args) {
         if (type.getType().getArity() != args.length) {
             throw new IllegalArgumentException("Invalid number of arguments "
                     + "for doSubstitution: expected " + type.getType().getArity() + ", got "
                     + args.length + ". Type: " + type.getName());
         }
 
-        final StringBuilder res = new StringBuilder(target);
+        final Template compiled = template.isCompiledFor(type) ? template
+                : compile(template.getSource());
+        final StringBuilder res = new StringBuilder(compiled.getSource().length());
+        compiled.appendTo(res, args);
+        return res.toString();
+    }
+
+    /**
+     * Compiles the specified string into a template of literal text and
+     * pre-resolved substitutions for this substitutor's action type. The
+     * resulting template can be evaluated repeatedly with
+     * {@link #doSubstitution(Template, Object[])} without re-parsing the
+     * string.
+     *
+     * @param target The string to be compiled
+     * @return A compiled template for the string
+     * @since 0.6.5
+     */
+    public Template compile(final String target) {
+        final List<Segment> segments = new ArrayList<Segment>();
+        final StringBuilder literal = new StringBuilder();
+        final Matcher otherMatcher = OTHER_PATTERN.matcher(target);
+        final int length = target.length();
+        int i = 0;
+
+        while (i < length) {
+            final char c = target.charAt(i);
 
-        Matcher bracesMatcher = BRACES_PATTERN.matcher(res);
-        Matcher otherMatcher = OTHER_PATTERN.matcher(res);
+            if (c == '\\' && i + 1 < length && !isLineTerminator(target.charAt(i + 1))) {
+                literal.append(target.charAt(i + 1));
+                i += 2;
+                continue;
+            }
 
-        boolean first;
+            if (c == '$' && i + 1 < length && target.charAt(i + 1) == '{') {
+                final int close = findClosingBrace(target, i + 2);
+
+                if (close != -1) {
+                    addLiteral(segments, literal);
+                    segments.add(compileBraces(target.substring(i + 2, close)));
+                    i = close + 1;
+                    continue;
+                }
+            } else if (c == '$') {
+                otherMatcher.region(i, length);
+
+                if (otherMatcher.lookingAt()) {
+                    addLiteral(segments, literal);
+                    segments.add(resolve(otherMatcher.group(3)));
+                    i = otherMatcher.end();
+                    continue;
+                }
+            }
 
-        while ((first = bracesMatcher.find()) || otherMatcher.find()) {
-            final Matcher matcher = first ? bracesMatcher : otherMatcher;
+            literal.append(c);
+            i++;
+        }
 
-            final String group = matcher.group(3);
-            final int start = matcher.start() + matcher.group(1).length(), end = matcher.end();
+        addLiteral(segments, literal);
 
-            res.delete(start, end);
-            res.insert(start, getSubstitution(doSubstitution(group, args), args));
+        return new Template(target, type, segments.toArray(new Segment[segments.size()]));
+    }
 
-            bracesMatcher = BRACES_PATTERN.matcher(res);
-            otherMatcher = OTHER_PATTERN.matcher(res);
+    /**
+     * Compiles the contents of a braced substitution. If the contents contain
+     * no further substitutions or escapes, the substitution is resolved
+     * immediately; otherwise it is resolved each time it is evaluated.
+     *
+     * @param inner The contents of the braces
+     * @return A segment representing the braced substitution
+     */
+    private Segment compileBraces(final String inner) {
+        if (inner.indexOf('$') == -1 && inner.indexOf('\\') == -1) {
+            return resolve(inner);
         }
 
-        return res.toString().replaceAll("\\\\(.)", "$1");
+        return new DynamicSegment(compile(inner));
     }
 
     /**
-     * Retrieves the value which should be used for the specified substitution.
+     * Finds the brace which closes a braced substitution, allowing for
+     * nested braced substitutions and escaped characters.
+     *
+     * @param target The string being compiled
+     * @param from The index of the first character inside the braces
+     * @return The index of the closing brace, or -1 if the braces are not
+     * properly closed
+     */
+    private static int findClosingBrace(final String target, final int from) {
+        int depth = 0;
+
+        for (int i = from; i < target.length(); i++) {
+            final char c = target.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (c == '$' && i + 1 < target.length() && target.charAt(i + 1) == '{') {
+                depth++;
+                i++;
+            } else if (c == '{') {
+                return -1;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+
+                depth--;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Determines whether the specified character is a line terminator, which
+     * cannot be escaped.
+     *
+     * @param c The character to be tested
+     * @return True if the character terminates a line, false otherwise
+     */
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Adds a literal segment containing the contents of the specified
+     * buffer, if it is not empty, and then clears the buffer.
+     *
+     * @param segments The list of segments to add to
+     * @param literal The buffer containing the literal text
+     */
+    private static void addLiteral(final List<Segment> segments, final StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new LiteralSegment(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Resolves the specified substitution into a segment, pre-building any
+     * component chains it requires.
      *
      * @param substitution The substitution, without leading $
-     * @param args The arguments for the action
-     * @return The substitution to be used
+     * @return A segment which evaluates the substitution
      */
-    private String getSubstitution(final String substitution, final Object ... args) {
+    private Segment resolve(final String substitution) {
         final Matcher numberMatcher = NUMBER_PATTERN.matcher(substitution);
         final Matcher compMatcher = COMP_PATTERN.matcher(substitution);
-        final Matcher serverMatcher = SERVER_PATTERN.matcher(substitution);
 
         if (usesWordSubstitutions() && numberMatcher.matches()) {
-            final CommandArguments words = args[2] instanceof String
-                    ? new CommandArguments((String) args[2])
-                    : new CommandArguments(Arrays.asList((String[]) args[2]));
-
-            int start, end;
-
-            start = end = Integer.parseInt(numberMatcher.group(1)) - 1;
+            final int start = Integer.parseInt(numberMatcher.group(1)) - 1;
+            final int end;
 
             if (numberMatcher.group(3) != null) {
                 end = Integer.parseInt(numberMatcher.group(3)) - 1;
             } else if (numberMatcher.group(2) != null) {
-                end = words.getWords().length - 1;
+                end = -1;
+            } else {
+                end = start;
             }
 
-            return words.getWordsAsString(start, end);
+            return new WordSegment(start, end);
         }
 
         if (compMatcher.matches()) {
             final int argument = Integer.parseInt(compMatcher.group(1));
 
+            if (argument >= type.getType().getArgTypes().length) {
+                return new LiteralSegment(ERR_ILLEGAL_COMPONENT);
+            }
+
             try {
-                final ActionComponentChain chain = new ActionComponentChain(
-                        type.getType().getArgTypes()[argument], compMatcher.group(2));
-                return escape(checkConnection(chain, args, args[argument]));
+                return new ComponentSegment(argument, new ActionComponentChain(
+                        type.getType().getArgTypes()[argument], compMatcher.group(2)));
             } catch (IllegalArgumentException ex) {
-                return ERR_ILLEGAL_COMPONENT;
+                return new LiteralSegment(ERR_ILLEGAL_COMPONENT);
             }
         }
 
-        final ConfigManager manager = getConfigManager(args);
+        ActionComponentChain chain = null;
+        boolean serverSub = false;
 
-        if (manager.hasOptionString("actions", substitution)) {
-            return manager.getOption("actions", substitution);
-        }
+        if (hasFrameContainer() && SERVER_PATTERN.matcher(substitution).matches()) {
+            serverSub = true;
 
-        if (hasFrameContainer() && serverMatcher.matches()) {
-            final Server server = ((FrameContainer) args[0]).getServer();
-
-            if (server != null) {
-                try {
-                    final ActionComponentChain chain = new ActionComponentChain(
-                        Server.class, substitution);
-                    return escape(checkConnection(chain, args, server));
-                } catch (IllegalArgumentException ex) {
-                    return ERR_ILLEGAL_COMPONENT;
-                }
+            try {
+                chain = new ActionComponentChain(Server.class, substitution);
+            } catch (IllegalArgumentException ex) {
+                // Reported as an illegal component if evaluated
             }
         }
 
-        return ERR_NOT_DEFINED;
+        return new NamedSegment(substitution, serverSub, chain);
+    }
+
+    /**
+     * Appends the fully substituted form of a value which may itself contain
+     * substitutions, such as a config setting or words from the user.
+     *
+     * @param res The buffer to append to
+     * @param value The value to be expanded
+     * @param args The arguments for the action
+     */
+    private void expand(final StringBuilder res, final String value, final Object[] args) {
+        if (value.indexOf('$') == -1 && value.indexOf('\\') == -1) {
+            res.append(value);
+        } else {
+            compile(value).appendTo(res, args);
+        }
     }
 
     /**
@@ -338,4 +490,277 @@ public class ActionSubstitutor {
         return input.replace("\\", "\\\\").replace("$", "\\$");
     }
 
+    /**
+     * A string which has been compiled into literal text and pre-resolved
+     * substitutions for a specific action type.
+     *
+     * @since 0.6.5
+     */
+    public static final class Template {
+
+        /** The string this template was compiled from. */
+        private final String source;
+
+        /** The action type this template was compiled for. */
+        private final ActionType type;
+
+        /** The segments which make up this template. */
+        private final Segment[] segments;
+
+        /**
+         * Creates a new template.
+         *
+         * @param source The string the template was compiled from
+         * @param type The action type the template was compiled for
+         * @param segments The segments which make up the template
+         */
+        private Template(final String source, final ActionType type,
+                final Segment[] segments) {
+            this.source = source;
+            this.type = type;
+            this.segments = segments;
+        }
+
+        /**
+         * Retrieves the string this template was compiled from.
+         *
+         * @return This template's source string
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Determines whether this template was compiled for the specified
+         * action type.
+         *
+         * @param actionType The action type to be tested
+         * @return True if this template can be used for the type
+         */
+        public boolean isCompiledFor(final ActionType actionType) {
+            return type == actionType;
+        }
+
+        /**
+         * Retrieves the value of this template if it contains no
+         * substitutions, and so evaluates to the same string every time.
+         *
+         * @return This template's constant value, or null if it contains
+         * substitutions
+         */
+        String getConstant() {
+            final StringBuilder res = new StringBuilder();
+
+            for (Segment segment : segments) {
+                if (!(segment instanceof LiteralSegment)) {
+                    return null;
+                }
+
+                segment.appendTo(res, null);
+            }
+
+            return res.toString();
+        }
+
+        /**
+         * Appends the result of evaluating this template to a buffer.
+         *
+         * @param res The buffer to append to
+         * @param args The arguments for the action
+         */
+        private void appendTo(final StringBuilder res, final Object[] args) {
+            for (Segment segment : segments) {
+                segment.appendTo(res, args);
+            }
+        }
+
+    }
+
+    /**
+     * One piece of a compiled template.
+     */
+    private interface Segment {
+
+        /**
+         * Appends the value of this segment to a buffer.
+         *
+         * @param res The buffer to append to
+         * @param args The arguments for the action
+         */
+        void appendTo(StringBuilder res, Object[] args);
+
+    }
+
+    /**
+     * A segment of literal, already unescaped, text.
+     */
+    private static final class LiteralSegment implements Segment {
+
+        /** The text of this segment. */
+        private final String text;
+
+        /**
+         * Creates a new literal segment.
+         *
+         * @param text The text of the segment
+         */
+        public LiteralSegment(final String text) {
+            this.text = text;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void appendTo(final StringBuilder res, final Object[] args) {
+            res.append(text);
+        }
+
+    }
+
+    /**
+     * A segment which substitutes a range of words from the event.
+     */
+    private final class WordSegment implements Segment {
+
+        /** The index of the first word. */
+        private final int start;
+
+        /** The index of the last word, or -1 for all remaining words. */
+        private final int end;
+
+        /**
+         * Creates a new word segment.
+         *
+         * @param start The index of the first word
+         * @param end The index of the last word, or -1 for all remaining words
+         */
+        public WordSegment(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void appendTo(final StringBuilder res, final Object[] args) {
+            final CommandArguments words = args[2] instanceof String
+                    ? new CommandArguments((String) args[2])
+                    : new CommandArguments(Arrays.asList((String[]) args[2]));
+
+            expand(res, words.getWordsAsString(start,
+                    end == -1 ? words.getWords().length - 1 : end), args);
+        }
+
+    }
+
+    /**
+     * A segment which evaluates a component chain against an argument.
+     */
+    private final class ComponentSegment implements Segment {
+
+        /** The argument the chain is evaluated against. */
+        private final int argument;
+
+        /** The pre-built component chain. */
+        private final ActionComponentChain chain;
+
+        /**
+         * Creates a new component segment.
+         *
+         * @param argument The argument the chain is evaluated against
+         * @param chain The component chain to evaluate
+         */
+        public ComponentSegment(final int argument, final ActionComponentChain chain) {
+            this.argument = argument;
+            this.chain = chain;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void appendTo(final StringBuilder res, final Object[] args) {
+            res.append(checkConnection(chain, args, args[argument]));
+        }
+
+    }
+
+    /**
+     * A segment which substitutes a config setting or, failing that, a
+     * component of the event's server.
+     */
+    private final class NamedSegment implements Segment {
+
+        /** The name of the substitution. */
+        private final String name;
+
+        /** Whether the name may refer to a server component. */
+        private final boolean serverSub;
+
+        /** The pre-built server component chain, or null if invalid. */
+        private final ActionComponentChain chain;
+
+        /**
+         * Creates a new named segment.
+         *
+         * @param name The name of the substitution
+         * @param serverSub Whether the name may refer to a server component
+         * @param chain The server component chain, or null if invalid
+         */
+        public NamedSegment(final String name, final boolean serverSub,
+                final ActionComponentChain chain) {
+            this.name = name;
+            this.serverSub = serverSub;
+            this.chain = chain;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void appendTo(final StringBuilder res, final Object[] args) {
+            final ConfigManager manager = getConfigManager(args);
+
+            if (manager.hasOptionString("actions", name)) {
+                expand(res, manager.getOption("actions", name), args);
+                return;
+            }
+
+            if (serverSub) {
+                final Server server = ((FrameContainer) args[0]).getServer();
+
+                if (server != null) {
+                    res.append(chain == null ? ERR_ILLEGAL_COMPONENT
+                            : checkConnection(chain, args, server));
+                    return;
+                }
+            }
+
+            res.append(ERR_NOT_DEFINED);
+        }
+
+    }
+
+    /**
+     * A braced segment whose name is itself built from substitutions, and so
+     * can only be resolved when evaluated.
+     */
+    private final class DynamicSegment implements Segment {
+
+        /** The template which produces the substitution's name. */
+        private final Template inner;
+
+        /**
+         * Creates a new dynamic segment.
+         *
+         * @param inner The template which produces the substitution's name
+         */
+        public DynamicSegment(final Template inner) {
+            this.inner = inner;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void appendTo(final StringBuilder res, final Object[] args) {
+            final StringBuilder name = new StringBuilder();
+            inner.appendTo(name, args);
+            resolve(name.toString()).appendTo(res, args);
+        }
+
+    }
+
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.actions;
+
+import java.util.List;
+
+/**
+ * Evaluates an action's conditions according to its condition tree, testing
+ * each condition only when its result is needed. Conjunctions stop at the
+ * first failing branch and disjunctions at the first passing one, and the
+ * branches of each are ordered so that cheaper conditions are tested first.
+ * Conditions have no side effects, so reordering them does not change the
+ * result.
+ *
+ * @since 0.6.5
+ */
+final class ConditionEvaluator {
+
+    /** The root of the compiled tree. */
+    private final Node root;
+
+    /** The number of conditions this evaluator was built for. */
+    private final int size;
+
+    /**
+     * Creates a new evaluator for the specified tree and conditions.
+     *
+     * @param tree The condition tree describing how to combine conditions
+     * @param conditions The conditions referenced by the tree
+     */
+    ConditionEvaluator(final ConditionTree tree, final List<ActionCondition> conditions) {
+        this.size = conditions.size();
+        this.root = build(tree, conditions);
+    }
+
+    /**
+     * Retrieves the number of conditions this evaluator was built for.
+     *
+     * @return The number of conditions
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Evaluates the conditions for the specified event.
+     *
+     * @param sub The substitutor to use for condition targets
+     * @param args The arguments for the event
+     * @return True if the conditions pass, false otherwise
+     */
+    boolean evaluate(final ActionSubstitutor sub, final Object[] args) {
+        return root.evaluate(sub, args);
+    }
+
+    /**
+     * Builds a node for the specified tree.
+     *
+     * @param tree The tree to be compiled
+     * @param conditions The conditions referenced by the tree
+     * @return A node which evaluates the tree
+     */
+    private static Node build(final ConditionTree tree,
+            final List<ActionCondition> conditions) {
+        switch (tree.getOperation()) {
+            case VAR:
+                return new Leaf(conditions.get(tree.getArgument()));
+            case NOT:
+                return new Not(build(tree.getLeftArg(), conditions));
+            case AND:
+                return new Binary(true, build(tree.getLeftArg(), conditions),
+                        build(tree.getRightArg(), conditions));
+            case OR:
+                return new Binary(false, build(tree.getLeftArg(), conditions),
+                        build(tree.getRightArg(), conditions));
+            default:
+                return new Constant();
+        }
+    }
+
+    /** A node in a compiled condition tree. */
+    private abstract static class Node {
+
+        /**
+         * Retrieves the estimated cost of evaluating this node.
+         *
+         * @return This node's estimated cost
+         */
+        abstract int getCost();
+
+        /**
+         * Evaluates this node.
+         *
+         * @param sub The substitutor to use for condition targets
+         * @param args The arguments for the event
+         * @return The result of the evaluation
+         */
+        abstract boolean evaluate(ActionSubstitutor sub, Object[] args);
+
+    }
+
+    /** A node which tests a single condition. */
+    private static final class Leaf extends Node {
+
+        /** The condition to be tested. */
+        private final ActionCondition condition;
+
+        /** The estimated cost of the condition. */
+        private final int cost;
+
+        /**
+         * Creates a new leaf node.
+         *
+         * @param condition The condition to be tested
+         */
+        public Leaf(final ActionCondition condition) {
+            this.condition = condition;
+            this.cost = condition.getCost();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        int getCost() {
+            return cost;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        boolean evaluate(final ActionSubstitutor sub, final Object[] args) {
+            return condition.test(sub, args);
+        }
+
+    }
+
+    /** A node which negates its child. */
+    private static final class Not extends Node {
+
+        /** The node to be negated. */
+        private final Node child;
+
+        /**
+         * Creates a new negation node.
+         *
+         * @param child The node to be negated
+         */
+        public Not(final Node child) {
+            this.child = child;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        int getCost() {
+            return child.getCost();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        boolean evaluate(final ActionSubstitutor sub, final Object[] args) {
+            return !child.evaluate(sub, args);
+        }
+
+    }
+
+    /** A short-circuiting conjunction or disjunction. */
+    private static final class Binary extends Node {
+
+        /** True for a conjunction, false for a disjunction. */
+        private final boolean conjunction;
+
+        /** The cheaper of the two children, evaluated first. */
+        private final Node first;
+
+        /** The more expensive of the two children. */
+        private final Node second;
+
+        /**
+         * Creates a new binary node.
+         *
+         * @param conjunction True for a conjunction, false for a disjunction
+         * @param left The left child from the condition tree
+         * @param right The right child from the condition tree
+         */
+        public Binary(final boolean conjunction, final Node left, final Node right) {
+            this.conjunction = conjunction;
+            this.first = right.getCost() < left.getCost() ? right : left;
+            this.second = first == left ? right : left;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        int getCost() {
+            return first.getCost() + second.getCost();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        boolean evaluate(final ActionSubstitutor sub, final Object[] args) {
+            if (conjunction) {
+                return first.evaluate(sub, args) && second.evaluate(sub, args);
+            } else {
+                return first.evaluate(sub, args) || second.evaluate(sub, args);
+            }
+        }
+
+    }
+
+    /** A node for an empty tree, which always passes. */
+    private static final class Constant extends Node {
+
+        /** {@inheritDoc} */
+        @Override
+        int getCost() {
+            return 0;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        boolean evaluate(final ActionSubstitutor sub, final Object[] args) {
+            return true;
+        }
+
+    }
+
+}
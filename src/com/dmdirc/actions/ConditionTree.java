@@ -100,6 +100,46 @@ public class ConditionTree {
         this.op = OPERATION.NOOP;
     }
 
+    /**
+     * Retrieves the operation this tree performs.
+     *
+     * @return This tree's operation
+     * @since 0.6.5
+     */
+    OPERATION getOperation() {
+        return op;
+    }
+
+    /**
+     * Retrieves the left (or only) subtree of this tree.
+     *
+     * @return This tree's left subtree, or null for VAR and NOOP trees
+     * @since 0.6.5
+     */
+    ConditionTree getLeftArg() {
+        return leftArg;
+    }
+
+    /**
+     * Retrieves the right subtree of this tree.
+     *
+     * @return This tree's right subtree, or null for non-binary trees
+     * @since 0.6.5
+     */
+    ConditionTree getRightArg() {
+        return rightArg;
+    }
+
+    /**
+     * Retrieves the argument tested by this tree.
+     *
+     * @return This tree's argument, or -1 if it is not a VAR tree
+     * @since 0.6.5
+     */
+    int getArgument() {
+        return argument;
+    }
+
     /**
      * Retrieves the highest argument number that is used in this condition tree.
      *
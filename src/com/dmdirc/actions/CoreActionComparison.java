@@ -26,6 +26,9 @@ import com.dmdirc.actions.interfaces.ActionComparison;
 import com.dmdirc.ui.messages.ColourManager;
 
 import java.awt.Color;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -40,7 +43,7 @@ public enum CoreActionComparison implements ActionComparison {
         @Override
         public boolean test(final Object arg1, final Object arg2) {
             try {
-                return ((String) arg1).matches((String) arg2);
+                return getPattern((String) arg2).matcher((String) arg1).matches();
             } catch (PatternSyntaxException pse) {
                 return false;
             }
@@ -230,4 +233,36 @@ public enum CoreActionComparison implements ActionComparison {
         public String getName() { return "is less than"; }
     };
 
+    /** The maximum number of compiled regular expressions to cache. */
+    private static final int PATTERN_CACHE_SIZE = 256;
+
+    /** Compiled regular expressions used by {@link #STRING_REGEX}. */
+    private static final ConcurrentMap<String, Pattern> PATTERNS
+            = new ConcurrentHashMap<String, Pattern>();
+
+    /**
+     * Retrieves a compiled version of the specified regular expression,
+     * compiling and caching it if necessary.
+     *
+     * @param regex The regular expression to be compiled
+     * @return A compiled pattern for the expression
+     * @throws PatternSyntaxException If the expression is invalid
+     * @since 0.6.5
+     */
+    static Pattern getPattern(final String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+
+            if (PATTERNS.size() >= PATTERN_CACHE_SIZE) {
+                PATTERNS.clear();
+            }
+
+            PATTERNS.put(regex, pattern);
+        }
+
+        return pattern;
+    }
+
 }
@@ -61,6 +61,8 @@ public enum CoreActionType implements ActionType {
     CLIENT_USER_INPUT(ClientEvents.CLIENT_EVENT_WITH_BUFFER, "User input"),
     /** Line added. */
     CLIENT_LINE_ADDED(ClientEvents.WINDOW_EVENT_WITH_MESSAGE, "Line added to a window"),
+    /** Batch of lines added. */
+    CLIENT_LINES_ADDED(ClientEvents.WINDOW_EVENT_WITH_MESSAGES, "Lines added to a window"),
     /** Popup generated. */
     CLIENT_POPUP_GENERATED(ClientEvents.POPUP_EVENT, "Popup menu generated"),
     /** String styled. */
@@ -44,6 +44,8 @@ public enum ClientEvents implements ActionMetaType {
     WINDOW_EVENT(new String[]{"window"}, FrameContainer.class),
     /** Client event with frame and message. */
     WINDOW_EVENT_WITH_MESSAGE(new String[]{"window", "message"}, FrameContainer.class, String.class),
+    /** Client event with frame and a batch of messages. */
+    WINDOW_EVENT_WITH_MESSAGES(new String[]{"window", "messages"}, FrameContainer.class, String[].class),
     /** A popup-related event. */
     POPUP_EVENT(new String[]{"popup type", "popup", "configuration manager"}, PopupType.class, PopupMenu.class, ConfigManager.class),
     /** Client event type, with a key argument. */
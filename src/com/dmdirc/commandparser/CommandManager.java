@@ -270,6 +270,7 @@ public class CommandManager {
         registerCommand(new AliasCommand());
         registerCommand(new AllServers());
         registerCommand(new Clear());
+        registerCommand(new ConfigStatsCommand());
         registerCommand(new Echo());
         registerCommand(new Exit());
         registerCommand(new Help());
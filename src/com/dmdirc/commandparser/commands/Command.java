@@ -23,11 +23,14 @@
 package com.dmdirc.commandparser.commands;
 
 import com.dmdirc.FrameContainer;
+import com.dmdirc.LineBatch;
 import com.dmdirc.commandparser.CommandArguments;
 import com.dmdirc.commandparser.CommandManager;
 import com.dmdirc.commandparser.commands.context.CommandContext;
 import com.dmdirc.ui.messages.Styliser;
 
+import java.util.Date;
+
 /**
  * Represents a generic command.
  */
@@ -53,6 +56,24 @@ public abstract class Command {
         }
     }
 
+    /**
+     * Adds a line, if appropriate, to the specified batch. Commands which
+     * output many lines should collect them in a batch obtained from
+     * {@link FrameContainer#createLineBatch()} and commit it once done.
+     *
+     * @param batch The batch of output to add the line to
+     * @param isSilent Whether this command is being silenced or not
+     * @param type The type of message to send
+     * @param args The arguments of the message
+     * @since 0.6.5
+     */
+    protected final void sendLine(final LineBatch batch,
+            final boolean isSilent, final String type, final Object ... args) {
+        if (!isSilent && batch != null) {
+            batch.addLine(type, new Date(), args);
+        }
+    }
+
     /**
      * Sends a usage line, if appropriate, to the specified target.
      *
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.commandparser.commands.global;
+
+import com.dmdirc.FrameContainer;
+import com.dmdirc.commandparser.CommandArguments;
+import com.dmdirc.commandparser.CommandInfo;
+import com.dmdirc.commandparser.CommandType;
+import com.dmdirc.commandparser.commands.Command;
+import com.dmdirc.commandparser.commands.IntelligentCommand;
+import com.dmdirc.commandparser.commands.context.CommandContext;
+import com.dmdirc.config.ConfigStats;
+import com.dmdirc.ui.input.AdditionalTabTargets;
+
+import java.util.List;
+
+/**
+ * Allows the user to control and inspect config lookup statistics.
+ *
+ * @since 0.6.5
+ */
+public class ConfigStatsCommand extends Command implements IntelligentCommand,
+        CommandInfo {
+
+    /** The number of options shown by default. */
+    private static final int DEFAULT_COUNT = 10;
+
+    /** {@inheritDoc} */
+    @Override
+    public void execute(final FrameContainer origin,
+            final CommandArguments args, final CommandContext context) {
+        final String[] arguments = args.getArguments();
+
+        if (arguments.length == 0) {
+            showStats(origin, args.isSilent(), DEFAULT_COUNT);
+        } else if ("on".equalsIgnoreCase(arguments[0])) {
+            ConfigStats.setEnabled(true);
+            sendLine(origin, args.isSilent(), FORMAT_OUTPUT,
+                    "Config statistics enabled.");
+        } else if ("off".equalsIgnoreCase(arguments[0])) {
+            ConfigStats.setEnabled(false);
+            sendLine(origin, args.isSilent(), FORMAT_OUTPUT,
+                    "Config statistics disabled.");
+        } else if ("reset".equalsIgnoreCase(arguments[0])) {
+            ConfigStats.reset();
+            sendLine(origin, args.isSilent(), FORMAT_OUTPUT,
+                    "Config statistics reset.");
+        } else {
+            try {
+                showStats(origin, args.isSilent(), Integer.parseInt(arguments[0]));
+            } catch (NumberFormatException ex) {
+                showUsage(origin, args.isSilent(), getName(), "[on|off|reset|count]");
+            }
+        }
+    }
+
+    /**
+     * Shows the user the most frequently looked up options.
+     *
+     * @param origin The window the command was issued from
+     * @param isSilent Whether or not the command is being silenced or not
+     * @param count The maximum number of options to show
+     */
+    private void showStats(final FrameContainer origin, final boolean isSilent,
+            final int count) {
+        final List<ConfigStats.OptionStats> stats = ConfigStats.getTopStats(count);
+
+        if (stats.isEmpty()) {
+            sendLine(origin, isSilent, FORMAT_OUTPUT, ConfigStats.isEnabled()
+                    ? "No config lookups have been recorded."
+                    : "Config statistics are disabled. Use '"
+                    + getName() + " on' to enable them.");
+            return;
+        }
+
+        final String[] headers = {"Option", "Lookups", "Hits", "Misses", "Resolving"};
+        final String[][] data = new String[stats.size()][];
+
+        for (int i = 0; i < data.length; i++) {
+            final ConfigStats.OptionStats option = stats.get(i);
+            data[i] = new String[]{
+                option.getDomain() + "." + option.getOption(),
+                String.valueOf(option.getLookups()),
+                String.valueOf(option.getHits()),
+                String.valueOf(option.getMisses()),
+                option.getResolveTime() / 1000 + "us",
+            };
+        }
+
+        sendLine(origin, isSilent, FORMAT_OUTPUT, doTable(headers, data));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return "configstats";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean showInHelp() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CommandType getType() {
+        return CommandType.TYPE_GLOBAL;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getHelp() {
+        return "configstats [on|off|reset|count] - controls config lookup "
+                + "statistics, or shows the most looked up settings";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AdditionalTabTargets getSuggestions(final int arg,
+            final IntelligentCommandContext context) {
+        final AdditionalTabTargets res = new AdditionalTabTargets().excludeAll();
+
+        if (arg == 0) {
+            res.add("on");
+            res.add("off");
+            res.add("reset");
+        }
+
+        return res;
+    }
+
+}
@@ -23,6 +23,7 @@
 package com.dmdirc.commandparser.commands.global;
 
 import com.dmdirc.FrameContainer;
+import com.dmdirc.LineBatch;
 import com.dmdirc.WritableFrameContainer;
 import com.dmdirc.commandparser.CommandArguments;
 import com.dmdirc.commandparser.CommandInfo;
@@ -70,14 +71,16 @@ public class Help extends Command implements IntelligentCommand, CommandInfo {
 
         Collections.sort(commands);
 
-        sendLine(origin, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED
+        final LineBatch batch = origin.createLineBatch();
+
+        sendLine(batch, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED
                 + "----------------------- Available commands -------");
 
         final StringBuilder builder = new StringBuilder();
 
         for (String command : commands) {
             if (builder.length() + command.length() + 1 > 50) {
-                sendLine(origin, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED + builder.toString());
+                sendLine(batch, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED + builder.toString());
                 builder.delete(0, builder.length());
             } else if (builder.length() > 0) {
                 builder.append(' ');
@@ -87,11 +90,12 @@ public class Help extends Command implements IntelligentCommand, CommandInfo {
         }
 
         if (builder.length() > 0) {
-            sendLine(origin, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED + builder.toString());
+            sendLine(batch, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED + builder.toString());
         }
 
-        sendLine(origin, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED
+        sendLine(batch, isSilent, FORMAT_OUTPUT, Styliser.CODE_FIXED
                 + "--------------------------------------------------");
+        batch.commit();
     }
 
     /**
@@ -23,6 +23,7 @@
 package com.dmdirc.commandparser.commands.server;
 
 import com.dmdirc.FrameContainer;
+import com.dmdirc.LineBatch;
 import com.dmdirc.Server;
 import com.dmdirc.commandparser.CommandArguments;
 import com.dmdirc.commandparser.CommandInfo;
@@ -82,11 +83,13 @@ public class Ignore extends Command implements IntelligentCommand,
             entries = ignoreList.getRegexList();
         }
 
+        final LineBatch batch = origin.createLineBatch();
         int i = 0;
         for (String line : entries) {
             i++;
-            sendLine(origin, args.isSilent(), FORMAT_OUTPUT, i + ". " + line);
+            sendLine(batch, args.isSilent(), FORMAT_OUTPUT, i + ". " + line);
         }
+        batch.commit();
     }
 
     protected void executeAdd(final FrameContainer origin, final Server server,
@@ -42,6 +42,7 @@ import com.dmdirc.util.RollingList;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Represents a generic command parser. A command parser takes a line of input
@@ -236,11 +237,23 @@ public abstract class CommandParser implements Serializable {
      * @return The timestamp that the command was used, or 0 if it wasn't
      */
     public long getCommandTime(final String command) {
+        return getCommandTime(Pattern.compile(command, Pattern.CASE_INSENSITIVE));
+    }
+
+    /**
+     * Retrieves the most recent time that a command matching the specified
+     * pattern was used. Commands should not include command or silence chars.
+     *
+     * @param command The pattern matching the command to search for
+     * @return The timestamp that the command was used, or 0 if it wasn't
+     * @since 0.6.5
+     */
+    public long getCommandTime(final Pattern command) {
         long res = 0;
 
         synchronized(history) {
             for (PreviousCommand pc : history.getList()) {
-                if (pc.getLine().matches("(?i)" + command)) {
+                if (command.matcher(pc.getLine()).matches()) {
                     res = Math.max(res, pc.getTime());
                 }
             }
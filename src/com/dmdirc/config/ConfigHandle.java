@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import com.dmdirc.interfaces.ConfigChangeListener;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A typed handle to a single setting in a {@link ConfigManager}. The
+ * setting is read and converted the first time it is requested, and the
+ * converted value is then held until the setting changes, so reading a
+ * handle is normally just a field load.
+ * <p>
+ * Handles are created using the <code>bind</code> methods in
+ * {@link ConfigManager}, and remain registered with their manager until
+ * {@link #unbind()} is called.
+ *
+ * @param <T> The type of value held by this handle
+ * @since 0.6.5
+ */
+public abstract class ConfigHandle<T> implements ConfigChangeListener {
+
+    /** The manager that this handle reads from. */
+    private final ConfigManager manager;
+
+    /** The domain of the setting. */
+    private final String domain;
+
+    /** The name of the setting. */
+    private final String option;
+
+    /** The number of times the setting has changed. */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /** The most recently read value, or null if it has not been read. */
+    private volatile Value<T> value;
+
+    /**
+     * Creates a new handle for the specified setting.
+     *
+     * @param manager The manager to read the setting from
+     * @param domain The domain of the setting
+     * @param option The name of the setting
+     */
+    protected ConfigHandle(final ConfigManager manager, final String domain,
+            final String option) {
+        this.manager = manager;
+        this.domain = domain;
+        this.option = option;
+    }
+
+    /**
+     * Retrieves the domain of the setting this handle is bound to.
+     *
+     * @return This handle's domain
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Retrieves the name of the setting this handle is bound to.
+     *
+     * @return This handle's option name
+     */
+    public String getOption() {
+        return option;
+    }
+
+    /**
+     * Retrieves the current value of the setting.
+     *
+     * @return The converted value of the setting
+     */
+    public T get() {
+        final Value<T> current = value;
+
+        if (current != null && current.generation == generation.get()) {
+            return current.value;
+        }
+
+        // Read again if the setting changes while we're reading, so that
+        // a stale value is never published as current.
+        int before;
+        T result;
+        do {
+            before = generation.get();
+            result = read(manager, domain, option);
+        } while (generation.get() != before);
+
+        value = new Value<T>(result, before);
+        return result;
+    }
+
+    /**
+     * Reads and converts the value of the setting.
+     *
+     * @param manager The manager to read the setting from
+     * @param domain The domain of the setting
+     * @param option The name of the setting
+     * @return The converted value of the setting
+     */
+    protected abstract T read(final ConfigManager manager, final String domain,
+            final String option);
+
+    /**
+     * Stops this handle from listening for changes to its setting. Once
+     * unbound, the handle may continue to return a stale value.
+     */
+    public void unbind() {
+        manager.removeListener(this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void configChanged(final String domain, final String key) {
+        generation.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return domain + "." + option + "=" + get();
+    }
+
+    /**
+     * A value read from the manager, together with the generation of the
+     * setting that it was read at.
+     *
+     * @param <T> The type of value held
+     */
+    private static final class Value<T> {
+
+        /** The value that was read. */
+        private final T value;
+
+        /** The generation of the setting when the value was read. */
+        private final int generation;
+
+        /**
+         * Creates a new value.
+         *
+         * @param value The value that was read
+         * @param generation The generation of the setting when it was read
+         */
+        public Value(final T value, final int generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+
+    }
+
+}
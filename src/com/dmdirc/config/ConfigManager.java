@@ -23,17 +23,26 @@
 package com.dmdirc.config;
 
 import com.dmdirc.interfaces.ConfigChangeListener;
-import com.dmdirc.util.MapList;
+import com.dmdirc.interfaces.ConfigChangeSetListener;
+import com.dmdirc.util.validators.PermissiveValidator;
 import com.dmdirc.util.validators.Validator;
 
+import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
@@ -42,22 +51,40 @@ import java.util.logging.Level;
 public class ConfigManager extends ConfigSource implements ConfigChangeListener,
         IdentityListener {
 
-    /** Temporary map for lookup stats. */
-    private static final Map<String, Integer> STATS = new TreeMap<String, Integer>();
-
     /** Magical domain to redirect to the version identity. */
     private static final String VERSION_DOMAIN = "version";
 
+    /** A validator used to read raw values from sources. */
+    private static final Validator<String> PERMISSIVE_VALIDATOR
+            = new PermissiveValidator<String>();
+
     /** A logger for this class. */
     private static final java.util.logging.Logger LOGGER = java.util.logging
             .Logger.getLogger(ConfigManager.class.getName());
 
-    /** A list of sources for this config manager. */
-    private final List<Identity> sources;
+    /**
+     * The sources for this config manager, sorted in order of precedence.
+     * The array is never modified once published; changes replace it with
+     * a new array while holding {@link #sourcesLock}, so readers need no
+     * locking.
+     */
+    private volatile Identity[] sources;
+
+    /** Lock held while changing this manager's sources. */
+    private final Object sourcesLock = new Object();
+
+    /**
+     * The raw values of each option that has been looked up, in order of
+     * source precedence, keyed on domain and then option.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, String[]>> resolved
+            = new ConcurrentHashMap<String, ConcurrentMap<String, String[]>>();
+
+    /** The number of times that resolved values have been invalidated. */
+    private final AtomicInteger invalidations = new AtomicInteger();
 
     /** The listeners registered for this manager. */
-    private final MapList<String, ConfigChangeListener> listeners
-            = new MapList<String, ConfigChangeListener>();
+    private final ListenerIndex listeners = new ListenerIndex();
 
     /** The protocol this manager is for. */
     private String protocol;
@@ -104,10 +131,11 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
         this.server = server;
         this.channel = chanName;
 
-        sources = IdentityManager.getSources(this);
+        final List<Identity> initial = IdentityManager.getSources(this);
+        sources = initial.toArray(new Identity[initial.size()]);
 
         if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Found " + sources.size() + " source(s) for: "
+            LOGGER.fine("Found " + sources.length + " source(s) for: "
                     + this.protocol + ", " + this.ircd + ", " + this.network
                     + ", " + this.server + ", " + this.channel);
         }
@@ -129,11 +157,9 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
             return IdentityManager.getVersionIdentity().getOption(domain, option, validator);
         }
 
-        synchronized (sources) {
-            for (Identity source : sources) {
-                if (source.hasOption(domain, option, validator)) {
-                    return source.getOption(domain, option, validator);
-                }
+        for (String value : getValues(domain, option)) {
+            if (!validator.validate(value).isFailure()) {
+                return value;
             }
         }
 
@@ -150,17 +176,100 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
             return IdentityManager.getVersionIdentity().hasOption(domain, option, validator);
         }
 
-        synchronized (sources) {
-            for (Identity source : sources) {
-                if (source.hasOption(domain, option, validator)) {
-                    return true;
-                }
+        for (String value : getValues(domain, option)) {
+            if (!validator.validate(value).isFailure()) {
+                return true;
             }
         }
 
         return false;
     }
 
+    /**
+     * Retrieves the values of the specified option from each of this
+     * manager's sources, in order of precedence. Values are cached until the
+     * option changes or this manager's sources change, so repeated lookups
+     * don't need to query each source.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return The values of the option in each source that defines it
+     */
+    private String[] getValues(final String domain, final String option) {
+        ConcurrentMap<String, String[]> options = resolved.get(domain);
+
+        if (options != null) {
+            final String[] values = options.get(option);
+
+            if (values != null) {
+                if (ConfigStats.isEnabled()) {
+                    ConfigStats.recordHit(domain, option);
+                }
+
+                return values;
+            }
+        } else {
+            options = new ConcurrentHashMap<String, String[]>();
+            final ConcurrentMap<String, String[]> existing
+                    = resolved.putIfAbsent(domain, options);
+
+            if (existing != null) {
+                options = existing;
+            }
+        }
+
+        final boolean stats = ConfigStats.isEnabled();
+        final long start = stats ? System.nanoTime() : 0;
+        final int before = invalidations.get();
+        final List<String> values = new ArrayList<String>(2);
+
+        for (Identity source : sources) {
+            if (source.hasOption(domain, option, PERMISSIVE_VALIDATOR)) {
+                values.add(source.getOption(domain, option, PERMISSIVE_VALIDATOR));
+            }
+        }
+
+        final String[] result = values.toArray(new String[values.size()]);
+        options.put(option, result);
+
+        if (invalidations.get() != before) {
+            // Something changed while we were looking, so our result may
+            // already be stale.
+            options.remove(option, result);
+        }
+
+        if (stats) {
+            ConfigStats.recordMiss(domain, option, System.nanoTime() - start);
+        }
+
+        return result;
+    }
+
+    /**
+     * Discards the cached values of the specified option.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     */
+    private void invalidate(final String domain, final String option) {
+        invalidations.incrementAndGet();
+
+        final Map<String, String[]> options = resolved.get(domain);
+
+        if (options != null) {
+            options.remove(option);
+        }
+    }
+
+    /**
+     * Discards all cached values, for example because this manager's
+     * sources have changed.
+     */
+    private void invalidateAll() {
+        invalidations.incrementAndGet();
+        resolved.clear();
+    }
+
     /**
      * Returns the name of all the options in the specified domain. If the
      * domain doesn't exist, an empty list is returned.
@@ -175,10 +284,10 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
 
         final Map<String, String> res = new HashMap<String, String>();
 
-        synchronized (sources) {
-            for (int i = sources.size() - 1; i >= 0; i--) {
-               res.putAll(sources.get(i).getOptions(domain));
-            }
+        final Identity[] current = sources;
+
+        for (int i = current.length - 1; i >= 0; i--) {
+            res.putAll(current[i].getOptions(domain));
         }
 
         return res;
@@ -190,30 +299,35 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      * @param identity The identity to be removed
      */
     public void removeIdentity(final Identity identity) {
-        if (!sources.contains(identity)) {
+        if (!hasSource(identity)) {
             return;
         }
 
-        final List<String[]> changed = new ArrayList<String[]>();
+        final Map<String, Set<String>> changed
+                = new LinkedHashMap<String, Set<String>>();
 
         // Determine which settings will have changed
         for (String domain : identity.getDomains()) {
             for (String option : identity.getOptions(domain).keySet()) {
                 if (identity.equals(getScope(domain, option))) {
-                    changed.add(new String[]{domain, option});
+                    addChange(changed, domain, option);
                 }
             }
         }
 
-        synchronized (sources) {
+        synchronized (sourcesLock) {
+            final List<Identity> updated = new ArrayList<Identity>(Arrays.asList(sources));
+
+            if (!updated.remove(identity)) {
+                return;
+            }
+
             identity.removeListener(this);
-            sources.remove(identity);
+            sources = updated.toArray(new Identity[updated.size()]);
         }
 
-        // Fire change listeners
-        for (String[] setting : changed) {
-            configChanged(setting[0], setting[1]);
-        }
+        invalidateAll();
+        fireChanges(changed);
     }
 
     /**
@@ -229,11 +343,9 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
             return IdentityManager.getVersionIdentity();
         }
 
-        synchronized (sources) {
-            for (Identity source : sources) {
-                if (source.hasOptionString(domain, option)) {
-                    return source;
-                }
+        for (Identity source : sources) {
+            if (source.hasOptionString(domain, option)) {
+                return source;
             }
         }
 
@@ -241,38 +353,42 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
     }
 
     /**
-     * Checks whether the specified identity applies to this config manager.
+     * Retrieves the target data that identities of the specified type must
+     * match in order to apply to this manager.
      *
-     * @param identity The identity to test
-     * @return True if the identity applies, false otherwise
+     * @param type The type of identity target
+     * @return The data to match against, or null if identities of the type
+     * never apply
+     * @since 0.6.5
      */
-    public boolean identityApplies(final Identity identity) {
-        String comp;
-
-        switch (identity.getTarget().getType()) {
+    String getTargetData(final ConfigTarget.TYPE type) {
+        switch (type) {
         case PROTOCOL:
-            comp = protocol;
-            break;
+            return protocol;
         case IRCD:
-            comp = ircd;
-            break;
+            return ircd;
         case NETWORK:
-            comp = network;
-            break;
+            return network;
         case SERVER:
-            comp = server;
-            break;
+            return server;
         case CHANNEL:
-            comp = channel;
-            break;
+            return channel;
         case CUSTOM:
             // We don't want custom identities
-            comp = null;
-            break;
+            return null;
         default:
-            comp = "";
-            break;
+            return "";
         }
+    }
+
+    /**
+     * Checks whether the specified identity applies to this config manager.
+     *
+     * @param identity The identity to test
+     * @return True if the identity applies, false otherwise
+     */
+    public boolean identityApplies(final Identity identity) {
+        final String comp = getTargetData(identity.getTarget().getType());
 
         final boolean result = comp != null
                 && identityTargetMatches(identity.getTarget().getData(), comp);
@@ -298,7 +414,8 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      * @since 0.6.3m2
      */
     protected boolean identityTargetMatches(final String actual, final String desired) {
-        return actual.startsWith("re:") ? desired.matches(actual.substring(3))
+        return IdentityIndex.isPattern(actual)
+                ? IdentityIndex.getPattern(actual.substring(3)).matcher(desired).matches()
                 : actual.equalsIgnoreCase(desired);
     }
 
@@ -309,21 +426,35 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      * @param identity The identity to be checked
      */
     public void checkIdentity(final Identity identity) {
-        if (!sources.contains(identity) && identityApplies(identity)) {
-            synchronized (sources) {
-                sources.add(identity);
+        if (!hasSource(identity) && identityApplies(identity)) {
+            synchronized (sourcesLock) {
+                if (hasSource(identity)) {
+                    return;
+                }
+
+                final Identity[] updated = Arrays.copyOf(sources, sources.length + 1);
+                updated[sources.length] = identity;
+                Arrays.sort(updated);
+
                 identity.addListener(this);
-                Collections.sort(sources);
+                sources = updated;
             }
 
+            invalidateAll();
+
+            final Map<String, Set<String>> changed
+                    = new LinkedHashMap<String, Set<String>>();
+
             // Determine which settings will have changed
             for (String domain : identity.getDomains()) {
                 for (String option : identity.getOptions(domain).keySet()) {
                     if (identity.equals(getScope(domain, option))) {
-                        configChanged(domain, option);
+                        addChange(changed, domain, option);
                     }
                 }
             }
+
+            fireChanges(changed);
         }
     }
 
@@ -335,10 +466,8 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
     public Set<String> getDomains() {
         final Set<String> res = new HashSet<String>();
 
-        synchronized (sources) {
-            for (Identity source : sources) {
-                res.addAll(source.getDomains());
-            }
+        for (Identity source : sources) {
+            res.addAll(source.getDomains());
         }
 
         return res;
@@ -349,7 +478,24 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      * @return This config manager's sources.
      */
     public List<Identity> getSources() {
-        return new ArrayList<Identity>(sources);
+        return new ArrayList<Identity>(Arrays.asList(sources));
+    }
+
+    /**
+     * Determines whether the specified identity is currently one of this
+     * manager's sources.
+     *
+     * @param identity The identity to look for
+     * @return True if the identity is a source of this manager
+     */
+    private boolean hasSource(final Identity identity) {
+        for (Identity source : sources) {
+            if (source.equals(identity)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -395,48 +541,156 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
         this.server = server;
         this.channel = channel + "@" + network;
 
-        for (Identity identity : new ArrayList<Identity>(sources)) {
-            if (!identityApplies(identity)) {
-                LOGGER.fine("Removing identity that no longer applies: " + identity);
-                removeIdentity(identity);
+        final Map<String, Set<String>> changed
+                = new LinkedHashMap<String, Set<String>>();
+
+        synchronized (sourcesLock) {
+            final List<Identity> oldSources = Arrays.asList(sources);
+            final List<Identity> newSources = new ArrayList<Identity>();
+
+            for (Identity identity : oldSources) {
+                if (identityApplies(identity)) {
+                    newSources.add(identity);
+                }
             }
-        }
 
-        final List<Identity> newSources = IdentityManager.getSources(this);
-        for (Identity identity : newSources) {
-            LOGGER.fine("Testing new identity: " + identity);
-            checkIdentity(identity);
+            for (Identity identity : IdentityManager.getSources(this)) {
+                if (!newSources.contains(identity)) {
+                    newSources.add(identity);
+                }
+            }
+
+            final Identity[] updated = newSources.toArray(new Identity[newSources.size()]);
+            Arrays.sort(updated);
+
+            // Only settings defined by identities that are being added or
+            // removed can change, so compare the effective values of those
+            // before and after the migration.
+            final Map<String, Set<String>> candidates
+                    = new LinkedHashMap<String, Set<String>>();
+
+            for (Identity identity : oldSources) {
+                if (!newSources.contains(identity)) {
+                    LOGGER.fine("Removing identity that no longer applies: " + identity);
+                    identity.removeListener(this);
+                    addOptions(candidates, identity);
+                }
+            }
+
+            for (Identity identity : newSources) {
+                if (!oldSources.contains(identity)) {
+                    LOGGER.fine("Adding new identity: " + identity);
+                    identity.addListener(this);
+                    addOptions(candidates, identity);
+                }
+            }
+
+            for (Map.Entry<String, Set<String>> entry : candidates.entrySet()) {
+                for (String option : entry.getValue()) {
+                    final String oldValue = getValue(sources, entry.getKey(), option);
+                    final String newValue = getValue(updated, entry.getKey(), option);
+
+                    if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+                        addChange(changed, entry.getKey(), option);
+                    }
+                }
+            }
+
+            sources = updated;
         }
 
+        invalidateAll();
+        fireChanges(changed);
+
         if (LOGGER.isLoggable(Level.INFO)) {
-            LOGGER.info("New identities: " + sources);
+            LOGGER.info("New identities: " + Arrays.toString(sources));
+        }
+    }
+
+    /**
+     * Retrieves the raw value of the specified option from the first of the
+     * given sources which defines it.
+     *
+     * @param from The sources to read from, in order of precedence
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return The option's value, or null if none of the sources define it
+     */
+    private static String getValue(final Identity[] from, final String domain,
+            final String option) {
+        for (Identity source : from) {
+            if (source.hasOption(domain, option, PERMISSIVE_VALIDATOR)) {
+                return source.getOption(domain, option, PERMISSIVE_VALIDATOR);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds every option defined by the specified identity to a set of
+     * changes.
+     *
+     * @param changes The changes to add to
+     * @param identity The identity whose options should be added
+     */
+    private static void addOptions(final Map<String, Set<String>> changes,
+            final Identity identity) {
+        for (String domain : identity.getDomains()) {
+            for (String option : identity.getOptions(domain).keySet()) {
+                addChange(changes, domain, option);
+            }
+        }
+    }
+
+    /**
+     * Adds the specified option to a set of changes.
+     *
+     * @param changes The changes to add to
+     * @param domain The domain of the changed option
+     * @param option The name of the changed option
+     */
+    private static void addChange(final Map<String, Set<String>> changes,
+            final String domain, final String option) {
+        Set<String> options = changes.get(domain);
+
+        if (options == null) {
+            options = new LinkedHashSet<String>();
+            changes.put(domain, options);
         }
+
+        options.add(option);
     }
 
     /**
-     * Records the lookup request for the specified domain & option.
+     * Records the lookup request for the specified domain & option, if
+     * statistics are enabled.
      *
      * @param domain The domain that is being looked up
      * @param option The option that is being looked up
+     * @see ConfigStats
      */
-    @SuppressWarnings("PMD.AvoidCatchingNPE")
     protected static void doStats(final String domain, final String option) {
-        final String key = domain + "." + option;
-
-        try {
-            STATS.put(key, 1 + (STATS.containsKey(key) ? STATS.get(key) : 0));
-        } catch (NullPointerException ex) {
-            // JVM bugs ftl.
+        if (ConfigStats.isEnabled()) {
+            ConfigStats.recordLookup(domain, option);
         }
     }
 
     /**
-     * Retrieves the statistic map.
+     * Retrieves a snapshot of the number of lookups of each option. Options
+     * are only counted while {@link ConfigStats} is enabled.
      *
      * @return A map of config options to lookup counts
      */
     public static Map<String, Integer> getStats() {
-        return STATS;
+        final Map<String, Integer> res = new TreeMap<String, Integer>();
+
+        for (ConfigStats.OptionStats stats : ConfigStats.getAllStats()) {
+            res.put(stats.getDomain() + "." + stats.getOption(),
+                    (int) stats.getLookups());
+        }
+
+        return res;
     }
 
     /**
@@ -447,7 +701,7 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      */
     public void addChangeListener(final String domain,
             final ConfigChangeListener listener) {
-        addListener(domain, listener);
+        listeners.add(domain, null, listener);
     }
 
     /**
@@ -459,7 +713,149 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      */
     public void addChangeListener(final String domain, final String key,
             final ConfigChangeListener listener) {
-        addListener(domain + "." + key, listener);
+        listeners.add(domain, key, listener);
+    }
+
+    /**
+     * Binds a handle to the specified option, returning its raw value.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return A handle to the option's value
+     * @since 0.6.5
+     */
+    public ConfigHandle<String> bindString(final String domain,
+            final String option) {
+        return bind(new ConfigHandle<String>(this, domain, option) {
+
+            /** {@inheritDoc} */
+            @Override
+            protected String read(final ConfigManager manager,
+                    final String domain, final String option) {
+                return manager.getOption(domain, option);
+            }
+        });
+    }
+
+    /**
+     * Binds a handle to the specified required integer option.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return A handle to the option's integer value
+     * @see #getOptionInt(java.lang.String, java.lang.String, java.lang.String[])
+     * @since 0.6.5
+     */
+    public ConfigHandle<Integer> bindInt(final String domain,
+            final String option) {
+        return bind(new ConfigHandle<Integer>(this, domain, option) {
+
+            /** {@inheritDoc} */
+            @Override
+            protected Integer read(final ConfigManager manager,
+                    final String domain, final String option) {
+                return manager.getOptionInt(domain, option);
+            }
+        });
+    }
+
+    /**
+     * Binds a handle to the specified optional integer option. The handle's
+     * value is null if the option is unset or disabled.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return A handle to the option's integer value
+     * @see #getOptionInt(java.lang.String, java.lang.String, boolean, java.lang.String[])
+     * @since 0.6.5
+     */
+    public ConfigHandle<Integer> bindOptionalInt(final String domain,
+            final String option) {
+        return bind(new ConfigHandle<Integer>(this, domain, option) {
+
+            /** {@inheritDoc} */
+            @Override
+            protected Integer read(final ConfigManager manager,
+                    final String domain, final String option) {
+                return manager.getOptionInt(domain, option, false);
+            }
+        });
+    }
+
+    /**
+     * Binds a handle to the specified boolean option.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return A handle to the option's boolean value
+     * @since 0.6.5
+     */
+    public ConfigHandle<Boolean> bindBool(final String domain,
+            final String option) {
+        return bind(new ConfigHandle<Boolean>(this, domain, option) {
+
+            /** {@inheritDoc} */
+            @Override
+            protected Boolean read(final ConfigManager manager,
+                    final String domain, final String option) {
+                return manager.getOptionBool(domain, option);
+            }
+        });
+    }
+
+    /**
+     * Binds a handle to the specified colour option.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return A handle to the option's colour value
+     * @since 0.6.5
+     */
+    public ConfigHandle<Color> bindColour(final String domain,
+            final String option) {
+        return bind(new ConfigHandle<Color>(this, domain, option) {
+
+            /** {@inheritDoc} */
+            @Override
+            protected Color read(final ConfigManager manager,
+                    final String domain, final String option) {
+                return manager.getOptionColour(domain, option);
+            }
+        });
+    }
+
+    /**
+     * Binds a handle to the specified list option, with empty lines trimmed.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return A handle to an unmodifiable list of the option's values
+     * @since 0.6.5
+     */
+    public ConfigHandle<List<String>> bindList(final String domain,
+            final String option) {
+        return bind(new ConfigHandle<List<String>>(this, domain, option) {
+
+            /** {@inheritDoc} */
+            @Override
+            protected List<String> read(final ConfigManager manager,
+                    final String domain, final String option) {
+                return Collections.unmodifiableList(
+                        manager.getOptionList(domain, option));
+            }
+        });
+    }
+
+    /**
+     * Registers the specified handle to be told when its setting changes.
+     *
+     * @param <T> The type of value held by the handle
+     * @param handle The handle to be registered
+     * @return The given handle
+     */
+    private <T> ConfigHandle<T> bind(final ConfigHandle<T> handle) {
+        addChangeListener(handle.getDomain(), handle.getOption(), handle);
+        return handle;
     }
 
     /**
@@ -468,40 +864,91 @@ public class ConfigManager extends ConfigSource implements ConfigChangeListener,
      * @param listener The listener to be removed
      */
     public void removeListener(final ConfigChangeListener listener) {
-        synchronized (listeners) {
-            listeners.removeFromAll(listener);
+        listeners.remove(listener);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void configChanged(final String domain, final String key) {
+        invalidate(domain, key);
+
+        final ListenerIndex.DomainListeners targets = listeners.get(domain);
+
+        if (targets == null) {
+            return;
+        }
+
+        for (ConfigChangeListener listener : targets.getDomainListeners()) {
+            listener.configChanged(domain, key);
+        }
+
+        for (ConfigChangeListener listener : targets.getKeyListeners(key)) {
+            listener.configChanged(domain, key);
         }
     }
 
     /**
-     * Adds the specified listener to the internal map/list.
+     * Informs listeners of a batch of changed settings. Listeners which
+     * implement {@link ConfigChangeSetListener} are called once with all of
+     * the changes they are registered for; other listeners are called once
+     * for each setting.
      *
-     * @param key The key to use (domain or domain.key)
-     * @param listener The listener to register
+     * @param changes A map of changed domains to the keys changed within them
      */
-    private void addListener(final String key,
-            final ConfigChangeListener listener) {
-        synchronized (listeners) {
-            listeners.add(key, listener);
+    private void fireChanges(final Map<String, Set<String>> changes) {
+        if (changes.isEmpty()) {
+            return;
         }
-    }
 
-    /** {@inheritDoc} */
-    @Override
-    public void configChanged(final String domain, final String key) {
-        final List<ConfigChangeListener> targets
-                = new ArrayList<ConfigChangeListener>();
+        final Map<ConfigChangeSetListener, Map<String, Set<String>>> batched
+                = new IdentityHashMap<ConfigChangeSetListener, Map<String, Set<String>>>();
 
-        if (listeners.containsKey(domain)) {
-            targets.addAll(listeners.get(domain));
+        for (Map.Entry<String, Set<String>> entry : changes.entrySet()) {
+            final String domain = entry.getKey();
+            final ListenerIndex.DomainListeners targets = listeners.get(domain);
+
+            for (String key : entry.getValue()) {
+                invalidate(domain, key);
+
+                if (targets != null) {
+                    dispatch(targets.getDomainListeners(), domain, key, batched);
+                    dispatch(targets.getKeyListeners(key), domain, key, batched);
+                }
+            }
         }
 
-        if (listeners.containsKey(domain + "." + key)) {
-            targets.addAll(listeners.get(domain + "." + key));
+        for (Map.Entry<ConfigChangeSetListener, Map<String, Set<String>>> entry
+                : batched.entrySet()) {
+            entry.getKey().configChanged(entry.getValue());
         }
+    }
 
+    /**
+     * Informs the specified listeners of a changed setting, as part of a
+     * batch. Batch-aware listeners have the change recorded so they can be
+     * told about it once the batch is complete.
+     *
+     * @param targets The listeners to inform
+     * @param domain The domain of the changed setting
+     * @param key The key of the changed setting
+     * @param batched The changes to deliver to each batch-aware listener
+     */
+    private static void dispatch(final ConfigChangeListener[] targets,
+            final String domain, final String key,
+            final Map<ConfigChangeSetListener, Map<String, Set<String>>> batched) {
         for (ConfigChangeListener listener : targets) {
-            listener.configChanged(domain, key);
+            if (listener instanceof ConfigChangeSetListener) {
+                Map<String, Set<String>> listenerChanges = batched.get(listener);
+
+                if (listenerChanges == null) {
+                    listenerChanges = new LinkedHashMap<String, Set<String>>();
+                    batched.put((ConfigChangeSetListener) listener, listenerChanges);
+                }
+
+                addChange(listenerChanges, domain, key);
+            } else {
+                listener.configChanged(domain, key);
+            }
         }
     }
 
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import com.dmdirc.logger.ErrorLevel;
+import com.dmdirc.logger.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Collects statistics about config lookups: how often each option is looked
+ * up, how often the value came from a config manager's cache, and how long
+ * was spent resolving values from sources. Collection is disabled by default
+ * and costs a single volatile read per lookup while disabled. It can be
+ * enabled by setting the <code>dmdirc.configstats</code> system property,
+ * with the <code>configstats</code> command, or over JMX.
+ *
+ * @since 0.6.5
+ */
+public final class ConfigStats {
+
+    /** The name the management bean is registered under. */
+    private static final String MBEAN_NAME = "com.dmdirc:type=ConfigStats";
+
+    /** Whether statistics are currently being collected. */
+    private static volatile boolean enabled = Boolean.getBoolean("dmdirc.configstats");
+
+    /** Recorded statistics, keyed on domain and then option. */
+    private static final ConcurrentMap<String, ConcurrentMap<String, OptionStats>> STATS
+            = new ConcurrentHashMap<String, ConcurrentMap<String, OptionStats>>();
+
+    /** Creates a new instance of ConfigStats. */
+    private ConfigStats() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Determines whether config lookup statistics are being collected.
+     *
+     * @return True if statistics are being collected, false otherwise
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the collection of config lookup statistics.
+     * Statistics already recorded are kept until {@link #reset()} is called.
+     *
+     * @param newEnabled Whether statistics should be collected
+     */
+    public static void setEnabled(final boolean newEnabled) {
+        enabled = newEnabled;
+    }
+
+    /**
+     * Records a lookup of the specified option.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     */
+    static void recordLookup(final String domain, final String option) {
+        getStats(domain, option).lookups.increment();
+    }
+
+    /**
+     * Records that a value for the specified option was found in a config
+     * manager's cache.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     */
+    static void recordHit(final String domain, final String option) {
+        getStats(domain, option).hits.increment();
+    }
+
+    /**
+     * Records that the specified option had to be resolved from a config
+     * manager's sources.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @param nanos The time taken to resolve the option, in nanoseconds
+     */
+    static void recordMiss(final String domain, final String option,
+            final long nanos) {
+        final OptionStats stats = getStats(domain, option);
+        stats.misses.increment();
+        stats.nanos.add(nanos);
+    }
+
+    /**
+     * Retrieves the statistics for the specified option, creating them if
+     * necessary.
+     *
+     * @param domain The domain of the option
+     * @param option The name of the option
+     * @return The statistics for the option
+     */
+    private static OptionStats getStats(final String domain, final String option) {
+        ConcurrentMap<String, OptionStats> options = STATS.get(domain);
+
+        if (options == null) {
+            options = new ConcurrentHashMap<String, OptionStats>();
+            final ConcurrentMap<String, OptionStats> existing
+                    = STATS.putIfAbsent(domain, options);
+
+            if (existing != null) {
+                options = existing;
+            }
+        }
+
+        OptionStats stats = options.get(option);
+
+        if (stats == null) {
+            stats = new OptionStats(domain, option);
+            final OptionStats existing = options.putIfAbsent(option, stats);
+
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Retrieves the statistics for every option that has been recorded.
+     *
+     * @return A list of statistics for each recorded option
+     */
+    public static List<OptionStats> getAllStats() {
+        final List<OptionStats> res = new ArrayList<OptionStats>();
+
+        for (ConcurrentMap<String, OptionStats> options : STATS.values()) {
+            res.addAll(options.values());
+        }
+
+        return res;
+    }
+
+    /**
+     * Retrieves the statistics for the most frequently looked up options.
+     *
+     * @param count The maximum number of options to return
+     * @return A list of option statistics, most frequently looked up first
+     */
+    public static List<OptionStats> getTopStats(final int count) {
+        final List<OptionStats> res = getAllStats();
+
+        Collections.sort(res, new Comparator<OptionStats>() {
+
+            /** {@inheritDoc} */
+            @Override
+            public int compare(final OptionStats o1, final OptionStats o2) {
+                final long diff = o2.getLookups() - o1.getLookups();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+
+        return new ArrayList<OptionStats>(
+                res.subList(0, Math.min(Math.max(0, count), res.size())));
+    }
+
+    /** Discards all recorded statistics. */
+    public static void reset() {
+        STATS.clear();
+    }
+
+    /**
+     * Registers a management bean which exposes these statistics with the
+     * platform MBean server.
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(new Bean(), ConfigStatsMBean.class),
+                    new ObjectName(MBEAN_NAME));
+        } catch (JMException ex) {
+            Logger.appError(ErrorLevel.LOW, "Unable to register config statistics bean", ex);
+        }
+    }
+
+    /** Statistics for a single config option. */
+    public static final class OptionStats {
+
+        /** The domain of the option. */
+        private final String domain;
+
+        /** The name of the option. */
+        private final String option;
+
+        /** The number of lookups of the option. */
+        private final Counter lookups = new Counter();
+
+        /** The number of lookups answered from a cache. */
+        private final Counter hits = new Counter();
+
+        /** The number of lookups resolved from sources. */
+        private final Counter misses = new Counter();
+
+        /** The time spent resolving the option, in nanoseconds. */
+        private final Counter nanos = new Counter();
+
+        /**
+         * Creates a new set of option statistics.
+         *
+         * @param domain The domain of the option
+         * @param option The name of the option
+         */
+        private OptionStats(final String domain, final String option) {
+            this.domain = domain;
+            this.option = option;
+        }
+
+        /**
+         * Retrieves the domain of the option.
+         *
+         * @return The option's domain
+         */
+        public String getDomain() {
+            return domain;
+        }
+
+        /**
+         * Retrieves the name of the option.
+         *
+         * @return The option's name
+         */
+        public String getOption() {
+            return option;
+        }
+
+        /**
+         * Retrieves the number of times the option has been looked up.
+         *
+         * @return The number of lookups
+         */
+        public long getLookups() {
+            return lookups.sum();
+        }
+
+        /**
+         * Retrieves the number of times the option was found in a cache.
+         *
+         * @return The number of cache hits
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * Retrieves the number of times the option was resolved from sources.
+         *
+         * @return The number of cache misses
+         */
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /**
+         * Retrieves the total time spent resolving the option from sources.
+         *
+         * @return The resolution time, in nanoseconds
+         */
+        public long getResolveTime() {
+            return nanos.sum();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return domain + "." + option + ": " + getLookups() + " lookups, "
+                    + getHits() + " hits, " + getMisses() + " misses, "
+                    + getResolveTime() / 1000 + "us resolving";
+        }
+
+    }
+
+    /**
+     * A counter which spreads updates from different threads over several
+     * cells, so that concurrent lookups don't contend on a single value.
+     */
+    private static final class Counter {
+
+        /** The number of cells to spread updates over. Must be a power of two. */
+        private static final int CELLS = 8;
+
+        /** The spacing between cells, to keep each on its own cache line. */
+        private static final int SPACING = 8;
+
+        /** The cells holding partial counts. */
+        private final AtomicLongArray cells = new AtomicLongArray(CELLS * SPACING);
+
+        /** Increments this counter. */
+        public void increment() {
+            add(1);
+        }
+
+        /**
+         * Adds the specified amount to this counter.
+         *
+         * @param amount The amount to be added
+         */
+        public void add(final long amount) {
+            final int cell = (int) Thread.currentThread().getId() & (CELLS - 1);
+            cells.addAndGet(cell * SPACING, amount);
+        }
+
+        /**
+         * Sums the partial counts held by this counter.
+         *
+         * @return The total value of this counter
+         */
+        public long sum() {
+            long sum = 0;
+
+            for (int i = 0; i < CELLS; i++) {
+                sum += cells.get(i * SPACING);
+            }
+
+            return sum;
+        }
+
+    }
+
+    /** The management bean exposing these statistics. */
+    private static final class Bean implements ConfigStatsMBean {
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isEnabled() {
+            return ConfigStats.isEnabled();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void setEnabled(final boolean enabled) {
+            ConfigStats.setEnabled(enabled);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getLookups() {
+            long total = 0;
+
+            for (OptionStats stats : getAllStats()) {
+                total += stats.getLookups();
+            }
+
+            return total;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getHits() {
+            long total = 0;
+
+            for (OptionStats stats : getAllStats()) {
+                total += stats.getHits();
+            }
+
+            return total;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getMisses() {
+            long total = 0;
+
+            for (OptionStats stats : getAllStats()) {
+                total += stats.getMisses();
+            }
+
+            return total;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getResolveTime() {
+            long total = 0;
+
+            for (OptionStats stats : getAllStats()) {
+                total += stats.getResolveTime();
+            }
+
+            return total;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String[] listTopOptions(final int count) {
+            final List<OptionStats> top = getTopStats(count);
+            final String[] res = new String[top.size()];
+
+            for (int i = 0; i < res.length; i++) {
+                res[i] = top.get(i).toString();
+            }
+
+            return res;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void reset() {
+            ConfigStats.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+/**
+ * Management interface for config lookup statistics.
+ *
+ * @see ConfigStats
+ * @since 0.6.5
+ */
+public interface ConfigStatsMBean {
+
+    /**
+     * Determines whether config lookup statistics are being collected.
+     *
+     * @return True if statistics are being collected, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables the collection of config lookup statistics.
+     *
+     * @param enabled Whether statistics should be collected
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Retrieves the total number of config lookups recorded.
+     *
+     * @return The total number of lookups
+     */
+    long getLookups();
+
+    /**
+     * Retrieves the total number of lookups answered from a config manager's
+     * cache of resolved values.
+     *
+     * @return The total number of cache hits
+     */
+    long getHits();
+
+    /**
+     * Retrieves the total number of lookups which had to be resolved from a
+     * config manager's sources.
+     *
+     * @return The total number of cache misses
+     */
+    long getMisses();
+
+    /**
+     * Retrieves the total time spent resolving values from sources.
+     *
+     * @return The total resolution time, in nanoseconds
+     */
+    long getResolveTime();
+
+    /**
+     * Describes the most frequently looked up options.
+     *
+     * @param count The maximum number of options to describe
+     * @return A description of each of the most looked up options
+     */
+    String[] listTopOptions(int count);
+
+    /** Discards all recorded statistics. */
+    void reset();
+
+}
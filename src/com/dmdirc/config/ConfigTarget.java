@@ -69,6 +69,9 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     /** The user-defined ordering for this target. */
     protected int order = 50000;
 
+    /** The index containing an identity with this target, if any. */
+    private transient IdentityIndex index;
+
     /** Creates a new instance of ConfigTarget. */
     public ConfigTarget() {
         //Do nothing.
@@ -96,18 +99,21 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setGlobal() {
         type = TYPE.GLOBAL;
         data = "";
+        changed();
     }
 
     /** Sets this target to be a global default source. */
     public void setGlobalDefault() {
         type = TYPE.GLOBALDEFAULT;
         data = "";
+        changed();
     }
 
     /** Sets this target to be a theme source. */
     public void setTheme() {
         type = TYPE.THEME;
         data = "";
+        changed();
     }
 
     /**
@@ -119,6 +125,7 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setCustom(final String customType) {
         type = TYPE.CUSTOM;
         data = customType;
+        changed();
     }
 
     /**
@@ -140,6 +147,7 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setIrcd(final String ircd) {
         type = TYPE.IRCD;
         data = ircd;
+        changed();
     }
 
     /**
@@ -150,6 +158,7 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setNetwork(final String network) {
         type = TYPE.NETWORK;
         data = network;
+        changed();
     }
 
     /**
@@ -160,6 +169,7 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setServer(final String server) {
         type = TYPE.SERVER;
         data = server;
+        changed();
     }
 
     /**
@@ -170,6 +180,7 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setChannel(final String channel) {
         type = TYPE.CHANNEL;
         data = channel;
+        changed();
     }
 
     /**
@@ -181,6 +192,30 @@ public class ConfigTarget implements Comparable<ConfigTarget>, Serializable {
     public void setProtocol(final String protocol) {
         type = TYPE.PROTOCOL;
         data = protocol;
+        changed();
+    }
+
+    /**
+     * Sets the index which contains an identity with this target, and so
+     * must be updated if this target changes.
+     *
+     * @param index The index containing this target, or null if none does
+     * @since 0.6.5
+     */
+    void setIndex(final IdentityIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Informs the index containing this target, if any, that the target
+     * has changed.
+     */
+    private void changed() {
+        final IdentityIndex current = index;
+
+        if (current != null) {
+            current.update(this);
+        }
     }
 
     /**
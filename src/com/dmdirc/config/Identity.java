@@ -37,6 +37,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +82,12 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
     /** Whether this identity needs to be saved. */
     protected boolean needSave;
 
+    /** The number of changes made to this identity, used to detect changes during a save. */
+    private int revision;
+
+    /** Lock used to ensure only one save of this identity happens at a time. */
+    private final Object saveLock = new Object();
+
     /**
      * Creates a new instance of Identity.
      *
@@ -375,7 +382,7 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
                         // There was an old value, so we need to unset it so
                         // that the default shows through.
                         file.getKeyDomain(domain).remove(option);
-                        needSave = true;
+                        changed();
                         unset = true;
                     }
                 }
@@ -384,7 +391,7 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
             if (!unset && ((oldValue == null && value != null)
                     || (oldValue != null && !oldValue.equals(value)))) {
                 file.getKeyDomain(domain).put(option, value);
-                needSave = true;
+                changed();
             }
         }
 
@@ -446,7 +453,7 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
     public void unsetOption(final String domain, final String option) {
         synchronized (this) {
             file.getKeyDomain(domain).remove(option);
-            needSave = true;
+            changed();
         }
 
         fireSettingChange(domain, option);
@@ -475,71 +482,123 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
     }
 
     /**
-     * Saves this identity to disk if it has been updated.
+     * Marks this identity as needing to be saved, and schedules it to be
+     * written in the background. Callers must hold this identity's lock.
+     * <p>
+     * The global identity is not written in the background, as saving it
+     * removes any settings which match the defaults. Doing that while the
+     * client is running would discard settings the user chose explicitly
+     * if an addon's defaults happen to match them for a while. The global
+     * identity is saved along with everything else by
+     * {@link IdentityManager#save()}.
      */
-    public synchronized void save() {
-        LOGGER.log(Level.FINE, "{0}: save(); needsave = {1}", new Object[]{getName(), needSave});
-
-        if (needSave && file != null && file.isWritable()) {
-            if (myTarget != null && myTarget.getType() == ConfigTarget.TYPE.GLOBAL) {
-                LOGGER.log(Level.FINER, "{0}: I''m a global config", getName());
+    private void changed() {
+        needSave = true;
+        revision++;
 
-                // This branch is executed if this identity is global. In this
-                // case, we build a global config (removing ourself and the
-                // versions identity) and compare our values to the values
-                // contained in that. Any values that are the same can be unset
-                // from this identity (as they will default to their current
-                // value).
-                //
-                // Note that the updater channel is included in the version
-                // identity, and this is excluded from the global config. This
-                // means that once you manually set the channel it will stay
-                // like that until you manually change it again, as opposed
-                // to being removed as soon as you use a build from that
-                // channel.
+        if (file.getFile() != null && (myTarget == null
+                || myTarget.getType() != ConfigTarget.TYPE.GLOBAL)) {
+            IdentityWriter.getWriter().schedule(this);
+        }
+    }
 
-                if (globalConfig == null) {
-                    globalConfig = new ConfigManager("", "", "", "");
+    /**
+     * Saves this identity to disk if it has been updated. The file is written
+     * to a temporary location and then moved into place, so an interrupted
+     * save will not leave a truncated identity behind.
+     */
+    public void save() {
+        synchronized (saveLock) {
+            final Map<String, Map<String, String>> settings
+                    = new LinkedHashMap<String, Map<String, String>>();
+            final int savedRevision;
+
+            synchronized (this) {
+                LOGGER.log(Level.FINE, "{0}: save(); needsave = {1}",
+                        new Object[]{getName(), needSave});
+
+                if (!needSave || file == null || !file.isWritable()) {
+                    return;
                 }
 
-                globalConfig.removeIdentity(this);
-                globalConfig.removeIdentity(IdentityManager.getVersionIdentity());
+                if (myTarget != null && myTarget.getType() == ConfigTarget.TYPE.GLOBAL) {
+                    LOGGER.log(Level.FINER, "{0}: I''m a global config", getName());
+
+                    // This branch is executed if this identity is global. In this
+                    // case, we build a global config (removing ourself and the
+                    // versions identity) and compare our values to the values
+                    // contained in that. Any values that are the same can be unset
+                    // from this identity (as they will default to their current
+                    // value).
+                    //
+                    // Note that the updater channel is included in the version
+                    // identity, and this is excluded from the global config. This
+                    // means that once you manually set the channel it will stay
+                    // like that until you manually change it again, as opposed
+                    // to being removed as soon as you use a build from that
+                    // channel.
+
+                    if (globalConfig == null) {
+                        globalConfig = new ConfigManager("", "", "", "");
+                    }
 
-                if (LOGGER.isLoggable(Level.FINEST)) {
-                    for (Identity source : globalConfig.getSources()) {
-                        LOGGER.log(Level.FINEST, "{0}: source: {1}",
-                                new Object[]{getName(), source.getName()});
+                    globalConfig.removeIdentity(this);
+                    globalConfig.removeIdentity(IdentityManager.getVersionIdentity());
+
+                    if (LOGGER.isLoggable(Level.FINEST)) {
+                        for (Identity source : globalConfig.getSources()) {
+                            LOGGER.log(Level.FINEST, "{0}: source: {1}",
+                                    new Object[]{getName(), source.getName()});
+                        }
+                    }
+
+                    for (Map.Entry<String, Map<String, String>> entry
+                            : file.getKeyDomains().entrySet()) {
+                        final String domain = entry.getKey();
+
+                        for (Map.Entry<String, String> subentry
+                            : new HashSet<Map.Entry<String, String>>(entry.getValue().entrySet())) {
+                            final String key = subentry.getKey();
+                            final String value = subentry.getValue();
+
+                            if (globalConfig.hasOptionString(domain, key)
+                                    && globalConfig.getOption(domain, key).equals(value)) {
+                                LOGGER.log(Level.FINEST,
+                                        "{0}: found superfluous setting: {1}.{2} (= {3})",
+                                        new Object[]{getName(), domain, key, value});
+                                file.getKeyDomain(domain).remove(key);
+                            }
+                        }
                     }
                 }
 
+                if (file.isKeyDomain("temp")) {
+                    file.getKeyDomain("temp").clear();
+                }
+
                 for (Map.Entry<String, Map<String, String>> entry
                         : file.getKeyDomains().entrySet()) {
-                    final String domain = entry.getKey();
-
-                    for (Map.Entry<String, String> subentry
-                        : new HashSet<Map.Entry<String, String>>(entry.getValue().entrySet())) {
-                        final String key = subentry.getKey();
-                        final String value = subentry.getValue();
-
-                        if (globalConfig.hasOptionString(domain, key)
-                                && globalConfig.getOption(domain, key).equals(value)) {
-                            LOGGER.log(Level.FINEST,
-                                    "{0}: found superfluous setting: {1}.{2} (= {3})",
-                                    new Object[]{getName(), domain, key, value});
-                            file.getKeyDomain(domain).remove(key);
-                        }
-                    }
+                    settings.put(entry.getKey(),
+                            new LinkedHashMap<String, String>(entry.getValue()));
                 }
-            }
 
-            if (file.isKeyDomain("temp")) {
-                file.getKeyDomain("temp").clear();
+                savedRevision = revision;
             }
 
             try {
-                file.write();
+                if (file.getFile() == null) {
+                    synchronized (this) {
+                        file.write();
+                    }
+                } else {
+                    write(file.getFile(), settings);
+                }
 
-                needSave = false;
+                synchronized (this) {
+                    if (revision == savedRevision) {
+                        needSave = false;
+                    }
+                }
             } catch (IOException ex) {
                 Logger.userError(ErrorLevel.MEDIUM,
                         "Unable to save identity file: " + ex.getMessage());
@@ -547,6 +606,32 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
         }
     }
 
+    /**
+     * Atomically replaces the specified file with one containing the given
+     * settings.
+     *
+     * @param target The file to be written
+     * @param settings The settings to write to the file
+     * @throws IOException If the file couldn't be written or replaced
+     */
+    private static void write(final File target,
+            final Map<String, Map<String, String>> settings) throws IOException {
+        final File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        final ConfigFile tempFile = new ConfigFile(temp);
+
+        for (Map.Entry<String, Map<String, String>> entry : settings.entrySet()) {
+            tempFile.addDomain(entry.getKey(), entry.getValue());
+        }
+
+        tempFile.write();
+
+        // Some platforms won't rename over an existing file
+        if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target))) {
+            temp.delete();
+            throw new IOException("Unable to replace " + target.getAbsolutePath());
+        }
+    }
+
     /**
      * Deletes this identity from disk.
      */
@@ -578,6 +663,16 @@ public class Identity extends ConfigSource implements Comparable<Identity> {
         return file != null && file.getFile() != null && file.getFile().equals(target);
     }
 
+    /**
+     * Retrieves the file this identity was loaded from, if any.
+     *
+     * @return This identity's file, or null if it isn't backed by a file
+     * @since 0.6.5
+     */
+    File getFile() {
+        return file == null ? null : file.getFile();
+    }
+
     /**
      * Adds a new config change listener for this identity.
      *
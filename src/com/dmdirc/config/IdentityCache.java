@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import com.dmdirc.util.ConfigFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * A binary snapshot of parsed identity files. Each entry records the
+ * identity's file, that file's size and modification time, the identity's
+ * target and all of its settings. While loading, identities whose files are
+ * unchanged are rebuilt from the snapshot rather than being parsed again.
+ * <p>
+ * As modification times have a limited granularity, a file could change
+ * without its modification time changing if it was modified shortly before
+ * or after it was read. Files whose modification time is within
+ * {@link #MTIME_GRANULARITY} of, or after, the time the identities started
+ * being read are therefore never trusted, and are always parsed again.
+ *
+ * @since 0.6.5
+ */
+final class IdentityCache {
+
+    /** Marker at the start of a snapshot file. */
+    private static final int MAGIC = 0x444d4943;
+
+    /** Version of the snapshot format; bump whenever it changes. */
+    private static final int VERSION = 2;
+
+    /**
+     * The coarsest modification time granularity expected from a file
+     * system, in milliseconds (FAT records times to two seconds).
+     */
+    static final long MTIME_GRANULARITY = 2000;
+
+    /** A logger for this class. */
+    private static final java.util.logging.Logger LOGGER = java.util.logging
+            .Logger.getLogger(IdentityCache.class.getName());
+
+    /** The cached entries, keyed on the absolute path of their file. */
+    private final Map<String, Entry> entries;
+
+    /** The time at which the snapshotted identities started being read. */
+    private final long created;
+
+    /** The number of identities that have been served from this cache. */
+    private final AtomicInteger hits = new AtomicInteger();
+
+    /**
+     * Creates a new identity cache with the specified entries.
+     *
+     * @param entries The cached entries, keyed on file path
+     * @param created The time at which the snapshotted identities started
+     * being read
+     */
+    private IdentityCache(final Map<String, Entry> entries, final long created) {
+        this.entries = entries;
+        this.created = created;
+    }
+
+    /**
+     * Reads a snapshot from the specified file. If the file doesn't exist or
+     * can't be read, an empty cache is returned.
+     *
+     * @param file The snapshot file to read
+     * @return A cache of the identities in the snapshot
+     */
+    public static IdentityCache read(final File file) {
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        long created = 0;
+
+        if (!file.exists()) {
+            return new IdentityCache(entries, created);
+        }
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.fine("Ignoring identity cache with unknown format");
+                return new IdentityCache(entries, created);
+            }
+
+            created = in.readLong();
+            final int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                final Entry entry = readEntry(in);
+                entries.put(entry.path, entry);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Unable to read identity cache", ex);
+            entries.clear();
+        } catch (IllegalArgumentException ex) {
+            LOGGER.log(Level.FINE, "Corrupt identity cache", ex);
+            entries.clear();
+        } finally {
+            close(in);
+        }
+
+        return new IdentityCache(entries, created);
+    }
+
+    /**
+     * Builds an identity for the specified file from this cache, if the file
+     * hasn't changed since the snapshot was taken and wasn't modified too
+     * close to the snapshot being taken for that to be certain.
+     *
+     * @param file The identity file
+     * @return A new identity with the cached settings, or null if the file
+     * isn't cached or has changed
+     */
+    public Identity get(final File file) {
+        final Entry entry = entries.get(file.getAbsolutePath());
+
+        if (entry == null || entry.modified != file.lastModified()
+                || entry.size != file.length()
+                || entry.modified >= created - MTIME_GRANULARITY) {
+            return null;
+        }
+
+        final ConfigFile configFile = new ConfigFile(file);
+
+        for (Map.Entry<String, Map<String, String>> domain : entry.settings.entrySet()) {
+            configFile.addDomain(domain.getKey(),
+                    new LinkedHashMap<String, String>(domain.getValue()));
+        }
+
+        final ConfigTarget target = new ConfigTarget();
+        target.type = entry.type;
+        target.data = entry.data;
+        target.order = entry.order;
+
+        hits.incrementAndGet();
+        return new Identity(configFile, target);
+    }
+
+    /**
+     * Determines whether the specified identities exactly match the contents
+     * of this cache, i.e. whether every one of them was served from it.
+     *
+     * @param count The number of identities that would be written
+     * @return True if writing a new snapshot would be pointless
+     */
+    public boolean isCurrent(final int count) {
+        return hits.get() == count && entries.size() == count;
+    }
+
+    /**
+     * Writes a snapshot of the specified identities to a file. Identities
+     * which aren't backed by a file, or which have unsaved changes, are
+     * skipped.
+     *
+     * @param file The snapshot file to write
+     * @param identities The identities to include
+     * @param created The time at which the identities started being read
+     * from disk
+     * @throws IOException If the snapshot couldn't be written
+     */
+    public static void write(final File file, final Collection<Identity> identities,
+            final long created) throws IOException {
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(created);
+            out.writeInt(identities.size());
+
+            for (Identity identity : identities) {
+                writeIdentity(out, identity);
+            }
+        } finally {
+            close(out);
+        }
+
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            temp.delete();
+            throw new IOException("Unable to replace " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Selects the identities that can be included in a snapshot.
+     *
+     * @param identities The candidate identities
+     * @param res The collection to add cacheable identities to
+     */
+    public static void getCacheable(final Collection<Identity> identities,
+            final Collection<Identity> res) {
+        for (Identity identity : identities) {
+            synchronized (identity) {
+                if (identity.getFile() != null && identity.getFile().exists()
+                        && !identity.needSave) {
+                    res.add(identity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the specified identity to a snapshot.
+     *
+     * @param out The stream to write to
+     * @param identity The identity to write
+     * @throws IOException If the identity couldn't be written
+     */
+    private static void writeIdentity(final DataOutputStream out,
+            final Identity identity) throws IOException {
+        final File file = identity.getFile();
+        final ConfigTarget target = identity.getTarget();
+
+        writeString(out, file.getAbsolutePath());
+        out.writeLong(file.lastModified());
+        out.writeLong(file.length());
+        writeString(out, target.getType().name());
+        out.writeBoolean(target.getData() != null);
+
+        if (target.getData() != null) {
+            writeString(out, target.getData());
+        }
+
+        out.writeInt(target.getOrder());
+
+        final Map<String, Map<String, String>> settings
+                = new LinkedHashMap<String, Map<String, String>>();
+
+        synchronized (identity) {
+            for (String domain : identity.getDomains()) {
+                settings.put(domain, identity.getOptions(domain));
+            }
+        }
+
+        out.writeInt(settings.size());
+
+        for (Map.Entry<String, Map<String, String>> domain : settings.entrySet()) {
+            writeString(out, domain.getKey());
+            out.writeInt(domain.getValue().size());
+
+            for (Map.Entry<String, String> setting : domain.getValue().entrySet()) {
+                writeString(out, setting.getKey());
+                writeString(out, setting.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a single entry from a snapshot.
+     *
+     * @param in The stream to read from
+     * @return The entry that was read
+     * @throws IOException If the entry couldn't be read
+     */
+    private static Entry readEntry(final DataInputStream in) throws IOException {
+        final Entry entry = new Entry();
+        entry.path = readString(in);
+        entry.modified = in.readLong();
+        entry.size = in.readLong();
+        entry.type = ConfigTarget.TYPE.valueOf(readString(in));
+        entry.data = in.readBoolean() ? readString(in) : null;
+        entry.order = in.readInt();
+
+        final int domains = in.readInt();
+        entry.settings = new LinkedHashMap<String, Map<String, String>>(domains);
+
+        for (int i = 0; i < domains; i++) {
+            final String domain = readString(in);
+            final int count = in.readInt();
+            final Map<String, String> settings = new LinkedHashMap<String, String>(count);
+
+            for (int j = 0; j < count; j++) {
+                settings.put(readString(in), readString(in));
+            }
+
+            entry.settings.put(domain, settings);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Writes a string of any length to a snapshot.
+     *
+     * @param out The stream to write to
+     * @param value The string to be written
+     * @throws IOException If the string couldn't be written
+     */
+    private static void writeString(final DataOutputStream out, final String value)
+            throws IOException {
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param in The stream to read from
+     * @return The string that was read
+     * @throws IOException If the string couldn't be read
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+
+        if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Closes the specified stream, ignoring any errors.
+     *
+     * @param stream The stream to close, or null
+     */
+    private static void close(final Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                // Nothing we can do
+            }
+        }
+    }
+
+    /** A cached identity. */
+    private static class Entry {
+
+        /** The absolute path of the identity's file. */
+        private String path;
+
+        /** The modification time of the file when it was cached. */
+        private long modified;
+
+        /** The size of the file when it was cached. */
+        private long size;
+
+        /** The type of the identity's target. */
+        private ConfigTarget.TYPE type;
+
+        /** The data of the identity's target. */
+        private String data;
+
+        /** The order of the identity's target. */
+        private int order;
+
+        /** The identity's settings, keyed on domain and then option. */
+        private Map<String, Map<String, String>> settings;
+
+    }
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import com.dmdirc.logger.ErrorLevel;
+import com.dmdirc.logger.Logger;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Indexes settings identities by their target, so that the identities which
+ * apply to a config manager can be found without testing every known
+ * identity. Identities with a literal target are keyed by target type and
+ * lower-cased target data; identities with a regular expression target
+ * (prefixed with "re:") are held in a per-type list with their pattern
+ * compiled up front. Targets are lower-cased using {@link Locale#ENGLISH},
+ * so that lookups don't depend on the default locale. If an indexed
+ * identity's target is changed, the identity is moved to its new key.
+ * <p>
+ * This class is not thread safe; callers are expected to synchronise on
+ * the collection of identities the index mirrors. Updates caused by a
+ * target changing synchronise on the same lock.
+ *
+ * @since 0.6.5
+ */
+final class IdentityIndex {
+
+    /** The prefix used to denote a regular expression target. */
+    private static final String REGEX_PREFIX = "re:";
+
+    /** Cache of compiled target patterns, keyed on their source. */
+    private static final ConcurrentMap<String, Pattern> PATTERNS
+            = new ConcurrentHashMap<String, Pattern>();
+
+    /** Identities with literal targets, by type and lower-cased data. */
+    private final Map<ConfigTarget.TYPE, Map<String, List<Identity>>> literals
+            = new EnumMap<ConfigTarget.TYPE, Map<String, List<Identity>>>(
+            ConfigTarget.TYPE.class);
+
+    /** Identities with regular expression targets, by type. */
+    private final Map<ConfigTarget.TYPE, List<PatternEntry>> patterns
+            = new EnumMap<ConfigTarget.TYPE, List<PatternEntry>>(
+            ConfigTarget.TYPE.class);
+
+    /** The lock that callers synchronise on. */
+    private final Object lock;
+
+    /** The keys each identity was indexed under, used for removal. */
+    private final Map<Identity, IndexKey> keys
+            = new IdentityHashMap<Identity, IndexKey>();
+
+    /**
+     * Creates a new index, which callers synchronise on.
+     */
+    public IdentityIndex() {
+        this.lock = this;
+    }
+
+    /**
+     * Creates a new index, which callers synchronise on the specified lock
+     * to use.
+     *
+     * @param lock The lock that callers synchronise on
+     */
+    public IdentityIndex(final Object lock) {
+        this.lock = lock;
+    }
+
+    /**
+     * Retrieves a compiled version of the specified target pattern, compiling
+     * and caching it if it hasn't been seen before.
+     *
+     * @param regex The regular expression to be compiled
+     * @return A compiled pattern for the regular expression
+     * @throws PatternSyntaxException If the expression is invalid
+     */
+    static Pattern getPattern(final String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            PATTERNS.putIfAbsent(regex, pattern);
+        }
+
+        return pattern;
+    }
+
+    /**
+     * Determines whether the specified target data denotes a regular
+     * expression.
+     *
+     * @param data The target data to be tested
+     * @return True if the data is a regular expression, false otherwise
+     */
+    static boolean isPattern(final String data) {
+        return data.startsWith(REGEX_PREFIX);
+    }
+
+    /**
+     * Adds the specified identity to this index. Custom identities and those
+     * without target data can't be found, but are tracked in case their
+     * target changes.
+     *
+     * @param identity The identity to be added
+     */
+    public void add(final Identity identity) {
+        final ConfigTarget.TYPE type = identity.getTarget().getType();
+        final String data = identity.getTarget().getData();
+
+        if (keys.containsKey(identity)) {
+            return;
+        }
+
+        identity.getTarget().setIndex(this);
+
+        if (type == ConfigTarget.TYPE.CUSTOM || data == null) {
+            keys.put(identity, new IndexKey(type, null));
+            return;
+        }
+
+        if (isPattern(data)) {
+            final Pattern pattern;
+
+            try {
+                pattern = getPattern(data.substring(REGEX_PREFIX.length()));
+            } catch (PatternSyntaxException ex) {
+                Logger.userError(ErrorLevel.LOW, "Invalid target for identity "
+                        + identity + ": " + ex.getMessage());
+                keys.put(identity, new IndexKey(type, null));
+                return;
+            }
+
+            List<PatternEntry> entries = patterns.get(type);
+
+            if (entries == null) {
+                entries = new ArrayList<PatternEntry>();
+                patterns.put(type, entries);
+            }
+
+            entries.add(new PatternEntry(identity, pattern));
+            keys.put(identity, new IndexKey(type, data));
+        } else {
+            final String key = data.toLowerCase(Locale.ENGLISH);
+            Map<String, List<Identity>> byData = literals.get(type);
+
+            if (byData == null) {
+                byData = new HashMap<String, List<Identity>>();
+                literals.put(type, byData);
+            }
+
+            List<Identity> identities = byData.get(key);
+
+            if (identities == null) {
+                identities = new ArrayList<Identity>(1);
+                byData.put(key, identities);
+            }
+
+            identities.add(identity);
+            keys.put(identity, new IndexKey(type, key));
+        }
+    }
+
+    /**
+     * Removes the specified identity from this index.
+     *
+     * @param identity The identity to be removed
+     */
+    public void remove(final Identity identity) {
+        final IndexKey indexKey = keys.remove(identity);
+
+        if (indexKey == null) {
+            return;
+        }
+
+        // The target may have changed since the identity was indexed, so
+        // use the type and data it was indexed under.
+        final ConfigTarget.TYPE type = indexKey.type;
+        final String key = indexKey.key;
+
+        identity.getTarget().setIndex(null);
+
+        if (key == null) {
+            return;
+        } else if (isPattern(key)) {
+            final List<PatternEntry> entries = patterns.get(type);
+
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).identity == identity) {
+                    entries.remove(i);
+                    break;
+                }
+            }
+        } else {
+            final Map<String, List<Identity>> byData = literals.get(type);
+            final List<Identity> identities = byData.get(key);
+
+            identities.remove(identity);
+
+            if (identities.isEmpty()) {
+                byData.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Moves any identities with the specified target to the key for the
+     * target's current type and data.
+     *
+     * @param target The target which has changed
+     */
+    public void update(final ConfigTarget target) {
+        synchronized (lock) {
+            for (Identity identity : new ArrayList<Identity>(keys.keySet())) {
+                if (identity.getTarget() == target) {
+                    remove(identity);
+                    add(identity);
+                }
+            }
+        }
+    }
+
+    /** Removes all identities from this index. */
+    public void clear() {
+        for (Identity identity : keys.keySet()) {
+            identity.getTarget().setIndex(null);
+        }
+
+        literals.clear();
+        patterns.clear();
+        keys.clear();
+    }
+
+    /**
+     * Finds the first identity with a literal target of the specified type
+     * and data.
+     *
+     * @param type The type of target to look for
+     * @param data The target data to look for (compared case-insensitively)
+     * @return A matching identity, or null if none exists
+     */
+    public Identity find(final ConfigTarget.TYPE type, final String data) {
+        final Map<String, List<Identity>> byData = literals.get(type);
+
+        if (byData == null) {
+            return null;
+        }
+
+        final List<Identity> identities = byData.get(data.toLowerCase(Locale.ENGLISH));
+        return identities == null ? null : identities.get(0);
+    }
+
+    /**
+     * Adds all identities whose target matches the specified type and data
+     * to the given list. Literal targets are compared case-insensitively,
+     * regular expression targets must match the whole of the data.
+     *
+     * @param type The type of target to look for
+     * @param data The target data to match against
+     * @param results The list to add matching identities to
+     */
+    public void findMatching(final ConfigTarget.TYPE type, final String data,
+            final List<Identity> results) {
+        final Map<String, List<Identity>> byData = literals.get(type);
+
+        if (byData != null) {
+            final List<Identity> identities = byData.get(
+                    data.toLowerCase(Locale.ENGLISH));
+
+            if (identities != null) {
+                results.addAll(identities);
+            }
+        }
+
+        final List<PatternEntry> entries = patterns.get(type);
+
+        if (entries != null) {
+            for (PatternEntry entry : entries) {
+                if (entry.pattern.matcher(data).matches()) {
+                    results.add(entry.identity);
+                }
+            }
+        }
+    }
+
+    /** The type and key that an identity was indexed under. */
+    private static class IndexKey {
+
+        /** The type of the identity's target. */
+        private final ConfigTarget.TYPE type;
+
+        /**
+         * The lower-cased data or regular expression of the target, or null
+         * if the identity isn't findable.
+         */
+        private final String key;
+
+        /**
+         * Creates a new index key.
+         *
+         * @param type The type of the identity's target
+         * @param key The lower-cased data or regular expression of the target,
+         * or null if the identity isn't findable
+         */
+        public IndexKey(final ConfigTarget.TYPE type, final String key) {
+            this.type = type;
+            this.key = key;
+        }
+
+    }
+
+    /** An identity with a regular expression target. */
+    private static class PatternEntry {
+
+        /** The identity targeted by the pattern. */
+        private final Identity identity;
+
+        /** The compiled target pattern. */
+        private final Pattern pattern;
+
+        /**
+         * Creates a new pattern entry.
+         *
+         * @param identity The identity targeted by the pattern
+         * @param pattern The compiled target pattern
+         */
+        public PatternEntry(final Identity identity, final Pattern pattern) {
+            this.identity = identity;
+            this.pattern = pattern;
+        }
+
+    }
+
+}
@@ -40,8 +40,15 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
 /**
@@ -59,6 +66,28 @@ public final class IdentityManager {
     private static final MapList<String, Identity> IDENTITIES
             = new MapList<String, Identity>();
 
+    /**
+     * An index of the standard identities in {@link #IDENTITIES}, by target.
+     * Guarded by the lock on {@link #IDENTITIES}.
+     */
+    private static final IdentityIndex INDEX = new IdentityIndex(IDENTITIES);
+
+    /**
+     * The identities in {@link #IDENTITIES} which were loaded from files,
+     * keyed on their file. Guarded by the lock on {@link #IDENTITIES}.
+     */
+    private static final Map<File, Identity> FILES = new HashMap<File, Identity>();
+
+    /**
+     * The snapshot of previously parsed identities, used while
+     * {@link #load()} is running and null otherwise.
+     */
+    private static volatile IdentityCache cache;
+
+    /** The maximum number of threads used to parse identity files. */
+    private static final int LOADER_THREADS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
     /**
      * The {@link IdentityListener}s that have registered with this manager.
      *
@@ -95,12 +124,30 @@ public final class IdentityManager {
      *                                      file.
      */
     public static void load() throws InvalidIdentityFileException {
-        IDENTITIES.clear();
+        final long start = System.currentTimeMillis();
+
+        synchronized (IDENTITIES) {
+            IDENTITIES.clear();
+            INDEX.clear();
+            FILES.clear();
+        }
+
+        cache = IdentityCache.read(getCacheFile());
+        final long started = System.currentTimeMillis();
+
+        try {
+            loadVersion();
+            loadDefaults();
+            loadUser();
+            loadConfig();
+            writeCache(started);
+        } finally {
+            cache = null;
+        }
 
-        loadVersion();
-        loadDefaults();
-        loadUser();
-        loadConfig();
+        LOGGER.log(Level.INFO, "Loaded {0} identities in {1}ms",
+                new Object[]{getAllIdentities().size(),
+                System.currentTimeMillis() - start});
 
         if (getCustomIdentities("profile").isEmpty()) {
             try {
@@ -207,6 +254,42 @@ public final class IdentityManager {
         }
     }
 
+    /**
+     * Retrieves the file used to store a snapshot of parsed identities.
+     *
+     * @return The identity cache file
+     */
+    private static File getCacheFile() {
+        return new File(Main.getConfigDir(), "identities.cache");
+    }
+
+    /**
+     * Writes a snapshot of the currently loaded identities to the cache
+     * file, unless every identity was loaded from the existing snapshot.
+     *
+     * @param started The time at which the identities started being loaded
+     */
+    private static void writeCache(final long started) {
+        final List<Identity> identities = new ArrayList<Identity>();
+
+        synchronized (IDENTITIES) {
+            IdentityCache.getCacheable(getAllIdentities(), identities);
+        }
+
+        // The global config is always read directly from disk
+        identities.remove(config);
+
+        if (cache.isCurrent(identities.size())) {
+            return;
+        }
+
+        try {
+            IdentityCache.write(getCacheFile(), identities, started);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Unable to write identity cache", ex);
+        }
+    }
+
     /**
      * Retrieves the directory used to store identities in.
      *
@@ -233,7 +316,10 @@ public final class IdentityManager {
     }
 
     /**
-     * Recursively loads files from the specified directory.
+     * Recursively loads files from the specified directory. Files which
+     * belong to an existing identity cause that identity to be reloaded; new
+     * files are parsed in parallel and the resulting identities added to
+     * this manager together.
      *
      * @param dir The directory to be loaded
      */
@@ -245,48 +331,161 @@ public final class IdentityManager {
         Logger.assertTrue(dir != null);
         Logger.assertTrue(dir.isDirectory());
 
-        if (dir.listFiles() == null) {
+        final List<File> files = new ArrayList<File>();
+        listFiles(dir, files);
+
+        final List<File> newFiles = new ArrayList<File>();
+
+        for (File file : files) {
+            final Identity identity;
+
+            synchronized (IDENTITIES) {
+                identity = FILES.get(file);
+            }
+
+            if (identity == null) {
+                newFiles.add(file);
+            } else {
+                reloadIdentity(identity, file);
+            }
+        }
+
+        addIdentities(loadIdentities(newFiles));
+    }
+
+    /**
+     * Recursively lists the files contained in the specified directory.
+     *
+     * @param dir The directory to be listed
+     * @param files The list to add files to
+     */
+    private static void listFiles(final File dir, final List<File> files) {
+        final File[] contents = dir.listFiles();
+
+        if (contents == null) {
             Logger.userError(ErrorLevel.MEDIUM,
                     "Unable to load user identity files from "
                     + dir.getAbsolutePath());
         } else {
-            for (File file : dir.listFiles()) {
+            for (File file : contents) {
                 if (file.isDirectory()) {
-                    loadUser(file);
-                } else {
-                    loadIdentity(file);
+                    listFiles(file, files);
+                } else if (!file.getName().endsWith(".tmp")) {
+                    // Temporary files are left by interrupted identity saves
+                    files.add(file);
                 }
             }
         }
     }
 
     /**
-     * Loads an identity from the specified file. If the identity already
-     * exists, it is told to reload instead.
+     * Reloads the specified identity from its file.
      *
-     * @param file The file to load the identity from.
+     * @param identity The identity to be reloaded
+     * @param file The file the identity was loaded from
      */
-    private static void loadIdentity(final File file) {
-        synchronized (IDENTITIES) {
-            for (Identity identity : getAllIdentities()) {
-                if (identity.isFile(file)) {
-                    try {
-                        identity.reload();
-                    } catch (IOException ex) {
-                        Logger.userError(ErrorLevel.MEDIUM,
-                                "I/O error when reloading identity file: "
-                                + file.getAbsolutePath() + " (" + ex.getMessage() + ")");
-                    } catch (InvalidConfigFileException ex) {
-                        // Do nothing
+    private static void reloadIdentity(final Identity identity, final File file) {
+        try {
+            identity.reload();
+        } catch (IOException ex) {
+            Logger.userError(ErrorLevel.MEDIUM,
+                    "I/O error when reloading identity file: "
+                    + file.getAbsolutePath() + " (" + ex.getMessage() + ")");
+        } catch (InvalidConfigFileException ex) {
+            // Do nothing
+        }
+    }
+
+    /**
+     * Parses identities from each of the specified files, using a bounded
+     * pool of threads when there is more than one file to read.
+     *
+     * @param files The files to load identities from
+     * @return The identities that were successfully loaded, in file order
+     */
+    private static List<Identity> loadIdentities(final List<File> files) {
+        final List<Identity> identities = new ArrayList<Identity>(files.size());
+
+        if (files.size() < 2) {
+            for (File file : files) {
+                final Identity identity = loadIdentity(file);
+
+                if (identity != null) {
+                    identities.add(identity);
+                }
+            }
+
+            return identities;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(LOADER_THREADS, files.size()), new ThreadFactory() {
+
+            /** {@inheritDoc} */
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Identity loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            final List<Future<Identity>> results
+                    = new ArrayList<Future<Identity>>(files.size());
+
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<Identity>() {
+
+                    /** {@inheritDoc} */
+                    @Override
+                    public Identity call() {
+                        return loadIdentity(file);
                     }
+                }));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    final Identity identity = results.get(i).get();
 
-                    return;
+                    if (identity != null) {
+                        identities.add(identity);
+                    }
+                } catch (ExecutionException ex) {
+                    Logger.appError(ErrorLevel.MEDIUM,
+                            "Unable to load identity file: "
+                            + files.get(i).getAbsolutePath(), ex.getCause());
                 }
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return identities;
+    }
+
+    /**
+     * Loads an identity from the specified file.
+     *
+     * @param file The file to load the identity from.
+     * @return The loaded identity, or null if it couldn't be loaded
+     */
+    private static Identity loadIdentity(final File file) {
+        final IdentityCache snapshot = cache;
+
+        if (snapshot != null) {
+            final Identity identity = snapshot.get(file);
+
+            if (identity != null) {
+                return identity;
+            }
         }
 
         try {
-            addIdentity(new Identity(file, false));
+            return new Identity(file, false);
         } catch (InvalidIdentityFileException ex) {
             Logger.userError(ErrorLevel.MEDIUM,
                     "Invalid identity file: " + file.getAbsolutePath()
@@ -296,6 +495,8 @@ public final class IdentityManager {
                     "I/O error when reading identity file: "
                     + file.getAbsolutePath());
         }
+
+        return null;
     }
 
     /**
@@ -393,9 +594,12 @@ public final class IdentityManager {
     }
 
     /**
-     * Saves all modified identity files to disk.
+     * Saves all modified identity files to disk, including any which are
+     * waiting to be written in the background.
      */
     public static void save() {
+        IdentityWriter.getWriter().flush();
+
         synchronized (IDENTITIES) {
             for (Identity identity : getAllIdentities()) {
                 identity.save();
@@ -411,22 +615,49 @@ public final class IdentityManager {
     public static void addIdentity(final Identity identity) {
         Logger.assertTrue(identity != null);
 
-        final String target = getGroup(identity);
+        addIdentities(Collections.singletonList(identity));
+    }
 
-        if (IDENTITIES.containsValue(target, identity)) {
-            removeIdentity(identity);
+    /**
+     * Adds all of the specified identities to this manager, registering them
+     * together before informing any listeners.
+     *
+     * @param identities The identities to be added
+     * @since 0.6.5
+     */
+    private static void addIdentities(final List<Identity> identities) {
+        for (Identity identity : identities) {
+            if (IDENTITIES.containsValue(getGroup(identity), identity)) {
+                removeIdentity(identity);
+            }
         }
 
         synchronized (IDENTITIES) {
-            IDENTITIES.add(target, identity);
+            for (Identity identity : identities) {
+                final String target = getGroup(identity);
+
+                IDENTITIES.add(target, identity);
+
+                if (target == null) {
+                    INDEX.add(identity);
+                }
+
+                if (identity.getFile() != null) {
+                    FILES.put(identity.getFile(), identity);
+                }
+            }
         }
 
-        LOGGER.log(Level.FINER, "Adding identity: {0} (group: {1})",
-                new Object[]{identity, target});
+        for (Identity identity : identities) {
+            final String target = getGroup(identity);
 
-        synchronized (LISTENERS) {
-            for (IdentityListener listener : LISTENERS.safeGet(target)) {
-                listener.identityAdded(identity);
+            LOGGER.log(Level.FINER, "Adding identity: {0} (group: {1})",
+                    new Object[]{identity, target});
+
+            synchronized (LISTENERS) {
+                for (IdentityListener listener : LISTENERS.safeGet(target)) {
+                    listener.identityAdded(identity);
+                }
             }
         }
     }
@@ -448,6 +679,15 @@ public final class IdentityManager {
 
         synchronized (IDENTITIES) {
             IDENTITIES.remove(group, identity);
+
+            if (group == null) {
+                INDEX.remove(identity);
+            }
+
+            if (identity.getFile() != null
+                    && FILES.get(identity.getFile()) == identity) {
+                FILES.remove(identity.getFile());
+            }
         }
 
         synchronized (LISTENERS) {
@@ -509,9 +749,11 @@ public final class IdentityManager {
         final List<Identity> sources = new ArrayList<Identity>();
 
         synchronized (IDENTITIES) {
-            for (Identity identity : IDENTITIES.safeGet(null)) {
-                if (manager.identityApplies(identity)) {
-                    sources.add(identity);
+            for (ConfigTarget.TYPE type : ConfigTarget.TYPE.values()) {
+                final String data = manager.getTargetData(type);
+
+                if (data != null) {
+                    INDEX.findMatching(type, data, sources);
                 }
             }
         }
@@ -557,14 +799,13 @@ public final class IdentityManager {
                     + "with null or empty channel\n\nChannel: " + channel);
         }
 
-        final String myTarget = (channel + "@" + network).toLowerCase();
+        final String myTarget = (channel + "@" + network).toLowerCase(Locale.ENGLISH);
 
         synchronized (IDENTITIES) {
-            for (Identity identity : IDENTITIES.safeGet(null)) {
-                if (identity.getTarget().getType() == ConfigTarget.TYPE.CHANNEL
-                        && identity.getTarget().getData().equalsIgnoreCase(myTarget)) {
-                    return identity;
-                }
+            final Identity identity = INDEX.find(ConfigTarget.TYPE.CHANNEL, myTarget);
+
+            if (identity != null) {
+                return identity;
             }
         }
 
@@ -594,14 +835,13 @@ public final class IdentityManager {
                     + "with null or empty network\n\nNetwork:" + network);
         }
 
-        final String myTarget = network.toLowerCase();
+        final String myTarget = network.toLowerCase(Locale.ENGLISH);
 
         synchronized (IDENTITIES) {
-            for (Identity identity : IDENTITIES.safeGet(null)) {
-                if (identity.getTarget().getType() == ConfigTarget.TYPE.NETWORK
-                        && identity.getTarget().getData().equalsIgnoreCase(myTarget)) {
-                    return identity;
-                }
+            final Identity identity = INDEX.find(ConfigTarget.TYPE.NETWORK, myTarget);
+
+            if (identity != null) {
+                return identity;
             }
         }
 
@@ -631,14 +871,13 @@ public final class IdentityManager {
                     + "with null or empty server\n\nServer: " + server);
         }
 
-        final String myTarget = server.toLowerCase();
+        final String myTarget = server.toLowerCase(Locale.ENGLISH);
 
         synchronized (IDENTITIES) {
-            for (Identity identity : IDENTITIES.safeGet(null)) {
-                if (identity.getTarget().getType() == ConfigTarget.TYPE.SERVER
-                        && identity.getTarget().getData().equalsIgnoreCase(myTarget)) {
-                    return identity;
-                }
+            final Identity identity = INDEX.find(ConfigTarget.TYPE.SERVER, myTarget);
+
+            if (identity != null) {
+                return identity;
             }
         }
 
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes modified identities to disk in the background. Each change to an
+ * identity (re)starts a short timer for that identity, so a burst of changes
+ * results in a single write once the identity has been left alone. An
+ * identity which keeps changing is still written once its oldest unsaved
+ * change reaches a maximum delay.
+ *
+ * @since 0.6.5
+ */
+final class IdentityWriter {
+
+    /** The default delay between an identity changing and it being saved. */
+    private static final long DEFAULT_DELAY = 2000;
+
+    /** The default maximum time a change may wait before being saved. */
+    private static final long DEFAULT_MAX_DELAY = 10000;
+
+    /** The singleton writer used by identities. */
+    private static final IdentityWriter WRITER = new IdentityWriter(DEFAULT_DELAY);
+
+    /** The delay, in milliseconds, before a changed identity is saved. */
+    private final long delay;
+
+    /** The maximum time, in milliseconds, a change may wait to be saved. */
+    private final long maxDelay;
+
+    /** The executor which performs writes. */
+    private final ScheduledExecutorService executor;
+
+    /** The pending save for each identity awaiting a write. */
+    private final Map<Identity, SaveTask> pending
+            = new IdentityHashMap<Identity, SaveTask>();
+
+    /**
+     * Creates a new identity writer.
+     *
+     * @param delay The delay, in milliseconds, before a changed identity is
+     * saved
+     */
+    IdentityWriter(final long delay) {
+        this(delay, Math.max(delay, DEFAULT_MAX_DELAY));
+    }
+
+    /**
+     * Creates a new identity writer.
+     *
+     * @param delay The delay, in milliseconds, before a changed identity is
+     * saved
+     * @param maxDelay The maximum time, in milliseconds, that a change may
+     * wait before the identity is saved
+     */
+    IdentityWriter(final long delay, final long maxDelay) {
+        this.delay = delay;
+        this.maxDelay = maxDelay;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            /** {@inheritDoc} */
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Identity writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the writer used to persist identities.
+     *
+     * @return The singleton identity writer
+     */
+    static IdentityWriter getWriter() {
+        return WRITER;
+    }
+
+    /**
+     * Schedules the specified identity to be saved. If a save is already
+     * pending for the identity it is postponed, so that the identity is
+     * written once the changes to it have settled, but never beyond the
+     * maximum delay after the first pending change.
+     *
+     * @param identity The identity which has changed
+     */
+    public void schedule(final Identity identity) {
+        synchronized (pending) {
+            final SaveTask previous = pending.get(identity);
+            final long now = System.currentTimeMillis();
+            final long first;
+
+            if (previous == null) {
+                first = now;
+            } else {
+                previous.future.cancel(false);
+                first = previous.first;
+            }
+
+            final SaveTask task = new SaveTask(identity, first);
+            task.future = executor.schedule(task, Math.max(0,
+                    Math.min(delay, first + maxDelay - now)),
+                    TimeUnit.MILLISECONDS);
+            pending.put(identity, task);
+        }
+    }
+
+    /**
+     * Immediately saves every identity with a pending save, on the calling
+     * thread.
+     */
+    public void flush() {
+        final List<Identity> identities;
+
+        synchronized (pending) {
+            for (SaveTask task : pending.values()) {
+                task.future.cancel(false);
+            }
+
+            identities = new ArrayList<Identity>(pending.keySet());
+            pending.clear();
+        }
+
+        for (Identity identity : identities) {
+            identity.save();
+        }
+    }
+
+    /** A scheduled save of a single identity. */
+    private class SaveTask implements Runnable {
+
+        /** The identity to be saved. */
+        private final Identity identity;
+
+        /** The time at which the first unsaved change was scheduled. */
+        private final long first;
+
+        /** The future representing this task's execution. */
+        private ScheduledFuture<?> future;
+
+        /**
+         * Creates a new save task.
+         *
+         * @param identity The identity to be saved
+         * @param first The time at which the first unsaved change was
+         * scheduled
+         */
+        public SaveTask(final Identity identity, final long first) {
+            this.identity = identity;
+            this.first = first;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            synchronized (pending) {
+                if (pending.get(identity) == this) {
+                    pending.remove(identity);
+                }
+            }
+
+            identity.save();
+        }
+
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import com.dmdirc.interfaces.ConfigChangeListener;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indexes config change listeners by domain and then by key. Listeners are
+ * held in arrays which are replaced rather than modified, so dispatching a
+ * change needs no locking or copying. Each listener's registrations are
+ * remembered so that it can be removed without searching every domain.
+ *
+ * @since 0.6.5
+ */
+final class ListenerIndex {
+
+    /** An empty array of listeners. */
+    private static final ConfigChangeListener[] NONE = new ConfigChangeListener[0];
+
+    /** The listeners for each domain. */
+    private final ConcurrentMap<String, DomainListeners> domains
+            = new ConcurrentHashMap<String, DomainListeners>();
+
+    /** The places each listener is registered. Guarded by this index. */
+    private final Map<ConfigChangeListener, List<Registration>> registrations
+            = new IdentityHashMap<ConfigChangeListener, List<Registration>>();
+
+    /**
+     * Registers a listener for the specified domain or key.
+     *
+     * @param domain The domain to listen to
+     * @param key The key to listen to, or null to listen to the whole domain
+     * @param listener The listener to be registered
+     */
+    public synchronized void add(final String domain, final String key,
+            final ConfigChangeListener listener) {
+        DomainListeners listeners = domains.get(domain);
+
+        if (listeners == null) {
+            listeners = new DomainListeners();
+            domains.put(domain, listeners);
+        }
+
+        listeners.add(key, listener);
+
+        List<Registration> registered = registrations.get(listener);
+
+        if (registered == null) {
+            registered = new ArrayList<Registration>(1);
+            registrations.put(listener, registered);
+        }
+
+        registered.add(new Registration(listeners, key));
+    }
+
+    /**
+     * Removes all registrations of the specified listener.
+     *
+     * @param listener The listener to be removed
+     */
+    public synchronized void remove(final ConfigChangeListener listener) {
+        final List<Registration> registered = registrations.remove(listener);
+
+        if (registered != null) {
+            for (Registration registration : registered) {
+                registration.listeners.remove(registration.key, listener);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the listeners registered for the specified domain.
+     *
+     * @param domain The domain to look up
+     * @return The listeners for the domain, or null if there are none
+     */
+    public DomainListeners get(final String domain) {
+        return domains.get(domain);
+    }
+
+    /** The listeners registered for a single domain. */
+    static final class DomainListeners {
+
+        /** Listeners registered for every key in the domain. */
+        private volatile ConfigChangeListener[] all = NONE;
+
+        /** Listeners registered for individual keys. */
+        private final ConcurrentMap<String, ConfigChangeListener[]> keys
+                = new ConcurrentHashMap<String, ConfigChangeListener[]>();
+
+        /**
+         * Retrieves the listeners registered for the whole domain.
+         *
+         * @return An array of listeners, which must not be modified
+         */
+        public ConfigChangeListener[] getDomainListeners() {
+            return all;
+        }
+
+        /**
+         * Retrieves the listeners registered for the specified key.
+         *
+         * @param key The key to look up
+         * @return An array of listeners, which must not be modified
+         */
+        public ConfigChangeListener[] getKeyListeners(final String key) {
+            final ConfigChangeListener[] res = keys.get(key);
+            return res == null ? NONE : res;
+        }
+
+        /**
+         * Adds a listener to this domain. Callers must hold the index's lock.
+         *
+         * @param key The key to listen to, or null for the whole domain
+         * @param listener The listener to be added
+         */
+        private void add(final String key, final ConfigChangeListener listener) {
+            if (key == null) {
+                all = append(all, listener);
+            } else {
+                keys.put(key, append(getKeyListeners(key), listener));
+            }
+        }
+
+        /**
+         * Removes a listener from this domain. Callers must hold the index's
+         * lock.
+         *
+         * @param key The key the listener was registered for, or null for
+         * the whole domain
+         * @param listener The listener to be removed
+         */
+        private void remove(final String key, final ConfigChangeListener listener) {
+            if (key == null) {
+                all = without(all, listener);
+            } else {
+                final ConfigChangeListener[] remaining
+                        = without(getKeyListeners(key), listener);
+
+                if (remaining.length == 0) {
+                    keys.remove(key);
+                } else {
+                    keys.put(key, remaining);
+                }
+            }
+        }
+
+        /**
+         * Creates a copy of the specified array with a listener appended.
+         *
+         * @param listeners The existing listeners
+         * @param listener The listener to be added
+         * @return A new array of listeners
+         */
+        private static ConfigChangeListener[] append(
+                final ConfigChangeListener[] listeners,
+                final ConfigChangeListener listener) {
+            final ConfigChangeListener[] res
+                    = new ConfigChangeListener[listeners.length + 1];
+            System.arraycopy(listeners, 0, res, 0, listeners.length);
+            res[listeners.length] = listener;
+            return res;
+        }
+
+        /**
+         * Creates a copy of the specified array without any occurrences of a
+         * listener.
+         *
+         * @param listeners The existing listeners
+         * @param listener The listener to be removed
+         * @return An array of the remaining listeners
+         */
+        private static ConfigChangeListener[] without(
+                final ConfigChangeListener[] listeners,
+                final ConfigChangeListener listener) {
+            final List<ConfigChangeListener> res
+                    = new ArrayList<ConfigChangeListener>(listeners.length);
+
+            for (ConfigChangeListener existing : listeners) {
+                if (existing != listener) {
+                    res.add(existing);
+                }
+            }
+
+            return res.isEmpty() ? NONE : res.toArray(new ConfigChangeListener[res.size()]);
+        }
+
+    }
+
+    /** A record of where a listener is registered. */
+    private static final class Registration {
+
+        /** The domain listeners the registration belongs to. */
+        private final DomainListeners listeners;
+
+        /** The key registered for, or null for the whole domain. */
+        private final String key;
+
+        /**
+         * Creates a new registration record.
+         *
+         * @param listeners The domain listeners the registration belongs to
+         * @param key The key registered for, or null for the whole domain
+         */
+        public Registration(final DomainListeners listeners, final String key) {
+            this.listeners = listeners;
+            this.key = key;
+        }
+
+    }
+
+}
@@ -223,6 +223,29 @@ public final class PreferencesManager {
                 "Window buffer size", "The maximum number of lines in a window"
                 + " buffer",
                 manager, identity));
+        category.addSetting(new PreferencesSetting(PreferencesType.OPTIONALINTEGER,
+                new NumericalValidator(1000, -1), "ui", "frameBufferChars",
+                "Window buffer characters", "The maximum number of characters"
+                + " to keep in a window buffer",
+                manager, identity));
+        category.addSetting(new PreferencesSetting(PreferencesType.BOOLEAN,
+                "ui", "compactScrollback", "Compact window buffers",
+                "Store window buffers compactly outside of the Java heap "
+                + "(applies to new windows)",
+                manager, identity));
+        category.addSetting(new PreferencesSetting(PreferencesType.OPTIONALINTEGER,
+                new NumericalValidator(64, -1), "ui", "styledLineCacheSize",
+                "Styled line cache size", "The maximum memory used to cache "
+                + "formatted lines for each window, in kilobytes",
+                manager, identity));
+        category.addSetting(new PreferencesSetting(PreferencesType.BOOLEAN,
+                "ui", "persistentScrollback", "Persistent window buffers",
+                "Save window buffers to disk so they are restored when the "
+                + "window is reopened", manager, identity));
+        category.addSetting(new PreferencesSetting(PreferencesType.OPTIONALINTEGER,
+                new NumericalValidator(64, -1), "ui", "persistentScrollbackSize",
+                "Persistent buffer size", "The maximum size of each saved "
+                + "window buffer, in kilobytes", manager, identity));
         category.addSetting(new PreferencesSetting(PreferencesType.FONT,
                 "ui", "textPaneFontName", "Textpane font",
                 "Font for the textpane",
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.interfaces;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A config change listener which can be informed of several changes at once.
+ * When a config manager's identities change wholesale (for example when it
+ * migrates to a new network), listeners implementing this interface receive
+ * a single call describing every affected setting they are registered for,
+ * rather than one call per setting.
+ *
+ * @since 0.6.5
+ */
+public interface ConfigChangeSetListener extends ConfigChangeListener {
+
+    /**
+     * Called when a number of monitored config entries have been changed
+     * at once.
+     *
+     * @param changes A map of altered domains to the keys that were altered
+     * within them
+     */
+    void configChanged(Map<String, Set<String>> changes);
+
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link LineStore} which keeps the parts of each line encoded as UTF-8 in
+ * large direct byte buffers ("slabs") outside of the Java heap, and only
+ * creates {@link Line} objects when they are requested.
+ * <p>
+ * Each line is stored as a single record which never spans slabs. The heap
+ * cost of a stored line is a single long in the index, which records the
+ * slab and offset of the line's record. A small number of recently
+ * materialised lines are kept so that repeated requests for the same line
+ * (for example while rendering) return the same object.
+ * <p>
+ * The first slab is small, and each new slab is twice the size of the last
+ * up to a maximum, so that short-lived or quiet documents do not reserve a
+ * large amount of direct memory.
+ * <p>
+ * Slabs are released once every line in them has been removed. This class is
+ * not thread safe; callers must provide their own synchronisation.
+ *
+ * @since 0.6.5
+ */
+public class CompactLineBuffer implements LineStore {
+
+    /** The default maximum size of each slab, in bytes. */
+    public static final int DEFAULT_SLAB_SIZE = 256 * 1024;
+    /** The size of the first slab allocated, in bytes. */
+    public static final int INITIAL_SLAB_SIZE = 4 * 1024;
+    /** The number of materialised lines to keep. */
+    private static final int MATERIALISED_LINES = 512;
+    /** The initial (and minimum) capacity of the index. */
+    private static final int MIN_CAPACITY = 16;
+    /** The size of a record's header: font size, length and part count. */
+    private static final int HEADER_SIZE = 10;
+    /** The charset used to encode line parts. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The styliser given to materialised lines. */
+    private final Styliser styliser;
+    /** The maximum size of each new slab, in bytes. */
+    private final int slabSize;
+    /** The size of the next slab to be allocated, in bytes. */
+    private int nextSlabSize;
+    /** The slabs holding line records, oldest first. */
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    /** The number of lines stored in each slab. */
+    private final List<Integer> slabLines = new ArrayList<Integer>();
+    /** Recently materialised lines, keyed on logical line number. */
+    private final Map<Long, Line> materialised;
+    /** The address of each line's record, stored as a ring buffer. */
+    private long[] index;
+    /** The index of the slot containing the first line's address. */
+    private int head;
+    /** The number of lines in the buffer. */
+    private int size;
+    /** The logical line number of the first line in the buffer. */
+    private long offset;
+    /** The total number of characters retained by this buffer. */
+    private long retainedChars;
+    /** The number of the first slab in {@link #slabs}. */
+    private int firstSlab;
+    /** The font name given to materialised lines. */
+    private String fontName;
+    /** The font size given to lines added before {@link #fontChangeLine}. */
+    private int fontSize;
+    /** Lines numbered below this one use {@link #fontSize}. */
+    private long fontChangeLine = Long.MIN_VALUE;
+
+    /**
+     * Creates a new, empty, compact line buffer.
+     *
+     * @param styliser The styliser to use for materialised lines
+     * @param fontName The font name to use for materialised lines
+     */
+    public CompactLineBuffer(final Styliser styliser, final String fontName) {
+        this(styliser, fontName, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Creates a new, empty, compact line buffer.
+     *
+     * @param styliser The styliser to use for materialised lines
+     * @param fontName The font name to use for materialised lines
+     * @param slabSize The maximum size of each slab, in bytes
+     */
+    public CompactLineBuffer(final Styliser styliser, final String fontName,
+            final int slabSize) {
+        this.styliser = styliser;
+        this.fontName = fontName;
+        this.slabSize = slabSize;
+        this.nextSlabSize = Math.min(INITIAL_SLAB_SIZE, slabSize);
+
+        index = new long[MIN_CAPACITY];
+        materialised = new LinkedHashMap<Long, Line>(MATERIALISED_LINES, 0.75f, true) {
+
+            /**
+             * A version number for this class. It should be changed whenever
+             * the class structure is changed (or anything else that would
+             * prevent serialized objects being unserialized with the new
+             * class).
+             */
+            private static final long serialVersionUID = 1;
+
+            /** {@inheritDoc} */
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Line> eldest) {
+                return size() > MATERIALISED_LINES;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the number of bytes of off-heap storage currently allocated
+     * by this buffer.
+     *
+     * @return The total capacity of this buffer's slabs, in bytes
+     */
+    public long getAllocatedBytes() {
+        long total = 0;
+        for (ByteBuffer slab : slabs) {
+            total += slab.capacity();
+        }
+        return total;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRetainedChars() {
+        return retainedChars;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFirstLineNumber() {
+        return offset;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Line get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + size);
+        }
+
+        final Long lineNumber = offset + index;
+        Line line = materialised.get(lineNumber);
+
+        if (line == null) {
+            line = read(getAddress(index), lineNumber);
+            materialised.put(lineNumber, line);
+        }
+
+        return line;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLength(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + size);
+        }
+
+        final long address = getAddress(index);
+        return getSlab(address).getInt((int) address + 4);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Line getByLineNumber(final long lineNumber) {
+        final long relative = lineNumber - offset;
+
+        return relative < 0 || relative >= size ? null : get((int) relative);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(final Line line) {
+        final long address = write(line);
+
+        if (size == index.length) {
+            resize(index.length << 1);
+        }
+
+        index[(head + size) & (index.length - 1)] = address;
+        size++;
+        retainedChars += line.getLength();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addFirst(final Line line) {
+        final long address = write(line);
+
+        if (size == index.length) {
+            resize(index.length << 1);
+        }
+
+        head = (head - 1) & (index.length - 1);
+        index[head] = address;
+        size++;
+        offset--;
+        retainedChars += line.getLength();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int trim(final int numLines) {
+        final int count = size - Math.max(0, numLines);
+
+        if (count <= 0) {
+            return 0;
+        }
+
+        removeFirst(count);
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int trimChars(final long maxChars) {
+        int count = 0;
+        long chars = retainedChars;
+
+        while (count < size - 1 && chars > maxChars) {
+            chars -= getLength(count);
+            count++;
+        }
+
+        if (count > 0) {
+            removeFirst(count);
+        }
+
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        offset += size;
+        index = new long[MIN_CAPACITY];
+        head = 0;
+        size = 0;
+        retainedChars = 0;
+        firstSlab += slabs.size();
+        slabs.clear();
+        slabLines.clear();
+        materialised.clear();
+        nextSlabSize = Math.min(INITIAL_SLAB_SIZE, slabSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setFont(final String fontName, final int fontSize) {
+        this.fontName = fontName;
+        this.fontSize = fontSize;
+        fontChangeLine = offset + size;
+
+        for (Line line : materialised.values()) {
+            line.setFontName(fontName);
+            line.setFontSize(fontSize);
+        }
+    }
+
+    /**
+     * Retrieves the address of the record for the line at the specified
+     * index.
+     *
+     * @param index The index of the line, relative to the first line
+     * @return The address of the line's record
+     */
+    private long getAddress(final int index) {
+        return this.index[(head + index) & (this.index.length - 1)];
+    }
+
+    /**
+     * Retrieves the slab containing the specified address.
+     *
+     * @param address The address of a record
+     * @return The slab containing the record
+     */
+    private ByteBuffer getSlab(final long address) {
+        return slabs.get((int) (address >>> 32) - firstSlab);
+    }
+
+    /**
+     * Decodes the record at the specified address into a new line.
+     *
+     * @param address The address of the record
+     * @param lineNumber The logical line number of the line
+     * @return A new line containing the record's data
+     */
+    private Line read(final long address, final long lineNumber) {
+        final ByteBuffer slab = getSlab(address).duplicate();
+        slab.position((int) address);
+
+        final int lineFontSize = slab.getInt();
+        slab.getInt();
+        final String[] parts = new String[slab.getShort() & 0xffff];
+        byte[] buffer = new byte[0];
+
+        for (int i = 0; i < parts.length; i++) {
+            final int length = slab.getInt();
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            slab.get(buffer, 0, length);
+            parts[i] = new String(buffer, 0, length, UTF8);
+        }
+
+        return new Line(styliser, parts,
+                lineNumber < fontChangeLine ? fontSize : lineFontSize, fontName);
+    }
+
+    /**
+     * Writes a record for the specified line into the newest slab.
+     *
+     * @param line The line to be written
+     * @return The address of the new record
+     */
+    private long write(final Line line) {
+        final String[] parts = line.getLineParts();
+        final byte[][] encoded = new byte[parts.length][];
+        int recordSize = HEADER_SIZE;
+
+        for (int i = 0; i < parts.length; i++) {
+            encoded[i] = parts[i].getBytes(UTF8);
+            recordSize += 4 + encoded[i].length;
+        }
+
+        final ByteBuffer slab = getSlabFor(recordSize);
+        final int last = slabs.size() - 1;
+        final long address = ((long) (firstSlab + last) << 32) | slab.position();
+
+        slab.putInt(line.getFontSize());
+        slab.putInt(line.getLength());
+        slab.putShort((short) parts.length);
+        for (byte[] part : encoded) {
+            slab.putInt(part.length);
+            slab.put(part);
+        }
+
+        slabLines.set(last, slabLines.get(last) + 1);
+        return address;
+    }
+
+    /**
+     * Retrieves a slab with enough space remaining to hold a record of the
+     * specified size, allocating a new one if required. Each new slab is
+     * twice the size of the previous one, up to the maximum slab size.
+     *
+     * @param recordSize The size of the record to be written
+     * @return A slab positioned where the record should be written
+     */
+    private ByteBuffer getSlabFor(final int recordSize) {
+        if (!slabs.isEmpty()) {
+            final ByteBuffer slab = slabs.get(slabs.size() - 1);
+
+            if (slab.remaining() >= recordSize) {
+                return slab;
+            }
+        }
+
+        final ByteBuffer slab = ByteBuffer.allocateDirect(
+                Math.max(nextSlabSize, recordSize));
+        nextSlabSize = (int) Math.min((long) nextSlabSize << 1, slabSize);
+        slabs.add(slab);
+        slabLines.add(0);
+        return slab;
+    }
+
+    /**
+     * Removes the specified number of lines from the start of the buffer,
+     * releasing any slabs which no longer contain lines.
+     *
+     * @param count The number of lines to remove
+     */
+    private void removeFirst(final int count) {
+        for (int i = 0; i < count; i++) {
+            final int slab = (int) (getAddress(i) >>> 32) - firstSlab;
+            slabLines.set(slab, slabLines.get(slab) - 1);
+            retainedChars -= getLength(i);
+            materialised.remove(offset + i);
+        }
+
+        head = (head + count) & (index.length - 1);
+        size -= count;
+        offset += count;
+
+        // The newest slab is kept so that it can continue to be filled
+        while (slabs.size() > 1 && slabLines.get(0) == 0) {
+            slabs.remove(0);
+            slabLines.remove(0);
+            firstSlab++;
+        }
+
+        // Give back memory if the index has shrunk significantly
+        if (index.length > MIN_CAPACITY && size < index.length >> 2) {
+            resize(Math.max(MIN_CAPACITY, index.length >> 1));
+        }
+    }
+
+    /**
+     * Moves the addresses in the index into a new array of the specified
+     * size.
+     *
+     * @param capacity The new capacity, which must be a power of two no
+     * smaller than the current size
+     */
+    private void resize(final int capacity) {
+        final long[] newIndex = new long[capacity];
+        final int firstPart = Math.min(size, index.length - head);
+
+        System.arraycopy(index, head, newIndex, 0, firstPart);
+        System.arraycopy(index, 0, newIndex, firstPart, size - firstPart);
+
+        index = newIndex;
+        head = 0;
+    }
+
+}
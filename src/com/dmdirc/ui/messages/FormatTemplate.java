@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import com.dmdirc.util.DateUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.MissingFormatArgumentException;
+import java.util.UnknownFormatConversionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A pre-compiled formatter template. Templates are parsed once into a list
+ * of literal segments and argument slots, and can then be rendered
+ * repeatedly without re-parsing the format string.
+ * <p>
+ * Templates support the same syntax as {@link String#format}, plus the
+ * special <code>u</code> conversion (which formats a number of seconds as a
+ * duration) and the <code>%-1$</code> argument index (which refers to the
+ * last argument supplied).
+ *
+ * @since 0.6.5
+ */
+final class FormatTemplate {
+
+    /** Regular expression matching format specifiers. */
+    private static final Pattern SPECIFIER = Pattern.compile(
+            "%(-1\\$|\\d+\\$)?([-#+ 0,(<]*)(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+
+    /** The conversions understood by templates. */
+    private static final String CONVERSIONS = "bBhHsScCdoxXeEfgGaAtTu";
+
+    /** Argument index used to indicate the last argument. */
+    private static final int LAST_ARGUMENT = Integer.MIN_VALUE;
+
+    /** The literal segments and argument slots of this template, in order. */
+    private final Object[] parts;
+
+    /**
+     * Creates a new template with the specified parts.
+     *
+     * @param parts Literal segments (Strings) and argument slots
+     */
+    private FormatTemplate(final Object[] parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Compiles the specified format string into a template.
+     *
+     * @param format The format string to be compiled
+     * @return A compiled template for the format string
+     * @throws UnknownFormatConversionException If the format contains an
+     * unknown conversion
+     */
+    public static FormatTemplate compile(final String format) {
+        final List<Object> parts = new ArrayList<Object>();
+        final StringBuilder literal = new StringBuilder();
+        final Matcher matcher = SPECIFIER.matcher(format);
+        int ordinaryIndex = 0;
+        int lastIndex = LAST_ARGUMENT;
+        boolean hasLast = false;
+        int pos = 0;
+
+        while (pos < format.length()) {
+            final int next = format.indexOf('%', pos);
+
+            if (next == -1) {
+                literal.append(format, pos, format.length());
+                break;
+            }
+
+            literal.append(format, pos, next);
+
+            if (!matcher.find(next) || matcher.start() != next) {
+                throw new UnknownFormatConversionException(next + 1
+                        < format.length() ? format.substring(next + 1, next + 2) : "%");
+            }
+
+            pos = matcher.end();
+            final char conversion = matcher.group(6).charAt(0);
+
+            if (conversion == '%' && matcher.group(5) == null) {
+                literal.append('%');
+                continue;
+            } else if (conversion == 'n' && matcher.group(5) == null) {
+                literal.append(System.getProperty("line.separator"));
+                continue;
+            } else if (matcher.group(5) == null
+                    && CONVERSIONS.indexOf(conversion) == -1) {
+                throw new UnknownFormatConversionException(String.valueOf(conversion));
+            }
+
+            String flags = matcher.group(2);
+            final int index;
+
+            if (flags.indexOf('<') != -1) {
+                if (!hasLast) {
+                    throw new MissingFormatArgumentException(matcher.group());
+                }
+                index = lastIndex;
+                flags = flags.replace("<", "");
+            } else if (matcher.group(1) == null) {
+                index = ordinaryIndex++;
+            } else if ("-1$".equals(matcher.group(1))) {
+                index = LAST_ARGUMENT;
+            } else {
+                index = Integer.parseInt(matcher.group(1).substring(0,
+                        matcher.group(1).length() - 1)) - 1;
+            }
+
+            lastIndex = index;
+            hasLast = true;
+
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+                literal.setLength(0);
+            }
+
+            final boolean simple = flags.isEmpty() && matcher.group(3) == null
+                    && matcher.group(4) == null;
+            final char type = matcher.group(5) == null ? conversion
+                    : matcher.group(5).charAt(0);
+            final String spec = simple && (conversion == 's' || conversion == 'u')
+                    ? null : "%" + flags + nonNull(matcher.group(3))
+                    + nonNull(matcher.group(4)) + nonNull(matcher.group(5))
+                    + (conversion == 'u' ? 's' : conversion);
+
+            parts.add(new Slot(index, type, spec, matcher.group()));
+        }
+
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+        }
+
+        return new FormatTemplate(parts.toArray());
+    }
+
+    /**
+     * Renders this template with the specified arguments. The output is
+     * appended to the specified builder, which should also be the
+     * destination of the specified formatter.
+     *
+     * @param builder The builder to append output to
+     * @param formatter A formatter which outputs to the builder
+     * @param arguments The arguments to be formatted
+     */
+    public void render(final StringBuilder builder,
+            final java.util.Formatter formatter, final Object ... arguments) {
+        final char[] types = new char[arguments.length];
+
+        for (Object part : parts) {
+            if (part instanceof String) {
+                builder.append((String) part);
+                continue;
+            }
+
+            final Slot slot = (Slot) part;
+            final int index = slot.index == LAST_ARGUMENT
+                    ? arguments.length - 1 : slot.index;
+
+            if (index < 0 || index >= arguments.length) {
+                throw new MissingFormatArgumentException(slot.text);
+            }
+
+            // Arguments are converted according to the first specifier
+            // that refers to them
+            if (types[index] == 0) {
+                types[index] = slot.type;
+            }
+
+            final Object value = castArgument(types[index], arguments[index]);
+
+            if (slot.spec == null) {
+                builder.append(String.valueOf(value));
+            } else {
+                formatter.format(slot.spec, value);
+            }
+        }
+    }
+
+    /**
+     * Casts the specified argument to a class relevant for the specified
+     * conversion type.
+     *
+     * @param type The type of conversion that will be applied
+     * @param argument The argument to be casted
+     * @return An appropriately typed argument
+     */
+    private static Object castArgument(final char type, final Object argument) {
+        switch (type) {
+        case 'b': case 'B': case 'h': case 'H': case 's': case 'S':
+            // General (strings)
+            return String.valueOf(argument);
+        case 'c': case 'C':
+            // Character
+            return String.valueOf(argument).charAt(0);
+        case 'd': case 'o': case 'x': case 'X':
+            // Integers
+            return argument instanceof String
+                    ? Integer.valueOf((String) argument) : argument;
+        case 'e': case 'E': case 'f': case 'g': case 'G': case 'a': case 'A':
+            // Floating point
+            return argument instanceof String
+                    ? Float.valueOf((String) argument) : argument;
+        case 't': case 'T':
+            // Date
+            if (argument instanceof String) {
+                // Assume it's a timestamp(?)
+                return Long.valueOf(1000 * Long.valueOf((String) argument));
+            }
+            return argument;
+        case 'u':
+            // Duration hacks
+            return DateUtils.formatDuration(Integer.valueOf(
+                    String.valueOf(argument)));
+        default:
+            return argument;
+        }
+    }
+
+    /**
+     * Returns the specified string, or an empty string if it is null.
+     *
+     * @param string The string to check
+     * @return The string or an empty string
+     */
+    private static String nonNull(final String string) {
+        return string == null ? "" : string;
+    }
+
+    /**
+     * A slot in a template that is filled by an argument.
+     */
+    private static final class Slot {
+
+        /** The index of the argument, or LAST_ARGUMENT. */
+        private final int index;
+        /** The type of conversion used for this slot. */
+        private final char type;
+        /** The specifier used to format this slot, or null to append directly. */
+        private final String spec;
+        /** The original text of the specifier. */
+        private final String text;
+
+        /**
+         * Creates a new slot.
+         *
+         * @param index The index of the argument
+         * @param type The type of conversion used for the slot
+         * @param spec The specifier to format the slot with, or null
+         * @param text The original text of the specifier
+         */
+        public Slot(final int index, final char type, final String spec,
+                final String text) {
+            this.index = index;
+            this.type = type;
+            this.spec = spec;
+            this.text = text;
+        }
+
+    }
+
+}
@@ -24,13 +24,14 @@ package com.dmdirc.ui.messages;
 
 import com.dmdirc.Precondition;
 import com.dmdirc.config.ConfigManager;
-import com.dmdirc.util.DateUtils;
+import com.dmdirc.interfaces.ConfigChangeListener;
 
 import java.util.HashMap;
 import java.util.IllegalFormatConversionException;
 import java.util.Map;
 import java.util.MissingFormatArgumentException;
 import java.util.UnknownFormatConversionException;
+import java.util.WeakHashMap;
 
 /**
  * The Formatter provides a standard way to format messages for display.
@@ -38,10 +39,22 @@ import java.util.UnknownFormatConversionException;
 public final class Formatter {
 
     /**
-     * A cache of types needed by the various formatters.
+     * A cache of compiled templates, keyed on config manager. Entries are
+     * removed when the corresponding formatter setting changes. The cache
+     * and the template sets within it are synchronised on this map.
      */
-    private static final Map<String, Character[]> TYPE_CACHE
-            = new HashMap<String, Character[]>();
+    private static final Map<ConfigManager, TemplateSet> TEMPLATE_CACHE
+            = new WeakHashMap<ConfigManager, TemplateSet>();
+
+    /** Per-thread builders and formatters used to render templates. */
+    private static final ThreadLocal<RenderTarget> RENDER_TARGET
+            = new ThreadLocal<RenderTarget>() {
+        /** {@inheritDoc} */
+        @Override
+        protected RenderTarget initialValue() {
+            return new RenderTarget();
+        }
+    };
 
     /**
      * Creates a new instance of Formatter.
@@ -64,117 +77,166 @@ public final class Formatter {
             final Object... arguments) {
         assert messageType != null;
 
-        final String res = config.hasOptionString("formatter", messageType)
-                ? config.getOption("formatter", messageType).replace("%-1$", "%"
-                + arguments.length + "$") : null;
+        final TemplateSet templates = getTemplates(config);
+        final int generation = templates.getGeneration();
+        FormatTemplate template = templates.get(messageType);
 
-        if (res == null) {
-            return "<No format string for message type " + messageType + ">";
-        } else {
-            try {
-                final Object[] newArgs = castArguments(res, arguments);
-                return String.format(res.replaceAll("(%[0-9]+\\$)u", "$1s"), newArgs);
-            } catch (IllegalFormatConversionException ex) {
-                return "<Invalid format string for message type " + messageType
-                        + "; Error: Illegal format conversion: " + ex.getMessage() + ">";
-            } catch (UnknownFormatConversionException ex) {
-                return "<Invalid format string for message type " + messageType
-                        + "; Error: Unknown format conversion: " + ex.getMessage() + ">";
-            } catch (MissingFormatArgumentException ex) {
-                return "<Invalid format string for message type " + messageType
-                        + "; Error: Missing format argument: " + ex.getMessage() + ">";
-            } catch (NumberFormatException ex) {
-                return "<Invalid format string for message type " + messageType
-                        + "; Error: Invalid number conversion: " + ex.getMessage() + ">";
+        try {
+            if (template == null) {
+                if (!config.hasOptionString("formatter", messageType)) {
+                    return "<No format string for message type " + messageType + ">";
+                }
+
+                template = FormatTemplate.compile(config.getOption("formatter",
+                        messageType));
+                templates.put(messageType, template, generation);
             }
+
+            return RENDER_TARGET.get().render(template, arguments);
+        } catch (IllegalFormatConversionException ex) {
+            return "<Invalid format string for message type " + messageType
+                    + "; Error: Illegal format conversion: " + ex.getMessage() + ">";
+        } catch (UnknownFormatConversionException ex) {
+            return "<Invalid format string for message type " + messageType
+                    + "; Error: Unknown format conversion: " + ex.getMessage() + ">";
+        } catch (MissingFormatArgumentException ex) {
+            return "<Invalid format string for message type " + messageType
+                    + "; Error: Missing format argument: " + ex.getMessage() + ">";
+        } catch (NumberFormatException ex) {
+            return "<Invalid format string for message type " + messageType
+                    + "; Error: Invalid number conversion: " + ex.getMessage() + ">";
         }
     }
 
     /**
-     * Casts the specified arguments to the relevant classes, based on the
-     * format type cache.
+     * Retrieves the cached templates for the specified config manager. The
+     * first time this is called for a manager, a listener is added to it
+     * to invalidate templates when formatters change. The listener is added
+     * before the templates can be seen by any caller, so no change made
+     * after a formatter has been read can be missed.
      *
-     * @param format The format to be used
-     * @param args The arguments to be casted
-     * @return A new set of arguments of appropriate types
+     * @param config The config manager the templates are compiled from
+     * @return The template cache for the manager
      */
-    @Precondition("The specified format is not null")
-    private static Object[] castArguments(final String format, final Object[] args) {
-        assert format != null;
+    private static TemplateSet getTemplates(final ConfigManager config) {
+        synchronized (TEMPLATE_CACHE) {
+            TemplateSet templates = TEMPLATE_CACHE.get(config);
+
+            if (templates == null) {
+                templates = new TemplateSet();
+                config.addChangeListener("formatter", templates);
+                TEMPLATE_CACHE.put(config, templates);
+            }
 
-        if (!TYPE_CACHE.containsKey(format)) {
-            analyseFormat(format, args);
+            return templates;
         }
+    }
 
-        final Object[] res = new Object[args.length];
+    /**
+     * The compiled templates for a single config manager, which removes
+     * templates when the corresponding formatter changes.
+     */
+    private static final class TemplateSet implements ConfigChangeListener {
+
+        /** The compiled templates, keyed on message type. */
+        private final Map<String, FormatTemplate> templates
+                = new HashMap<String, FormatTemplate>();
+
+        /** The number of formatter changes seen by this set. */
+        private int generation;
+
+        /**
+         * Retrieves the number of formatter changes seen by this set. This
+         * should be read before the formatter that a template is compiled
+         * from.
+         *
+         * @return The current generation of this set
+         */
+        public int getGeneration() {
+            synchronized (TEMPLATE_CACHE) {
+                return generation;
+            }
+        }
 
-        int i = 0;
-        for (Character chr : TYPE_CACHE.get(format)) {
-            if (i >= args.length) {
-                break;
+        /**
+         * Retrieves the template for the specified message type.
+         *
+         * @param messageType The message type of the template
+         * @return The cached template, or null if there isn't one
+         */
+        public FormatTemplate get(final String messageType) {
+            synchronized (TEMPLATE_CACHE) {
+                return templates.get(messageType);
             }
+        }
 
-            switch (chr) {
-            case 'b': case 'B': case 'h': case 'H': case 's': case 'S':
-                // General (strings)
-                res[i] = String.valueOf(args[i]);
-                break;
-            case 'c': case 'C':
-                // Character
-                res[i] = String.valueOf(args[i]).charAt(0);
-                break;
-            case 'd': case 'o': case 'x': case 'X':
-                // Integers
-                res[i] = Integer.valueOf((String) args[i]);
-                break;
-            case 'e': case 'E': case 'f': case 'g': case 'G': case 'a': case 'A':
-                // Floating point
-                res[i] = Float.valueOf((String) args[i]);
-                break;
-            case 't': case 'T':
-                // Date
-                if (args[i] instanceof String) {
-                    // Assume it's a timestamp(?)
-                    res[i] = Long.valueOf(1000 * Long.valueOf((String) args[i]));
-                } else {
-                    res[i] = args[i];
+        /**
+         * Caches a compiled template, unless a formatter has changed since
+         * the specified generation, in which case the template may be stale.
+         *
+         * @param messageType The message type of the template
+         * @param template The compiled template
+         * @param readGeneration The generation of this set when the
+         * formatter was read
+         */
+        public void put(final String messageType, final FormatTemplate template,
+                final int readGeneration) {
+            synchronized (TEMPLATE_CACHE) {
+                if (generation == readGeneration) {
+                    templates.put(messageType, template);
                 }
-                break;
-            case 'u':
-                // Duration hacks
-                res[i] = DateUtils.formatDuration(Integer.valueOf(
-                        String.valueOf(args[i].toString())));
-                break;
-            default:
-                res[i] = args[i];
             }
+        }
 
-            i++;
+        /** {@inheritDoc} */
+        @Override
+        public void configChanged(final String domain, final String key) {
+            synchronized (TEMPLATE_CACHE) {
+                generation++;
+                templates.remove(key);
+            }
         }
 
-        return res;
     }
 
     /**
-     * Analyses the specified format string and fills in the format type cache.
-     *
-     * @param format The format to analyse
-     * @param args The raw arguments
+     * A reusable builder and formatter that templates are rendered into.
      */
-    private static void analyseFormat(final String format, final Object[] args) {
-        final Character[] types = new Character[args.length];
-
-        for (int i = 0; i < args.length; i++) {
-            final int index = format.indexOf("%" + (i + 1) + "$");
+    private static final class RenderTarget {
+
+        /** The builder that output is written to. */
+        private final StringBuilder builder = new StringBuilder();
+        /** A formatter that writes to the builder. */
+        private final java.util.Formatter formatter
+                = new java.util.Formatter(builder);
+        /** Whether this target is currently being rendered into. */
+        private boolean inUse;
+
+        /**
+         * Renders the specified template.
+         *
+         * @param template The template to be rendered
+         * @param arguments The arguments to the template
+         * @return The rendered template
+         */
+        public String render(final FormatTemplate template,
+                final Object ... arguments) {
+            if (inUse) {
+                // An argument is being formatted re-entrantly; don't
+                // clobber the output that's already in progress.
+                return new RenderTarget().render(template, arguments);
+            }
 
-            if (index > -1) {
-                types[i] = format.charAt(index + 3);
-            } else {
-                types[i] = 's';
+            inUse = true;
+            try {
+                builder.setLength(0);
+                template.render(builder, formatter, arguments);
+                return builder.toString();
+            } finally {
+                inUse = false;
             }
         }
 
-        TYPE_CACHE.put(format, types);
     }
 
 }
@@ -24,14 +24,15 @@ package com.dmdirc.ui.messages;
 
 import com.dmdirc.config.ConfigManager;
 import com.dmdirc.interfaces.ConfigChangeListener;
+import com.dmdirc.logger.ErrorLevel;
+import com.dmdirc.logger.Logger;
 import com.dmdirc.util.ListenerList;
-import com.dmdirc.util.RollingList;
 
 import java.awt.Font;
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
-import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.UIManager;
@@ -47,14 +48,30 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
      * objects being unserialized with the new class).
      */
     private static final long serialVersionUID = 4;
-    /** List of lines of text. */
-    private final List<Line> lines;
+    /** Default maximum size of the styled line cache, in bytes. */
+    public static final long DEFAULT_CACHE_SIZE = 2 * 1024 * 1024;
+    /** Maximum number of lines restored from a persistent scrollback. */
+    private static final int RESTORE_LINES = 200;
+    /** Buffer of lines of text. */
+    private final LineStore lines;
     /** Listener list. */
     private final ListenerList listeners;
-    /** Cached lines. */
-    private final RollingList<Line> cachedLines;
-    /** Cached attributed strings. */
-    private final RollingList<AttributedString> cachedStrings;
+    /** Cache of styled lines. */
+    private final StyledLineCache cache;
+    /** Index of line text, built on the first search. */
+    private SearchIndex searchIndex;
+    /** Number of lines trimmed since the search index was last pruned. */
+    private int searchTrimmed;
+    /** Persistent store of this document's lines, if any. */
+    private ScrollbackStore scrollback;
+    /** Difference between scrollback and logical line numbers. */
+    private long scrollbackDelta;
+    /** First scrollback line which may be paged in. */
+    private long scrollbackFloor;
+    /** Number of lines paged in, which are exempt from trimming. */
+    private int pagedLines;
+    /** Number of characters paged in, which are exempt from trimming. */
+    private long pagedChars;
     /** Config Manager for getting settings. */
     private final ConfigManager configManager;
     /** This document's styliser. */
@@ -65,6 +82,8 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
     private String fontName;
     /** Frame buffer size. */
     private Integer frameBufferSize;
+    /** Maximum number of characters to retain. */
+    private Integer frameBufferChars;
 
     /**
      * Creates a new instance of IRCDocument.
@@ -78,18 +97,25 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
         this.configManager = configManager;
         this.styliser = styliser;
 
-        lines = new ArrayList<Line>();
+        if (configManager.hasOptionBool("ui", "compactScrollback")
+                && configManager.getOptionBool("ui", "compactScrollback")) {
+            lines = new CompactLineBuffer(styliser, null);
+        } else {
+            lines = new LineBuffer();
+        }
         listeners = new ListenerList();
 
-        cachedLines = new RollingList<Line>(50);
-        cachedStrings = new RollingList<AttributedString>(50);
+        cache = new StyledLineCache(getConfiguredCacheSize());
         frameBufferSize = configManager.getOptionInt("ui", "frameBufferSize", false);
 
         configManager.addChangeListener("ui", "textPaneFontSize", this);
         configManager.addChangeListener("ui", "textPaneFontName", this);
         configManager.addChangeListener("ui", "frameBufferSize", this);
+        configManager.addChangeListener("ui", "frameBufferChars", this);
+        configManager.addChangeListener("ui", "styledLineCacheSize", this);
 
         setCachedSettings();
+        lines.setFont(fontName, fontSize);
     }
 
     /**
@@ -116,6 +142,22 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
         }
     }
 
+    /**
+     * Returns the logical line number of the line at index 0. Logical line
+     * numbers are assigned sequentially as lines are added and do not change
+     * when the document is trimmed, so they may be used to track a line
+     * across trims. Lines paged in with {@link #pageIn(int)} are numbered
+     * before the existing first line.
+     *
+     * @return Logical line number of the first line in the document
+     * @since 0.6.5
+     */
+    public long getFirstLineNumber() {
+        synchronized (lines) {
+            return lines.getFirstLineNumber();
+        }
+    }
+
     /**
      * Adds the stylised string to the canvas.
      *
@@ -126,7 +168,7 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
         synchronized (lines) {
             start = lines.size();
             for (String[] string : text) {
-                lines.add(new Line(styliser, string, fontSize, fontName));
+                addLine(new Line(styliser, string, fontSize, fontName));
             }
         }
         fireLinesAdded(start, text.size());
@@ -146,12 +188,207 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
             for (int i = 0; i < text.size(); i++) {
                 final String[] string = text.get(i);
                 final int lineHeight = lineHeights.get(i);
-                lines.add(new Line(styliser, string, lineHeight, fontName));
+                addLine(new Line(styliser, string, lineHeight, fontName));
             }
         }
         fireLinesAdded(start, text.size());
     }
 
+    /**
+     * Appends a line to the document, indexing it if the search index has
+     * been built.
+     *
+     * @param line The line to be added
+     */
+    private void addLine(final Line line) {
+        lines.add(line);
+
+        if (scrollback != null) {
+            // Appending only queues the line, so no disk I/O happens here
+            scrollbackDelta = scrollback.getNextLineNumber()
+                    - (lines.getFirstLineNumber() + lines.size() - 1);
+            scrollback.append(line.getLineParts(), System.currentTimeMillis());
+        }
+
+        if (searchIndex != null) {
+            searchIndex.add(lines.getFirstLineNumber() + lines.size() - 1,
+                    line.getText());
+        }
+    }
+
+    /**
+     * Finds the lines in this document which may contain the specified
+     * phrase, ignoring case. The returned lines are not guaranteed to contain
+     * the phrase, but no other lines will. The search index is built the
+     * first time this method is called.
+     *
+     * @param phrase The phrase to be searched for
+     * @return A sorted array of the indices of candidate lines, or null if
+     * the phrase is too short to be looked up in the index and all lines
+     * must be searched
+     * @since 0.6.5
+     */
+    public int[] getSearchCandidates(final String phrase) {
+        if (phrase.length() < SearchIndex.GRAM_LENGTH) {
+            return null;
+        }
+
+        synchronized (lines) {
+            final long first = lines.getFirstLineNumber();
+
+            if (searchIndex == null) {
+                searchIndex = new SearchIndex();
+                searchTrimmed = 0;
+                for (int i = 0; i < lines.size(); i++) {
+                    searchIndex.add(first + i, lines.get(i).getText());
+                }
+            }
+
+            final long[] candidates = searchIndex.getCandidates(phrase, first);
+            final int[] result = new int[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                result[i] = (int) (candidates[i] - first);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Attaches a persistent scrollback store to this document. The most
+     * recent lines in the store are restored into the document, and all
+     * lines subsequently added to the document are also appended to the
+     * store.
+     *
+     * @param store The store to attach
+     * @since 0.6.5
+     */
+    public void attachScrollback(final ScrollbackStore store) {
+        final int start;
+        final int count;
+
+        synchronized (lines) {
+            scrollback = store;
+
+            final int restore = frameBufferSize == null || frameBufferSize <= 0
+                    ? RESTORE_LINES : Math.min(RESTORE_LINES, frameBufferSize);
+            final long next = store.getNextLineNumber();
+            final List<String[]> restored;
+
+            try {
+                restored = store.read(next - restore, restore);
+            } catch (IOException ex) {
+                Logger.userError(ErrorLevel.LOW, "Unable to read scrollback: "
+                        + ex.getMessage());
+                return;
+            }
+
+            start = lines.size();
+            count = restored.size();
+            for (String[] parts : restored) {
+                lines.add(new Line(styliser, parts, fontSize, fontName));
+            }
+            scrollbackDelta = next - (lines.getFirstLineNumber() + lines.size());
+            if (searchIndex != null) {
+                searchIndex.clear();
+                searchIndex = null;
+            }
+        }
+
+        if (count > 0) {
+            fireLinesAdded(start, count);
+        }
+    }
+
+    /**
+     * Detaches and closes this document's persistent scrollback store, if
+     * it has one.
+     *
+     * @since 0.6.5
+     */
+    public void detachScrollback() {
+        synchronized (lines) {
+            if (scrollback != null) {
+                scrollback.close();
+                scrollback = null;
+            }
+        }
+    }
+
+    /**
+     * Pages older lines from this document's persistent scrollback into the
+     * start of the document, for example when the user scrolls past the
+     * first line. Paged in lines are not trimmed by the frame buffer limits
+     * until {@link #releasePagedLines()} is called. Listeners are informed
+     * of the lines being added at index 0.
+     *
+     * @param count The maximum number of lines to page in
+     * @return The number of lines which were paged in
+     * @since 0.6.5
+     */
+    public int pageIn(final int count) {
+        final int added;
+
+        synchronized (lines) {
+            if (scrollback == null) {
+                return 0;
+            }
+
+            final long first = lines.size() == 0 ? scrollback.getNextLineNumber()
+                    : lines.getFirstLineNumber() + scrollbackDelta;
+            final long from = Math.max(scrollbackFloor, first - count);
+            final List<String[]> older;
+
+            try {
+                older = scrollback.read(from, (int) (first - from));
+            } catch (IOException ex) {
+                Logger.userError(ErrorLevel.LOW, "Unable to read scrollback: "
+                        + ex.getMessage());
+                return 0;
+            }
+
+            if (lines.size() == 0) {
+                scrollbackDelta = first - lines.getFirstLineNumber();
+            }
+
+            for (int i = older.size() - 1; i >= 0; i--) {
+                final Line line = new Line(styliser, older.get(i), fontSize,
+                        fontName);
+                lines.addFirst(line);
+                pagedChars += line.getLength();
+
+                if (searchIndex != null) {
+                    searchIndex.add(lines.getFirstLineNumber(), line.getText());
+                }
+            }
+
+            added = older.size();
+            pagedLines += added;
+        }
+
+        if (added > 0) {
+            for (IRCDocumentListener listener
+                    : listeners.get(IRCDocumentListener.class)) {
+                listener.linesAdded(0, added, getNumLines());
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Allows lines paged in by {@link #pageIn(int)} to be trimmed again, and
+     * trims the document back to its normal size.
+     *
+     * @since 0.6.5
+     */
+    public void releasePagedLines() {
+        synchronized (lines) {
+            pagedLines = 0;
+            pagedChars = 0;
+        }
+        trim(frameBufferSize == null ? 0 : frameBufferSize);
+    }
+
     /**
      * Trims the document to the specified number of lines.
      *
@@ -159,23 +396,90 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
      */
     public void trim(final int numLines) {
         synchronized (lines) {
+            int trimmed = 0;
             if (frameBufferSize != null && frameBufferSize > 0) {
-                int i = 0;
-                while (lines.size() > numLines) {
-                    i++;
-                    lines.remove(0);
-                }
-                if (i > 0) {
-                    fireTrimmed(numLines, i);
-                }
+                uncache(lines.size() - (numLines + pagedLines));
+                trimmed += lines.trim(numLines + pagedLines);
+            }
+            if (frameBufferChars != null && frameBufferChars > 0) {
+                uncache(countCharTrim(frameBufferChars + pagedChars));
+                trimmed += lines.trimChars(frameBufferChars + pagedChars);
             }
+            if (trimmed > 0) {
+                pruneSearchIndex(trimmed);
+                fireTrimmed(lines.size(), trimmed);
+            }
+        }
+    }
+
+    /**
+     * Discards trimmed lines from the search index. Pruning visits every
+     * trigram in the index, so it is only done once the number of trimmed
+     * lines is comparable to the number of lines in the document; this keeps
+     * the index at most about twice the size of the document.
+     *
+     * @param trimmed The number of lines which have just been trimmed
+     */
+    private void pruneSearchIndex(final int trimmed) {
+        if (searchIndex == null) {
+            return;
+        }
+
+        searchTrimmed += trimmed;
+
+        if (searchTrimmed >= Math.max(lines.size(), SearchIndex.MIN_PRUNE_LINES)) {
+            searchIndex.discardBefore(lines.getFirstLineNumber());
+            searchTrimmed = 0;
+        }
+    }
+
+    /**
+     * Removes the first lines of the document from the styled line cache,
+     * before they are trimmed.
+     *
+     * @param count The number of lines about to be trimmed
+     */
+    private void uncache(final int count) {
+        final long first = lines.getFirstLineNumber();
+
+        for (int i = 0; i < count; i++) {
+            cache.remove(first + i);
+        }
+    }
+
+    /**
+     * Counts the lines that {@link LineStore#trimChars(long)} will remove
+     * for the specified limit.
+     *
+     * @param maxChars The maximum number of characters to keep
+     * @return The number of lines which will be trimmed
+     */
+    private int countCharTrim(final long maxChars) {
+        int count = 0;
+        long chars = lines.getRetainedChars();
+
+        while (count < lines.size() - 1 && chars > maxChars) {
+            chars -= lines.getLength(count);
+            count++;
         }
+
+        return count;
     }
 
     /** Clears all lines from the document. */
     public void clear() {
         synchronized (lines) {
             lines.clear();
+            cache.clear();
+            if (searchIndex != null) {
+                searchIndex.clear();
+            }
+            searchTrimmed = 0;
+            pagedLines = 0;
+            pagedChars = 0;
+            if (scrollback != null) {
+                scrollbackFloor = scrollback.getNextLineNumber();
+            }
         }
         fireCleared();
     }
@@ -211,9 +515,9 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
     protected void fireLinesAdded(final int index, final int size) {
         for (IRCDocumentListener listener
                 : listeners.get(IRCDocumentListener.class)) {
-            listener.linesAdded(index, size, lines.size());
+            listener.linesAdded(index, size, getNumLines());
         }
-        trim(frameBufferSize);
+        trim(frameBufferSize == null ? 0 : frameBufferSize);
     }
 
     /**
@@ -250,25 +554,35 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
     }
 
     /**
-     * Returns an attributed character iterator for a particular line,
-     * utilising the document cache where possible.
+     * Returns an attributed character iterator for a particular line. The
+     * document cache is keyed on line numbers, so lines styled this way are
+     * not cached; use {@link #getStyledLine(int)} for lines in this document.
      *
      * @param line Line to be styled
      *
      * @return Styled line
      */
     protected AttributedCharacterIterator getStyledLine(final Line line) {
+        return line.getStyled().getIterator();
+    }
+
+    /**
+     * Returns an attributed string for a particular line, utilising the
+     * document cache where possible.
+     *
+     * @param line Line number to be styled
+     *
+     * @return Styled line
+     */
+    public AttributedCharacterIterator getStyledLine(final int line) {
         synchronized (lines) {
-            AttributedString styledLine = null;
-            if (cachedLines.contains(line)) {
-                final int index = cachedLines.getList().indexOf(line);
-                styledLine = cachedStrings.get(index);
-            }
+            final long lineNumber = lines.getFirstLineNumber() + line;
+            AttributedString styledLine = cache.get(lineNumber);
 
             if (styledLine == null) {
-                styledLine = line.getStyled();
-                cachedLines.add(line);
-                cachedStrings.add(styledLine);
+                final Line target = lines.get(line);
+                styledLine = target.getStyled();
+                cache.put(lineNumber, target, styledLine);
             }
 
             return styledLine.getIterator();
@@ -276,15 +590,29 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
     }
 
     /**
-     * Returns an attributed string for a particular line, utilising the
-     * document cache where possible.
+     * Retrieves the configured maximum size of the styled line cache. The
+     * "ui.styledLineCacheSize" setting is given in kilobytes; if it is unset
+     * or not positive, {@link #DEFAULT_CACHE_SIZE} is used.
      *
-     * @param line Line number to be styled
+     * @return The maximum cache size, in bytes
+     */
+    private long getConfiguredCacheSize() {
+        final Integer size = configManager.getOptionInt("ui", "styledLineCacheSize", false);
+
+        return size == null || size <= 0 ? DEFAULT_CACHE_SIZE : size * 1024L;
+    }
+
+    /**
+     * Retrieves the maximum amount of memory that this document's styled line
+     * cache may use.
      *
-     * @return Styled line
+     * @return The maximum cache size, in bytes
+     * @since 0.6.5
      */
-    public AttributedCharacterIterator getStyledLine(final int line) {
-        return getStyledLine(getLine(line));
+    public long getCacheSize() {
+        synchronized (lines) {
+            return cache.getMaxSize();
+        }
     }
 
     /**
@@ -325,20 +653,30 @@ public class IRCDocument implements Serializable, ConfigChangeListener {
             fontSize = defaultFont.getSize();
         }
         frameBufferSize = configManager.getOptionInt("ui", "frameBufferSize", false);
-        trim(frameBufferSize);
+        frameBufferChars = configManager.getOptionInt("ui", "frameBufferChars", false);
+        trim(frameBufferSize == null ? 0 : frameBufferSize);
     }
 
     /** {@inheritDoc} */
     @Override
     public void configChanged(final String domain, final String key) {
         setCachedSettings();
-        cachedLines.clear();
-        cachedStrings.clear();
-        synchronized (lines) {
-            for (Line line : lines) {
-                line.setFontName(fontName);
-                line.setFontSize(fontSize);
+
+        if ("styledLineCacheSize".equals(key)) {
+            synchronized (lines) {
+                cache.setMaxSize(getConfiguredCacheSize());
             }
+            return;
+        }
+
+        if ("frameBufferSize".equals(key) || "frameBufferChars".equals(key)) {
+            // Cached lines are still valid
+            return;
+        }
+
+        synchronized (lines) {
+            cache.clear();
+            lines.setFont(fontName, fontSize);
         }
         fireRepaintNeeded();
     }
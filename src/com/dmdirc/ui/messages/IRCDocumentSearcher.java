@@ -23,6 +23,7 @@
 package com.dmdirc.ui.messages;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -41,8 +42,8 @@ public class IRCDocumentSearcher {
     /** Textpane position. */
     private LinePosition position;
 
-    /** Case sensitive? */
-    private final boolean caseSensitive;
+    /** Compiled pattern matching the phrase. */
+    private final Pattern pattern;
 
     /**
      * Constructs a new IRC Document searcher.
@@ -56,7 +57,8 @@ public class IRCDocumentSearcher {
         this.phrase = phrase;
         this.document = document;
         this.position = getEndPosition();
-        this.caseSensitive = caseSensitive;
+        this.pattern = Pattern.compile(Pattern.quote(phrase),
+                caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
     }
 
     /**
@@ -86,6 +88,26 @@ public class IRCDocumentSearcher {
         this.position = position;
     }
 
+    /**
+     * Returns the indices of the lines which need to be searched, in
+     * ascending order. Where possible this is narrowed down using the
+     * document's search index.
+     *
+     * @return Sorted array of line indices to search
+     */
+    private int[] getCandidateLines() {
+        int[] lines = document.getSearchCandidates(phrase);
+
+        if (lines == null) {
+            lines = new int[document.getNumLines()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = i;
+            }
+        }
+
+        return lines;
+    }
+
     /**
      * Searches up in the document.
      *
@@ -96,28 +118,28 @@ public class IRCDocumentSearcher {
             position = getEndPosition();
         }
 
-        int line = position.getEndLine();
-        for (int remaining = document.getNumLines(); remaining > 0; remaining--) {
-            if (line < 0) {
-                line = 0;
-            }
-              final String lineText = document.getLine(line).getText();
-
-              final List<LinePosition> matches = searchLine(line, lineText);
+        final int[] lines = getCandidateLines();
+        if (lines.length == 0) {
+            return null;
+        }
 
-             for (int i = matches.size() - 1; i >= 0; i--) {
-                 if (position.getEndLine() != line
-                         || matches.get(i).getEndPos() < position.getEndPos()) {
-                     return matches.get(i);
-                 }
-             }
+        final int index = Arrays.binarySearch(lines,
+                Math.max(0, position.getEndLine()));
+        // The last candidate at or before the start line
+        final int start = index >= 0 ? index : -index - 2;
 
-             line--;
+        for (int i = 0; i < lines.length; i++) {
+            final int line = lines[(start - i + 2 * lines.length) % lines.length];
+            final String lineText = document.getLine(line).getText();
 
-             if (line < 0) {
-                 line += document.getNumLines();
-              }
+            final List<LinePosition> matches = searchLine(line, lineText);
 
+            for (int j = matches.size() - 1; j >= 0; j--) {
+                if (position.getEndLine() != line
+                        || matches.get(j).getEndPos() < position.getEndPos()) {
+                    return matches.get(j);
+                }
+            }
         }
 
         return null;
@@ -133,27 +155,28 @@ public class IRCDocumentSearcher {
             position = getEndPosition();
         }
 
-        int line = position.getStartLine();
-        for (int remaining = document.getNumLines(); remaining > 0; remaining--) {
-            if (line < 0) {
-                line = 0;
-            }
-             final String lineText = document.getLine(line).getText();
+        final int[] lines = getCandidateLines();
+        if (lines.length == 0) {
+            return null;
+        }
 
-             final List<LinePosition> matches = searchLine(line, lineText);
+        final int index = Arrays.binarySearch(lines,
+                Math.max(0, position.getStartLine()));
+        // The first candidate at or after the start line
+        final int start = index >= 0 ? index : -index - 1;
 
-             for (LinePosition match : matches) {
-                 if (position.getStartLine() != line
-                         || match.getStartPos() > position.getStartPos()) {
-                     return match;
-                 }
-             }
+        for (int i = 0; i < lines.length; i++) {
+            final int line = lines[(start + i) % lines.length];
+            final String lineText = document.getLine(line).getText();
 
-             line++;
+            final List<LinePosition> matches = searchLine(line, lineText);
 
-             if (line >= document.getNumLines()) {
-                 line -= document.getNumLines();
-                 }
+            for (LinePosition match : matches) {
+                if (position.getStartLine() != line
+                        || match.getStartPos() > position.getStartPos()) {
+                    return match;
+                }
+            }
         }
 
         return null;
@@ -168,8 +191,7 @@ public class IRCDocumentSearcher {
      */
     private List<LinePosition> searchLine(final int lineNum, final String line) {
         final List<LinePosition> matches = new ArrayList<LinePosition>();
-        final Matcher matcher = Pattern.compile((caseSensitive ? "" : "(?i)")
-                + "\\Q" + phrase + "\\E").matcher(line);
+        final Matcher matcher = pattern.matcher(line);
 
         while (matcher.find()) {
             matches.add(new LinePosition(lineNum, matcher.start(), lineNum, matcher.end()));
@@ -38,6 +38,7 @@ public class Line {
     private final Styliser styliser;
     private int fontSize;
     private String fontName;
+    private String text;
 
     /**
      * Creates a new line with a specified height.
@@ -110,11 +111,14 @@ public class Line {
      * @return Line at the specified number or null
      */
     public String getText() {
-        final StringBuilder lineText = new StringBuilder();
-        for (String linePart : lineParts) {
-            lineText.append(linePart);
+        if (text == null) {
+            final StringBuilder lineText = new StringBuilder();
+            for (String linePart : lineParts) {
+                lineText.append(linePart);
+            }
+            text = Styliser.stipControlCodes(lineText.toString());
         }
-        return Styliser.stipControlCodes(lineText.toString());
+        return text;
     }
 
     /**
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+/**
+ * A ring buffer of {@link Line}s used as the backing store of an
+ * {@link IRCDocument}.
+ * <p>
+ * Lines are appended at the tail and trimmed from the head without shifting
+ * the remaining lines, so both operations are constant time per line. Each
+ * line is also given a logical line number which does not change when older
+ * lines are trimmed, allowing callers to track lines across trims.
+ * <p>
+ * This class is not thread safe; callers must provide their own
+ * synchronisation.
+ *
+ * @since 0.6.5
+ */
+public class LineBuffer implements LineStore {
+
+    /** The initial (and minimum) capacity of the buffer. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** The slots used to store lines. */
+    private Line[] slots;
+    /** The index of the slot containing the first line. */
+    private int head;
+    /** The number of lines in the buffer. */
+    private int size;
+    /** The logical line number of the first line in the buffer. */
+    private long offset;
+    /** The total number of characters retained by this buffer. */
+    private long retainedChars;
+
+    /**
+     * Creates a new, empty, line buffer.
+     */
+    public LineBuffer() {
+        slots = new Line[MIN_CAPACITY];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRetainedChars() {
+        return retainedChars;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFirstLineNumber() {
+        return offset;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Line get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + size);
+        }
+
+        return slots[(head + index) & (slots.length - 1)];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLength(final int index) {
+        return get(index).getLength();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Line getByLineNumber(final long lineNumber) {
+        final long index = lineNumber - offset;
+
+        return index < 0 || index >= size ? null : get((int) index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(final Line line) {
+        if (size == slots.length) {
+            resize(slots.length << 1);
+        }
+
+        slots[(head + size) & (slots.length - 1)] = line;
+        size++;
+        retainedChars += line.getLength();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addFirst(final Line line) {
+        if (size == slots.length) {
+            resize(slots.length << 1);
+        }
+
+        head = (head - 1) & (slots.length - 1);
+        slots[head] = line;
+        size++;
+        offset--;
+        retainedChars += line.getLength();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int trim(final int numLines) {
+        final int count = size - Math.max(0, numLines);
+
+        if (count <= 0) {
+            return 0;
+        }
+
+        removeFirst(count);
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int trimChars(final long maxChars) {
+        int count = 0;
+        long chars = retainedChars;
+
+        while (count < size - 1 && chars > maxChars) {
+            chars -= getLength(count);
+            count++;
+        }
+
+        if (count > 0) {
+            removeFirst(count);
+        }
+
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        offset += size;
+        slots = new Line[MIN_CAPACITY];
+        head = 0;
+        size = 0;
+        retainedChars = 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setFont(final String fontName, final int fontSize) {
+        final int mask = slots.length - 1;
+
+        for (int i = 0; i < size; i++) {
+            final Line line = slots[(head + i) & mask];
+            line.setFontName(fontName);
+            line.setFontSize(fontSize);
+        }
+    }
+
+    /**
+     * Removes the specified number of lines from the start of the buffer.
+     *
+     * @param count The number of lines to remove
+     */
+    private void removeFirst(final int count) {
+        final int mask = slots.length - 1;
+
+        for (int i = 0; i < count; i++) {
+            final int slot = (head + i) & mask;
+            retainedChars -= slots[slot].getLength();
+            slots[slot] = null;
+        }
+
+        head = (head + count) & mask;
+        size -= count;
+        offset += count;
+
+        // Give back memory if the buffer has shrunk significantly
+        if (slots.length > MIN_CAPACITY && size < slots.length >> 2) {
+            resize(Math.max(MIN_CAPACITY, slots.length >> 1));
+        }
+    }
+
+    /**
+     * Moves the lines in this buffer into a new array of the specified size.
+     *
+     * @param capacity The new capacity, which must be a power of two no
+     * smaller than the current size
+     */
+    private void resize(final int capacity) {
+        final Line[] newSlots = new Line[capacity];
+        final int firstPart = Math.min(size, slots.length - head);
+
+        System.arraycopy(slots, head, newSlots, 0, firstPart);
+        System.arraycopy(slots, 0, newSlots, firstPart, size - firstPart);
+
+        slots = newSlots;
+        head = 0;
+    }
+
+}
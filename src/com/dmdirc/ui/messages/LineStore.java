@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+/**
+ * Describes the storage used to hold the lines of an {@link IRCDocument}.
+ * <p>
+ * Each line is given a logical line number which does not change when older
+ * lines are trimmed, allowing callers to track lines across trims.
+ * Implementations are not required to be thread safe; callers must provide
+ * their own synchronisation.
+ *
+ * @since 0.6.5
+ */
+public interface LineStore {
+
+    /**
+     * Retrieves the number of lines in this store.
+     *
+     * @return The number of lines in this store
+     */
+    int size();
+
+    /**
+     * Retrieves the total number of characters of the lines retained in
+     * this store.
+     *
+     * @return The number of characters in this store
+     */
+    long getRetainedChars();
+
+    /**
+     * Retrieves the logical line number of the first line in this store.
+     * Logical line numbers are assigned sequentially as lines are added, and
+     * are not reused when lines are trimmed or cleared.
+     *
+     * @return The logical line number of the line at index 0
+     */
+    long getFirstLineNumber();
+
+    /**
+     * Retrieves the line at the specified index.
+     *
+     * @param index The index of the line, relative to the first line
+     * @return The line at the specified index
+     * @throws IndexOutOfBoundsException If the index is out of range
+     */
+    Line get(int index);
+
+    /**
+     * Retrieves the length of the line at the specified index, without
+     * creating a {@link Line} object for it if it is not held as one.
+     *
+     * @param index The index of the line, relative to the first line
+     * @return The length of the line, in characters
+     * @throws IndexOutOfBoundsException If the index is out of range
+     */
+    int getLength(int index);
+
+    /**
+     * Retrieves the line with the specified logical line number.
+     *
+     * @param lineNumber The logical line number of the line
+     * @return The corresponding line, or null if it is no longer (or not yet)
+     * in this store
+     */
+    Line getByLineNumber(long lineNumber);
+
+    /**
+     * Appends the specified line to the end of this store.
+     *
+     * @param line The line to be added
+     */
+    void add(Line line);
+
+    /**
+     * Inserts the specified line before the first line in this store. The
+     * new line is given the logical line number before that of the current
+     * first line, and the numbers of the existing lines do not change.
+     *
+     * @param line The line to be added
+     */
+    void addFirst(Line line);
+
+    /**
+     * Removes lines from the start of the store until at most the specified
+     * number of lines remain.
+     *
+     * @param numLines The maximum number of lines to keep
+     * @return The number of lines that were removed
+     */
+    int trim(int numLines);
+
+    /**
+     * Removes lines from the start of the store until the number of
+     * retained characters is at most the specified limit. The most recent
+     * line is always kept.
+     *
+     * @param maxChars The maximum number of characters to keep
+     * @return The number of lines that were removed
+     */
+    int trimChars(long maxChars);
+
+    /**
+     * Removes all lines from this store and releases its storage.
+     */
+    void clear();
+
+    /**
+     * Changes the font used by every line in this store.
+     *
+     * @param fontName The new font name
+     * @param fontSize The new font size
+     */
+    void setFont(String fontName, int fontSize);
+
+}
@@ -0,0 +1,921 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import com.dmdirc.logger.ErrorLevel;
+import com.dmdirc.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent, append-only store of the lines added to a document, which
+ * allows a window's scrollback to survive the window being closed or the
+ * client being restarted.
+ * <p>
+ * Lines are stored in segment files named after the logical number of their
+ * first line. Each segment has a companion index file containing a sparse
+ * mapping of line numbers and timestamps to offsets within the segment, so
+ * that any line can be found by reading at most {@link #INDEX_INTERVAL}
+ * records. Segments which are no longer being written to are read through
+ * read-only memory mappings, and only the part of the current segment
+ * covering the requested lines is read.
+ * <p>
+ * Appending a line never touches the disk: records are queued in memory and
+ * written in batches by a shared background thread, once a batch's worth of
+ * records is queued or the oldest queued record is {@link #MAX_FLUSH_DELAY}
+ * milliseconds old. Queued records are also written when the store is read,
+ * flushed or closed. If writing fails, the error is logged and the store
+ * stops accepting lines.
+ * <p>
+ * Lines are stored after they have been formatted, so restoring them does
+ * not require the original events to be formatted again.
+ *
+ * @since 0.6.5
+ */
+public class ScrollbackStore {
+
+    /** The number of records between entries in the sparse index. */
+    public static final int INDEX_INTERVAL = 64;
+    /** The default maximum size of a segment, in bytes. */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /** The default maximum total size of a store, in bytes. */
+    public static final long DEFAULT_MAX_SIZE = 2L * DEFAULT_SEGMENT_SIZE;
+    /** The maximum time a record is queued before being written, in ms. */
+    public static final long MAX_FLUSH_DELAY = 1000;
+    /** The size of the buffer used to batch record writes, in bytes. */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    /** The size of a record's header: record length, timestamp and parts. */
+    private static final int HEADER_SIZE = 14;
+    /** The size of an entry in an index file. */
+    private static final int INDEX_ENTRY_SIZE = 20;
+    /** The extension used for segment files. */
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** The extension used for index files. */
+    private static final String INDEX_SUFFIX = ".idx";
+    /** The charset used to encode line parts. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The thread used to write queued records for all stores. */
+    private static ScheduledExecutorService flusher;
+
+    /** The directory containing this store's files. */
+    private final File directory;
+    /** The maximum size of each segment, in bytes. */
+    private final int segmentSize;
+    /** The segments in this store, oldest first. */
+    private final List<Segment> segments = new ArrayList<Segment>();
+    /** The file that new records are written to. */
+    private RandomAccessFile writer;
+    /** The index file for the segment that new records are written to. */
+    private RandomAccessFile indexWriter;
+    /** The records waiting to be written, oldest first. */
+    private final List<ByteBuffer> queued = new ArrayList<ByteBuffer>();
+    /** The total size of the queued records, in bytes. Guarded by queued. */
+    private int queuedBytes;
+    /** Whether a delayed write has been scheduled. Guarded by queued. */
+    private boolean flushScheduled;
+    /** Whether an immediate write has been requested. Guarded by queued. */
+    private boolean flushRequested;
+    /** Whether writing has failed. Guarded by queued. */
+    private boolean failed;
+    /** The number that will be given to the next line. Guarded by queued. */
+    private long nextLine;
+    /** The logical line number of the next line to be written to disk. */
+    private long writtenLine;
+    /** Files belonging to pruned segments which could not be deleted. */
+    private final List<File> undeleted = new ArrayList<File>();
+    /** Writes this store's queued records, logging any failure. */
+    private final Runnable flushTask = new Runnable() {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (IOException ex) {
+                Logger.userError(ErrorLevel.LOW, "Unable to write scrollback: "
+                        + ex.getMessage());
+            }
+        }
+    };
+    /** The maximum total size of this store, in bytes, or 0 for no limit. */
+    private long maxSize = DEFAULT_MAX_SIZE;
+    /** Records which have not yet been written to the current segment. */
+    private final ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    /** Index entries which have not yet been written to the index file. */
+    private final ByteBuffer pendingIndex = ByteBuffer.allocate(INDEX_ENTRY_SIZE
+            * (WRITE_BUFFER_SIZE / (HEADER_SIZE * INDEX_INTERVAL) + 1));
+    /** The offset in the current segment of the first buffered record. */
+    private long pendingOffset;
+
+    /**
+     * Opens (or creates) a scrollback store in the specified directory.
+     *
+     * @param directory The directory containing the store's files
+     * @throws IOException If the store cannot be opened
+     */
+    public ScrollbackStore(final File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens (or creates) a scrollback store in the specified directory.
+     *
+     * @param directory The directory containing the store's files
+     * @param segmentSize The maximum size of each segment, in bytes
+     * @throws IOException If the store cannot be opened
+     */
+    public ScrollbackStore(final File directory, final int segmentSize)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create scrollback directory: "
+                    + directory);
+        }
+
+        load();
+    }
+
+    /**
+     * Sets the maximum amount of disk space this store may use. When the
+     * limit is exceeded, whole segments are deleted, oldest first. Stores
+     * are limited to {@link #DEFAULT_MAX_SIZE} bytes unless this is called.
+     *
+     * @param maxSize The maximum size of this store in bytes, or 0 for no
+     * limit
+     */
+    public synchronized void setMaxSize(final long maxSize) {
+        this.maxSize = maxSize;
+        prune();
+    }
+
+    /**
+     * Retrieves the logical line number of the oldest line in this store.
+     *
+     * @return The number of the oldest stored line
+     */
+    public synchronized long getFirstLineNumber() {
+        return segments.isEmpty() ? writtenLine : segments.get(0).firstLine;
+    }
+
+    /**
+     * Retrieves the logical line number that will be given to the next line
+     * appended to this store.
+     *
+     * @return The number of the next line
+     */
+    public long getNextLineNumber() {
+        synchronized (queued) {
+            return nextLine;
+        }
+    }
+
+    /**
+     * Appends a line to the end of this store. The line is queued to be
+     * written in the background, so this never waits for the disk. Lines
+     * appended after writing has failed are discarded.
+     *
+     * @param parts The parts of the line to be stored
+     * @param timestamp The time the line was added, in milliseconds
+     */
+    public void append(final String[] parts, final long timestamp) {
+        final byte[][] encoded = new byte[parts.length][];
+        int recordSize = HEADER_SIZE;
+
+        for (int i = 0; i < parts.length; i++) {
+            encoded[i] = parts[i].getBytes(UTF8);
+            recordSize += 4 + encoded[i].length;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(recordSize);
+        record.putLong(timestamp);
+        record.putShort((short) parts.length);
+        for (byte[] part : encoded) {
+            record.putInt(part.length);
+            record.put(part);
+        }
+        record.flip();
+
+        synchronized (queued) {
+            if (failed) {
+                return;
+            }
+
+            queued.add(record);
+            queuedBytes += recordSize;
+            nextLine++;
+
+            if (queuedBytes >= WRITE_BUFFER_SIZE && !flushRequested) {
+                flushRequested = true;
+                getFlusher().execute(flushTask);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                getFlusher().schedule(flushTask, MAX_FLUSH_DELAY,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes any queued records and index entries to disk. This does
+     * nothing once writing has failed.
+     *
+     * @throws IOException If the records cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        final List<ByteBuffer> records;
+
+        synchronized (queued) {
+            if (failed) {
+                return;
+            }
+
+            records = new ArrayList<ByteBuffer>(queued);
+            queued.clear();
+            queuedBytes = 0;
+            flushScheduled = false;
+            flushRequested = false;
+        }
+
+        try {
+            for (ByteBuffer record : records) {
+                write(record);
+            }
+
+            writePending();
+        } catch (IOException ex) {
+            synchronized (queued) {
+                failed = true;
+                queued.clear();
+            }
+            closeWriters();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds a record to the write buffer for the current segment, starting a
+     * new segment if the current one is full.
+     *
+     * @param record The record to be written
+     * @throws IOException If the record cannot be written
+     */
+    private void write(final ByteBuffer record) throws IOException {
+        final int recordSize = record.remaining();
+        final long timestamp = record.getLong(record.position() + 4);
+
+        Segment segment = segments.isEmpty() ? null
+                : segments.get(segments.size() - 1);
+
+        final boolean full = segment != null && segment.length > 0
+                && segment.length + recordSize > segmentSize;
+
+        if (writer == null || full) {
+            segment = openSegment(segment == null || full);
+        }
+
+        if (segment.lines % INDEX_INTERVAL == 0) {
+            if (pendingIndex.remaining() < INDEX_ENTRY_SIZE) {
+                writePending();
+            }
+            pendingIndex.putLong(writtenLine).putLong(timestamp)
+                    .putInt((int) segment.length);
+            segment.addIndexEntry(writtenLine, timestamp, (int) segment.length);
+        }
+
+        if (pending.remaining() < recordSize) {
+            writePending();
+        }
+
+        if (recordSize > pending.capacity()) {
+            // Too large to buffer, so write it out on its own
+            write(writer, record, segment.length);
+        } else {
+            if (pending.position() == 0) {
+                pendingOffset = segment.length;
+            }
+            pending.put(record);
+        }
+
+        segment.length += recordSize;
+        segment.lines++;
+        writtenLine++;
+    }
+
+    /**
+     * Writes the contents of the write buffers to the current segment and
+     * its index.
+     *
+     * @throws IOException If the buffers cannot be written
+     */
+    private void writePending() throws IOException {
+        try {
+            if (pending.position() > 0) {
+                pending.flip();
+                write(writer, pending, pendingOffset);
+            }
+
+            // Index entries are written after their records, so that an
+            // entry never refers past the end of the segment
+            if (pendingIndex.position() > 0) {
+                pendingIndex.flip();
+                write(indexWriter, pendingIndex, indexWriter.length());
+            }
+        } finally {
+            pending.clear();
+            pendingIndex.clear();
+        }
+    }
+
+    /**
+     * Reads a range of lines from this store. Lines which are no longer in
+     * the store are skipped.
+     *
+     * @param firstLine The logical number of the first line to read
+     * @param count The maximum number of lines to read
+     * @return The parts of each line read, in order
+     * @throws IOException If the lines cannot be read
+     */
+    public synchronized List<String[]> read(final long firstLine,
+            final int count) throws IOException {
+        final List<String[]> result = new ArrayList<String[]>(
+                Math.max(0, Math.min(count, 1024)));
+        flush();
+
+        synchronized (queued) {
+            if (failed) {
+                throw new IOException("Scrollback could not be written to "
+                        + directory);
+            }
+        }
+
+        long line = Math.max(firstLine, getFirstLineNumber());
+        final long end = Math.min(firstLine + count, writtenLine);
+
+        while (line < end) {
+            final Segment segment = getSegment(line);
+            final int entry = segment.findEntryForLine(line);
+            final int lastEntry = segment.findEntryForLine(Math.max(line,
+                    Math.min(end, segment.firstLine + segment.lines) - 1));
+            final long to = lastEntry + 1 < segment.entries
+                    ? segment.indexOffsets[lastEntry + 1] : segment.length;
+            final ByteBuffer buffer = segment.getReadBuffer(
+                    segment.indexOffsets[entry], (int) to);
+            long current = segment.indexLines[entry];
+
+            while (current < end && buffer.hasRemaining()) {
+                final int start = buffer.position();
+                final int recordSize = buffer.getInt();
+
+                if (current >= line) {
+                    buffer.getLong();
+                    final String[] parts = new String[buffer.getShort() & 0xffff];
+                    for (int i = 0; i < parts.length; i++) {
+                        final byte[] bytes = new byte[buffer.getInt()];
+                        buffer.get(bytes);
+                        parts[i] = new String(bytes, UTF8);
+                    }
+                    result.add(parts);
+                }
+
+                buffer.position(start + recordSize);
+                current++;
+            }
+
+            if (current > line) {
+                line = current;
+            } else {
+                // The line is missing from the store, skip to the next segment
+                final int next = segments.indexOf(segment) + 1;
+                if (next >= segments.size()) {
+                    break;
+                }
+                line = segments.get(next).firstLine;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the logical number of the first stored line added at or after
+     * the specified time. The result is approximate to within
+     * {@link #INDEX_INTERVAL} lines.
+     *
+     * @param timestamp The time to look for, in milliseconds
+     * @return The number of the first line at or after the specified time,
+     * or the next line number if there are no such lines
+     * @throws IOException If queued lines cannot be written
+     */
+    public synchronized long findLine(final long timestamp)
+            throws IOException {
+        flush();
+
+        for (Segment segment : segments) {
+            for (int i = 0; i < segment.entries; i++) {
+                if (segment.indexTimes[i] >= timestamp) {
+                    return segment.indexLines[i];
+                }
+            }
+        }
+
+        return writtenLine;
+    }
+
+    /**
+     * Writes any queued lines and closes this store's files. Lines appended
+     * after the store has been closed will cause it to be reopened.
+     */
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (IOException ex) {
+            Logger.userError(ErrorLevel.LOW, "Unable to write scrollback: "
+                    + ex.getMessage());
+        }
+
+        closeWriters();
+
+        for (Segment segment : segments) {
+            segment.mapping = null;
+        }
+
+        retryDeletes();
+    }
+
+    /**
+     * Loads the existing segments from this store's directory, rebuilding
+     * any missing indices and discarding partially written records.
+     *
+     * @throws IOException If the segments cannot be read
+     */
+    private void load() throws IOException {
+        final File[] files = directory.listFiles();
+        final List<Long> starts = new ArrayList<Long>();
+
+        for (File file : files == null ? new File[0] : files) {
+            final String name = file.getName();
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    starts.add(Long.parseLong(name.substring(0,
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // Not one of ours
+                }
+            }
+        }
+
+        final Long[] sorted = starts.toArray(new Long[starts.size()]);
+        Arrays.sort(sorted);
+
+        for (int i = 0; i < sorted.length; i++) {
+            final Segment segment = new Segment(sorted[i]);
+            segment.recover(i == sorted.length - 1 ? Long.MAX_VALUE
+                    : sorted[i + 1]);
+
+            if (segment.lines > 0) {
+                segments.add(segment);
+                writtenLine = segment.firstLine + segment.lines;
+                nextLine = writtenLine;
+            } else {
+                segment.delete();
+            }
+        }
+    }
+
+    /**
+     * Opens the segment that new records should be written to.
+     *
+     * @param create Whether to start a new segment, rather than reopening
+     * the last one
+     * @return The segment that should be written to
+     * @throws IOException If the segment cannot be opened
+     */
+    private Segment openSegment(final boolean create) throws IOException {
+        writePending();
+        closeWriters();
+
+        Segment segment = segments.isEmpty() ? null
+                : segments.get(segments.size() - 1);
+
+        if (create || segment == null) {
+            segment = new Segment(writtenLine);
+            segments.add(segment);
+            prune();
+        }
+
+        writer = new RandomAccessFile(segment.getFile(), "rw");
+        indexWriter = new RandomAccessFile(segment.getIndexFile(), "rw");
+        return segment;
+    }
+
+    /**
+     * Deletes the oldest segments until this store is within its size limit.
+     * The segment being written to is never deleted.
+     */
+    private void prune() {
+        retryDeletes();
+
+        if (maxSize <= 0) {
+            return;
+        }
+
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.length;
+        }
+
+        while (segments.size() > 1 && total > maxSize) {
+            final Segment segment = segments.remove(0);
+            total -= segment.length;
+            segment.delete();
+        }
+    }
+
+    /**
+     * Deletes the specified file. If it cannot be deleted (for example,
+     * because a mapping of it has not yet been released), the failure is
+     * logged and the file is kept so that it can be retried later.
+     *
+     * @param file The file to be deleted
+     */
+    private void deleteFile(final File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.userError(ErrorLevel.LOW, "Unable to delete scrollback file: "
+                    + file + " (will retry)");
+            undeleted.add(file);
+        }
+    }
+
+    /**
+     * Tries again to delete any files which previously could not be
+     * deleted. Files which still cannot be deleted are kept for later.
+     */
+    private void retryDeletes() {
+        final Iterator<File> it = undeleted.iterator();
+
+        while (it.hasNext()) {
+            final File file = it.next();
+
+            if (!file.exists() || file.delete()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Finds the segment containing the specified line.
+     *
+     * @param line The logical number of a line in this store
+     * @return The segment containing the line
+     */
+    private Segment getSegment(final long line) {
+        for (int i = segments.size() - 1; i > 0; i--) {
+            if (segments.get(i).firstLine <= line) {
+                return segments.get(i);
+            }
+        }
+
+        return segments.get(0);
+    }
+
+    /**
+     * Retrieves the executor used to write queued records, creating it if
+     * necessary.
+     *
+     * @return The executor which writes queued records
+     */
+    private static synchronized ScheduledExecutorService getFlusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                /** {@inheritDoc} */
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "Scrollback writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return flusher;
+    }
+
+    /**
+     * Writes the whole of the specified buffer to a file.
+     *
+     * @param file The file to be written to
+     * @param buffer The buffer to be written
+     * @param position The offset in the file to write the buffer at
+     * @throws IOException If the buffer cannot be written
+     */
+    private static void write(final RandomAccessFile file,
+            final ByteBuffer buffer, final long position) throws IOException {
+        final FileChannel channel = file.getChannel();
+        long offset = position;
+
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * Closes the files used to write new records. Any buffered records
+     * must already have been written.
+     */
+    private void closeWriters() {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
+        } catch (IOException ex) {
+            // Nothing useful can be done
+        }
+
+        writer = null;
+        indexWriter = null;
+    }
+
+    /**
+     * Describes a single segment file and its sparse index.
+     */
+    private final class Segment {
+
+        /** The logical number of the first line in this segment. */
+        private final long firstLine;
+        /** The line number of each index entry. */
+        private long[] indexLines = new long[16];
+        /** The timestamp of each index entry. */
+        private long[] indexTimes = new long[16];
+        /** The offset of each index entry. */
+        private int[] indexOffsets = new int[16];
+        /** The number of index entries. */
+        private int entries;
+        /** The number of lines in this segment. */
+        private int lines;
+        /** The length of this segment, in bytes. */
+        private long length;
+        /** A read-only mapping of this segment, once it has been sealed. */
+        private MappedByteBuffer mapping;
+
+        /**
+         * Creates a new segment.
+         *
+         * @param firstLine The logical number of the first line in the
+         * segment
+         */
+        public Segment(final long firstLine) {
+            this.firstLine = firstLine;
+        }
+
+        /**
+         * Retrieves the file containing this segment's records.
+         *
+         * @return This segment's file
+         */
+        public File getFile() {
+            return new File(directory, String.format("%019d", firstLine)
+                    + SEGMENT_SUFFIX);
+        }
+
+        /**
+         * Retrieves the file containing this segment's index.
+         *
+         * @return This segment's index file
+         */
+        public File getIndexFile() {
+            return new File(directory, String.format("%019d", firstLine)
+                    + INDEX_SUFFIX);
+        }
+
+        /**
+         * Adds an entry to this segment's in-memory index.
+         *
+         * @param line The logical number of the indexed line
+         * @param timestamp The timestamp of the indexed line
+         * @param offset The offset of the line's record in the segment
+         */
+        public void addIndexEntry(final long line, final long timestamp,
+                final int offset) {
+            if (entries == indexLines.length) {
+                indexLines = Arrays.copyOf(indexLines, entries * 2);
+                indexTimes = Arrays.copyOf(indexTimes, entries * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, entries * 2);
+            }
+
+            indexLines[entries] = line;
+            indexTimes[entries] = timestamp;
+            indexOffsets[entries] = offset;
+            entries++;
+        }
+
+        /**
+         * Finds the last index entry at or before the specified line.
+         *
+         * @param line The logical number of a line in this segment
+         * @return The index of the corresponding index entry
+         */
+        public int findEntryForLine(final long line) {
+            final int index = Arrays.binarySearch(indexLines, 0, entries, line);
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+
+        /**
+         * Retrieves a buffer containing the specified range of this
+         * segment's records, positioned at the start of the range. Sealed
+         * segments are memory mapped; only the requested range of the
+         * segment currently being written is read.
+         *
+         * @param from The offset of the first byte to be read
+         * @param to The offset after the last byte to be read
+         * @return A buffer containing the requested records
+         * @throws IOException If the segment cannot be read
+         */
+        public ByteBuffer getReadBuffer(final int from, final int to)
+                throws IOException {
+            final boolean sealed = this != segments.get(segments.size() - 1);
+
+            if (sealed && mapping != null) {
+                return slice(mapping, from, to);
+            }
+
+            final RandomAccessFile file = new RandomAccessFile(getFile(), "r");
+            try {
+                final FileChannel channel = file.getChannel();
+
+                if (sealed) {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            length);
+                    return slice(mapping, from, to);
+                }
+
+                final ByteBuffer buffer = ByteBuffer.allocate(to - from);
+                while (buffer.hasRemaining() && channel.read(buffer,
+                        from + buffer.position()) >= 0) {
+                    // Keep reading
+                }
+                buffer.flip();
+                return buffer;
+            } finally {
+                file.close();
+            }
+        }
+
+        /**
+         * Creates a view of the specified range of a mapping.
+         *
+         * @param buffer The mapping to be viewed
+         * @param from The offset of the first byte in the view
+         * @param to The offset after the last byte in the view
+         * @return A buffer positioned at the start of the range
+         */
+        private ByteBuffer slice(final ByteBuffer buffer, final int from,
+                final int to) {
+            final ByteBuffer view = buffer.duplicate();
+            view.limit(to);
+            view.position(from);
+            return view;
+        }
+
+        /**
+         * Reads this segment's index and counts its records, rebuilding the
+         * index if it is missing and truncating any partially written
+         * record at the end of the segment.
+         *
+         * @param limit The logical number of the first line of the next
+         * segment, past which no lines are read
+         * @throws IOException If the segment cannot be read
+         */
+        public void recover(final long limit) throws IOException {
+            final RandomAccessFile file = new RandomAccessFile(getFile(), "rw");
+            final RandomAccessFile index = new RandomAccessFile(getIndexFile(), "rw");
+
+            try {
+                final long fileLength = file.length();
+                final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+                for (long pos = 0; pos + INDEX_ENTRY_SIZE <= index.length();
+                        pos += INDEX_ENTRY_SIZE) {
+                    entry.clear();
+                    index.getChannel().read(entry, pos);
+                    entry.flip();
+
+                    final long line = entry.getLong();
+                    final long time = entry.getLong();
+                    final int offset = entry.getInt();
+
+                    if (offset >= fileLength || line >= limit || entries > 0
+                            && (line <= indexLines[entries - 1]
+                            || offset <= indexOffsets[entries - 1])) {
+                        break;
+                    }
+                    addIndexEntry(line, time, offset);
+                }
+
+                if (entries == 0 || indexLines[0] != firstLine
+                        || indexOffsets[0] != 0) {
+                    entries = 0;
+                }
+
+                // Scan forward from the last indexed record
+                long line = entries == 0 ? firstLine : indexLines[entries - 1];
+                long pos = entries == 0 ? 0 : indexOffsets[entries - 1];
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+                while (pos + HEADER_SIZE <= fileLength && line < limit) {
+                    header.clear();
+                    file.getChannel().read(header, pos);
+                    header.flip();
+
+                    final int recordSize = header.getInt();
+                    final long time = header.getLong();
+
+                    if (recordSize < HEADER_SIZE || pos + recordSize > fileLength) {
+                        break;
+                    }
+
+                    if ((line - firstLine) % INDEX_INTERVAL == 0
+                            && (entries == 0 || indexLines[entries - 1] < line)) {
+                        addIndexEntry(line, time, (int) pos);
+                    }
+
+                    pos += recordSize;
+                    line++;
+                }
+
+                lines = (int) (line - firstLine);
+                length = pos;
+                file.setLength(pos);
+
+                // Rewrite the index so that it matches what was recovered
+                final ByteBuffer data = ByteBuffer.allocate(
+                        entries * INDEX_ENTRY_SIZE);
+                for (int i = 0; i < entries; i++) {
+                    data.putLong(indexLines[i]).putLong(indexTimes[i])
+                            .putInt(indexOffsets[i]);
+                }
+                data.flip();
+                index.setLength(0);
+                index.getChannel().write(data, 0);
+            } finally {
+                file.close();
+                index.close();
+            }
+        }
+
+        /**
+         * Deletes this segment's files. The mapping of a sealed segment is
+         * dropped first, although on some platforms the file cannot be
+         * deleted until the mapping has been garbage collected; such files
+         * are retried the next time the store is pruned.
+         */
+        public void delete() {
+            mapping = null;
+            deleteFile(getFile());
+            deleteFile(getIndexFile());
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An incremental trigram index over the text of the lines in an
+ * {@link IRCDocument}, used to find the lines which may contain a phrase
+ * without scanning the whole document.
+ * <p>
+ * Each line is indexed under the (case-folded) trigrams of its stripped
+ * text. Trigrams are hashed, so postings may contain some false positives;
+ * callers must verify candidate lines themselves. Lines are identified by
+ * their logical line numbers, so trimming the document doesn't invalidate
+ * the index; postings for trimmed lines are discarded by
+ * {@link #discardBefore(long)}.
+ * <p>
+ * This class is not thread safe; callers must provide their own
+ * synchronisation.
+ *
+ * @since 0.6.5
+ */
+class SearchIndex {
+
+    /** The length of the n-grams used by the index. */
+    public static final int GRAM_LENGTH = 3;
+
+    /** The fewest trimmed lines worth pruning the index for. */
+    public static final int MIN_PRUNE_LINES = 256;
+
+    /** The postings for each trigram hash. */
+    private final Map<Integer, Postings> postings = new HashMap<Integer, Postings>();
+
+    /**
+     * Adds the specified line to the index. Lines are normally added in
+     * order of increasing line number; lines added out of order, such as
+     * lines paged in before the start of the document, are inserted at
+     * their sorted position.
+     *
+     * @param lineNumber The logical line number of the line
+     * @param text The stripped text of the line
+     */
+    public void add(final long lineNumber, final String text) {
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            final Integer gram = hash(text, i);
+            Postings list = postings.get(gram);
+
+            if (list == null) {
+                list = new Postings();
+                postings.put(gram, list);
+            }
+
+            list.add(lineNumber);
+        }
+    }
+
+    /**
+     * Finds the lines that may contain the specified phrase.
+     *
+     * @param phrase The phrase to search for, which must be at least
+     * {@link #GRAM_LENGTH} characters long
+     * @param firstLine The logical number of the first line still in the
+     * document; earlier lines are discarded from the index
+     * @return A sorted array of logical line numbers which may contain the
+     * phrase
+     */
+    public long[] getCandidates(final String phrase, final long firstLine) {
+        Postings rarest = null;
+        final Postings[] lists = new Postings[phrase.length() - GRAM_LENGTH + 1];
+
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(hash(phrase, i));
+
+            if (lists[i] == null) {
+                return new long[0];
+            }
+
+            lists[i].discardBefore(firstLine);
+
+            if (rarest == null || lists[i].size < rarest.size) {
+                rarest = lists[i];
+            }
+        }
+
+        // Intersect the rarest list with every other list
+        final long[] result = new long[rarest.size];
+        int count = 0;
+
+        for (int i = 0; i < rarest.size; i++) {
+            final long line = rarest.lines[i];
+            boolean found = true;
+
+            for (Postings list : lists) {
+                if (list != rarest && !list.contains(line)) {
+                    found = false;
+                    break;
+                }
+            }
+
+            if (found) {
+                result[count++] = line;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Discards the postings for all lines before the specified line, such as
+     * lines which have been trimmed from the document.
+     *
+     * @param firstLine The logical number of the first line to keep
+     */
+    public void discardBefore(final long firstLine) {
+        final Iterator<Postings> it = postings.values().iterator();
+
+        while (it.hasNext()) {
+            final Postings list = it.next();
+            list.discardBefore(firstLine);
+
+            if (list.size == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of distinct trigrams in the index.
+     *
+     * @return The number of indexed trigrams
+     */
+    public int getGramCount() {
+        return postings.size();
+    }
+
+    /**
+     * Removes all lines from the index.
+     */
+    public void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Computes the case-folded hash of the trigram at the specified offset.
+     *
+     * @param text The text containing the trigram
+     * @param offset The offset of the trigram
+     * @return A hash of the trigram
+     */
+    private static Integer hash(final String text, final int offset) {
+        int hash = 0;
+
+        for (int i = offset; i < offset + GRAM_LENGTH; i++) {
+            hash = hash * 65599 + Character.toLowerCase(text.charAt(i));
+        }
+
+        return hash;
+    }
+
+    /**
+     * A sorted, growable list of logical line numbers.
+     */
+    private static final class Postings {
+
+        /** The line numbers in this list. */
+        private long[] lines = new long[4];
+        /** The number of line numbers in this list. */
+        private int size;
+
+        /**
+         * Adds a line number to this list, ignoring duplicates.
+         *
+         * @param line The line number to add
+         */
+        public void add(final long line) {
+            int index = size;
+
+            if (size > 0 && lines[size - 1] >= line) {
+                index = Arrays.binarySearch(lines, 0, size, line);
+
+                if (index >= 0) {
+                    return;
+                }
+
+                index = -index - 1;
+            }
+
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+
+            System.arraycopy(lines, index, lines, index + 1, size - index);
+            lines[index] = line;
+            size++;
+        }
+
+        /**
+         * Determines whether this list contains the specified line number.
+         *
+         * @param line The line number to look for
+         * @return True if the line is in this list, false otherwise
+         */
+        public boolean contains(final long line) {
+            return Arrays.binarySearch(lines, 0, size, line) >= 0;
+        }
+
+        /**
+         * Discards all line numbers less than the specified number.
+         *
+         * @param line The first line number to keep
+         */
+        public void discardBefore(final long line) {
+            if (size == 0 || lines[0] >= line) {
+                return;
+            }
+
+            int index = Arrays.binarySearch(lines, 0, size, line);
+            if (index < 0) {
+                index = -index - 1;
+            }
+
+            System.arraycopy(lines, index, lines, 0, size - index);
+            size -= index;
+
+            if (lines.length > 4 && size < lines.length / 4) {
+                lines = Arrays.copyOf(lines, Math.max(4, lines.length / 2));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import java.text.AttributedString;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A least-recently-used cache of styled lines, bounded by an estimate of the
+ * memory used by the cached strings. Lines are keyed by their logical line
+ * number, which identifies a line for as long as it remains in its document.
+ * This means identical lines elsewhere in a document are cached separately,
+ * probes never need to hash a line's contents, and a line's styling is still
+ * found when its store returns a new {@link Line} object for it.
+ * <p>
+ * This class is not thread safe; callers must provide their own
+ * synchronisation.
+ *
+ * @since 0.6.5
+ */
+class StyledLineCache {
+
+    /** Estimated fixed overhead of a cached line, in bytes. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /** Estimated overhead per line part (i.e., per style run), in bytes. */
+    private static final int PART_OVERHEAD = 48;
+
+    /** The cached entries, keyed on logical line number, in access order. */
+    private final LinkedHashMap<Long, Entry> entries
+            = new LinkedHashMap<Long, Entry>(64, 0.75f, true);
+
+    /** The maximum estimated size of the cache, in bytes. */
+    private long maxSize;
+
+    /** The current estimated size of the cache, in bytes. */
+    private long size;
+
+    /**
+     * Creates a new styled line cache.
+     *
+     * @param maxSize The maximum estimated size of the cache, in bytes
+     */
+    public StyledLineCache(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Retrieves the cached styled version of the specified line.
+     *
+     * @param lineNumber The logical number of the line to look up
+     * @return The cached styled line, or null if it's not cached
+     */
+    public AttributedString get(final long lineNumber) {
+        final Entry entry = entries.get(lineNumber);
+
+        return entry == null ? null : entry.styled;
+    }
+
+    /**
+     * Determines whether a styled version of the specified line is cached.
+     * This does not affect the line's position in the LRU order.
+     *
+     * @param lineNumber The logical number of the line to look for
+     * @return True if the line is cached, false otherwise
+     */
+    public boolean contains(final long lineNumber) {
+        return entries.containsKey(lineNumber);
+    }
+
+    /**
+     * Adds a styled line to the cache, evicting the least recently used
+     * lines if the cache is over its size limit.
+     *
+     * @param lineNumber The logical number of the line that was styled
+     * @param line The line that was styled
+     * @param styled The styled version of the line
+     */
+    public void put(final long lineNumber, final Line line,
+            final AttributedString styled) {
+        final Entry entry = new Entry(styled, estimateSize(line));
+        final Entry old = entries.put(lineNumber, entry);
+
+        if (old != null) {
+            size -= old.size;
+        }
+
+        size += entry.size;
+        evict();
+    }
+
+    /**
+     * Removes the specified line from the cache, if it is cached.
+     *
+     * @param lineNumber The logical number of the line to be removed
+     */
+    public void remove(final long lineNumber) {
+        final Entry entry = entries.remove(lineNumber);
+
+        if (entry != null) {
+            size -= entry.size;
+        }
+    }
+    /**
+     * Removes all lines from the cache.
+     */
+    public void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Retrieves the current estimated size of this cache.
+     *
+     * @return The estimated size of the cache, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Retrieves the number of lines in this cache.
+     *
+     * @return The number of cached lines
+     */
+    public int getLineCount() {
+        return entries.size();
+    }
+
+    /**
+     * Sets the maximum estimated size of this cache, evicting lines if the
+     * cache is now too large.
+     *
+     * @param maxSize The new maximum size, in bytes
+     */
+    public void setMaxSize(final long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Retrieves the maximum estimated size of this cache.
+     *
+     * @return The maximum size of the cache, in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Evicts the least recently used lines until the cache is within its
+     * size limit.
+     */
+    private void evict() {
+        final Iterator<Entry> it = entries.values().iterator();
+
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Estimates the memory used by a styled version of the specified line.
+     *
+     * @param line The line to be estimated
+     * @return An estimate of the line's styled size, in bytes
+     */
+    private static int estimateSize(final Line line) {
+        return ENTRY_OVERHEAD + 2 * line.getLength()
+                + PART_OVERHEAD * line.getLineParts().length;
+    }
+
+    /**
+     * A cached styled line and its estimated size.
+     */
+    private static final class Entry {
+
+        /** The styled line. */
+        private final AttributedString styled;
+        /** The estimated size of the line, in bytes. */
+        private final int size;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param styled The styled line
+         * @param size The estimated size of the line, in bytes
+         */
+        public Entry(final AttributedString styled, final int size) {
+            this.styled = styled;
+            this.size = size;
+        }
+
+    }
+
+}
@@ -32,8 +32,10 @@ import com.dmdirc.logger.ErrorLevel;
 import com.dmdirc.logger.Logger;
 
 import java.awt.Color;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.swing.UIManager;
@@ -134,6 +136,36 @@ public class Styliser implements ConfigChangeListener {
     private static final String URL_CHANNEL = "(?i)(?<![^\\s\\+@\\-<>\\(\"',])([\\Q%s\\E]"
             + RESERVED_CHARS + "+)";
 
+    /** Compiled form of {@link #URL_REGEXP}. */
+    private static final Pattern URL_PATTERN = Pattern.compile(URL_REGEXP);
+
+    /** Compiled forms of the intelligent linking regexps, in order. */
+    private static final Pattern[] URL_INT_PATTERNS = {
+        Pattern.compile(URL_INT1), Pattern.compile(URL_INT2),
+        Pattern.compile(URL_INT3), Pattern.compile(URL_INT4),
+    };
+
+    /** Replacements for each of {@link #URL_INT_PATTERNS}. */
+    private static final String[] URL_INT_REPLACEMENTS = {
+        "$1$3$2", "$1$2$3$5$4", "$1$2$4$3", "$1$3$2",
+    };
+
+    /** Control codes which are stripped by {@link #stipControlCodes}. */
+    private static final boolean[] STRIPPED_CODES = getCodeTable(CODE_BOLD,
+            CODE_CHANNEL, CODE_FIXED, CODE_HYPERLINK, CODE_ITALIC, CODE_NEGATE,
+            CODE_NICKNAME, CODE_SMILIE, CODE_STOP, CODE_UNDERLINE);
+
+    /** Control codes which are stripped by {@link #stipInternalControlCodes}. */
+    private static final boolean[] STRIPPED_INTERNAL_CODES = getCodeTable(
+            CODE_CHANNEL, CODE_HYPERLINK, CODE_NICKNAME, CODE_SMILIE, CODE_STOP,
+            CODE_UNDERLINE);
+
+    /** Control codes which terminate {@link #readUntilControl}. */
+    private static final boolean[] CONTROL_CODES = getCodeTable(CODE_BOLD,
+            CODE_UNDERLINE, CODE_STOP, CODE_COLOUR, CODE_HEXCOLOUR, CODE_ITALIC,
+            CODE_FIXED, CODE_HYPERLINK, CODE_NICKNAME, CODE_CHANNEL,
+            CODE_SMILIE, CODE_NEGATE, CODE_TOOLTIP);
+
     /** Whether or not we should style links. */
     private boolean styleURIs, styleChannels;
 
@@ -145,6 +177,13 @@ public class Styliser implements ConfigChangeListener {
     /** Config manager to retrive settings from. */
     private final ConfigManager configManager;
 
+    /** The channel prefixes {@link #channelPattern} was compiled for. */
+    private String channelPrefixes;
+    /** The compiled channel regexp for the current channel prefixes. */
+    private Pattern channelPattern;
+    /** The currently defined smilies, or null if they need rebuilding. */
+    private volatile Set<String> smilies;
+
     /**
      * Creates a new instance of Styliser.
      *
@@ -169,6 +208,7 @@ public class Styliser implements ConfigChangeListener {
         configManager.addChangeListener("ui", "channelcolour", this);
         configManager.addChangeListener("ui", "stylelinks", this);
         configManager.addChangeListener("ui", "stylechannels", this);
+        configManager.addChangeListener("icon", this);
         styleURIs = configManager.getOptionBool("ui", "stylelinks");
         styleChannels = configManager.getOptionBool("ui", "stylechannels");
         uriColour = configManager.getOptionColour("ui", "linkcolour");
@@ -210,7 +250,7 @@ public class Styliser implements ConfigChangeListener {
                 int position = 0;
 
                 final String target = doSmilies(doLinks(new String(chars)
-                        .replaceAll(INTERNAL_CHARS, "")));
+                        .replace(INTERNAL_CHARS, "")));
 
                 attribs.addAttribute("DefaultFontFamily", UIManager.getFont("TextPane.font"));
 
@@ -303,30 +343,96 @@ public class Styliser implements ConfigChangeListener {
      * @return A copy of the string with hyperlinks marked up
      */
     public String doLinks(final String string) {
-        String target = string;
         final String prefixes = server == null ? null
                 : server.getChannelPrefixes();
+        final boolean hasUrls = mayContainURL(string);
+        final boolean hasChannels = prefixes != null
+                && containsAny(string, prefixes);
+
+        if (!hasUrls && !hasChannels) {
+            return string;
+        }
 
+        String target = string;
         String target2 = target;
-        target = target.replaceAll(URL_REGEXP, CODE_HYPERLINK + "$0" + CODE_HYPERLINK);
 
-        if (prefixes != null) {
-            target = target.replaceAll(String.format(URL_CHANNEL, prefixes),
-                CODE_CHANNEL + "$0" + CODE_CHANNEL);
+        if (hasUrls) {
+            target = URL_PATTERN.matcher(target).replaceAll(
+                    CODE_HYPERLINK + "$0" + CODE_HYPERLINK);
+        }
+
+        if (hasChannels) {
+            target = getChannelPattern(prefixes).matcher(target).replaceAll(
+                    CODE_CHANNEL + "$0" + CODE_CHANNEL);
         }
 
         for (int j = 0; j < 5 && !target.equals(target2); j++) {
             target2 = target;
-            target = target
-                    .replaceAll(URL_INT1, "$1$3$2")
-                    .replaceAll(URL_INT2, "$1$2$3$5$4")
-                    .replaceAll(URL_INT3, "$1$2$4$3")
-                    .replaceAll(URL_INT4, "$1$3$2");
+            for (int i = 0; i < URL_INT_PATTERNS.length; i++) {
+                target = URL_INT_PATTERNS[i].matcher(target)
+                        .replaceAll(URL_INT_REPLACEMENTS[i]);
+            }
         }
 
         return target;
     }
 
+    /**
+     * Retrieves the compiled channel regexp for the specified channel
+     * prefixes, recompiling it if the prefixes have changed.
+     *
+     * @param prefixes The channel prefixes in use
+     * @return The compiled channel pattern
+     */
+    private synchronized Pattern getChannelPattern(final String prefixes) {
+        if (!prefixes.equals(channelPrefixes)) {
+            channelPattern = Pattern.compile(String.format(URL_CHANNEL, prefixes));
+            channelPrefixes = prefixes;
+        }
+
+        return channelPattern;
+    }
+
+    /**
+     * Determines whether the specified string could possibly contain a
+     * match for {@link #URL_REGEXP}. All URLs contain either "://" or
+     * "www." (in any case), so strings with neither can skip the regexp.
+     *
+     * @param string The string to be tested
+     * @return False if the string definitely contains no URLs
+     */
+    private static boolean mayContainURL(final String string) {
+        if (string.indexOf("://") != -1) {
+            return true;
+        }
+
+        for (int i = string.indexOf('.'); i != -1; i = string.indexOf('.', i + 1)) {
+            if (i >= 3 && string.regionMatches(true, i - 3, "www", 0, 3)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether the specified string contains any of the
+     * specified characters.
+     *
+     * @param string The string to be tested
+     * @param chars The characters to look for
+     * @return True if any of the characters are present, false otherwise
+     */
+    private static boolean containsAny(final String string, final String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            if (string.indexOf(chars.charAt(i)) != -1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Applies the smilie styles to the target.
      *
@@ -336,23 +442,80 @@ public class Styliser implements ConfigChangeListener {
      */
     public String doSmilies(final String string) {
         // TODO: Check if they're enabled.
-        // TODO: Store the list instead of building it every line
+        final Set<String> names = getSmilies();
 
-        final StringBuilder smilies = new StringBuilder();
+        if (names.isEmpty()) {
+            return string;
+        }
 
-        for (Map.Entry<String, String> icon
-                : configManager.getOptions("icon").entrySet()) {
-            if (icon.getKey().startsWith("smilie-")) {
-                if (smilies.length() > 0) {
-                    smilies.append('|');
+        final int length = string.length();
+        StringBuilder res = null;
+        int copied = 0;
+        int start = 0;
+
+        while (start < length) {
+            // Smilies must be surrounded by whitespace, so only complete
+            // whitespace-delimited tokens are candidates
+            while (start < length && isWhitespace(string.charAt(start))) {
+                start++;
+            }
+
+            int end = start;
+            while (end < length && !isWhitespace(string.charAt(end))) {
+                end++;
+            }
+
+            if (end > start && names.contains(string.substring(start, end))) {
+                if (res == null) {
+                    res = new StringBuilder(length + 16);
                 }
 
-                smilies.append(Pattern.quote(icon.getKey().substring(7)));
+                res.append(string, copied, start).append(CODE_SMILIE)
+                        .append(string, start, end).append(CODE_SMILIE);
+                copied = end;
+            }
+
+            start = end;
+        }
+
+        return res == null ? string : res.append(string, copied, length).toString();
+    }
+
+    /**
+     * Retrieves the set of smilies defined in the icon domain, building it
+     * if the domain has changed since it was last built.
+     *
+     * @return The set of known smilie names
+     */
+    private Set<String> getSmilies() {
+        Set<String> res = smilies;
+
+        if (res == null) {
+            res = new HashSet<String>();
+
+            for (String key : configManager.getOptions("icon").keySet()) {
+                if (key.startsWith("smilie-") && key.length() > 7) {
+                    res.add(key.substring(7));
+                }
             }
+
+            res = Collections.unmodifiableSet(res);
+            smilies = res;
         }
 
-        return string.replaceAll("(\\s|^)(" + smilies + ")(?=\\s|$)",
-                "$1" + CODE_SMILIE + "$2" + CODE_SMILIE);
+        return res;
+    }
+
+    /**
+     * Determines if the specified character is whitespace, as defined by
+     * the <code>\s</code> regular expression class.
+     *
+     * @param c The character to be tested
+     * @return True if the character is whitespace, false otherwise
+     */
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                || c == '\f' || c == '\r';
     }
 
     /**
@@ -361,13 +524,7 @@ public class Styliser implements ConfigChangeListener {
      * @return a copy of the input with control codes removed
      */
     public static String stipControlCodes(final String input) {
-        return input.replaceAll("[" + CODE_BOLD + CODE_CHANNEL + CODE_FIXED
-                + CODE_HYPERLINK + CODE_ITALIC + CODE_NEGATE + CODE_NICKNAME
-                + CODE_SMILIE + CODE_STOP + CODE_UNDERLINE + "]|"
-                + CODE_HEXCOLOUR + "([A-Za-z0-9]{6}(,[A-Za-z0-9]{6})?)?|"
-                + CODE_COLOUR + "([0-9]{1,2}(,[0-9]{1,2})?)?", "")
-                .replaceAll(CODE_TOOLTIP + ".*?" + CODE_TOOLTIP + "(.*?)"
-                + CODE_TOOLTIP, "$1");
+        return stripCodes(input, STRIPPED_CODES, true);
     }
 
     /**
@@ -378,10 +535,198 @@ public class Styliser implements ConfigChangeListener {
      * @since 0.6.5
      */
     public static String stipInternalControlCodes(final String input) {
-        return input.replaceAll("[" + CODE_CHANNEL + CODE_HYPERLINK + CODE_NICKNAME
-                + CODE_SMILIE + CODE_STOP + CODE_UNDERLINE + "]", "")
-                .replaceAll(CODE_TOOLTIP + ".*?" + CODE_TOOLTIP + "(.*?)"
-                + CODE_TOOLTIP, "$1");
+        return stripCodes(input, STRIPPED_INTERNAL_CODES, false);
+    }
+
+    /**
+     * Strips control codes from the input string in a single pass, and then
+     * replaces any complete tooltips with their text.
+     *
+     * @param input The string to be stripped
+     * @param codes Table of single-character codes to be removed
+     * @param colours Whether or not to strip colour codes and their arguments
+     * @return A copy of the input with control codes removed
+     */
+    private static String stripCodes(final String input, final boolean[] codes,
+            final boolean colours) {
+        final int length = input.length();
+        final char[] out = new char[length];
+        int count = 0;
+        boolean tooltips = false;
+
+        for (int i = 0; i < length; i++) {
+            final char c = input.charAt(i);
+
+            if (c < codes.length && codes[c]) {
+                continue;
+            } else if (colours && c == CODE_COLOUR) {
+                i = skipColour(input, i + 1) - 1;
+            } else if (colours && c == CODE_HEXCOLOUR) {
+                i = skipHexColour(input, i + 1) - 1;
+            } else {
+                tooltips |= c == CODE_TOOLTIP;
+                out[count++] = c;
+            }
+        }
+
+        return tooltips ? stripTooltips(out, count) : new String(out, 0, count);
+    }
+
+    /**
+     * Skips over the arguments of a colour code, matching the pattern
+     * <code>([0-9]{1,2}(,[0-9]{1,2})?)?</code>.
+     *
+     * @param input The string being read
+     * @param offset The offset immediately after the colour code
+     * @return The offset immediately after the colour code's arguments
+     */
+    private static int skipColour(final String input, final int offset) {
+        int pos = skipDigits(input, offset);
+
+        if (pos > offset && pos < input.length() && input.charAt(pos) == ',') {
+            final int background = skipDigits(input, pos + 1);
+
+            if (background > pos + 1) {
+                pos = background;
+            }
+        }
+
+        return pos;
+    }
+
+    /**
+     * Skips over up to two decimal digits.
+     *
+     * @param input The string being read
+     * @param offset The offset to start reading at
+     * @return The offset after any digits that were read
+     */
+    private static int skipDigits(final String input, final int offset) {
+        int pos = offset;
+
+        while (pos < input.length() && pos < offset + 2 && isInt(input.charAt(pos))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Skips over the arguments of a hex colour code, matching the pattern
+     * <code>([A-Za-z0-9]{6}(,[A-Za-z0-9]{6})?)?</code>.
+     *
+     * @param input The string being read
+     * @param offset The offset immediately after the hex colour code
+     * @return The offset immediately after the code's arguments
+     */
+    private static int skipHexColour(final String input, final int offset) {
+        if (!isAlphanumeric(input, offset, 6)) {
+            return offset;
+        }
+
+        if (offset + 6 < input.length() && input.charAt(offset + 6) == ','
+                && isAlphanumeric(input, offset + 7, 6)) {
+            return offset + 13;
+        }
+
+        return offset + 6;
+    }
+
+    /**
+     * Determines if the specified region of the input consists entirely of
+     * ASCII letters and digits.
+     *
+     * @param input The string being read
+     * @param offset The offset of the region
+     * @param length The length of the region
+     * @return True iff the whole region exists and is alphanumeric
+     */
+    private static boolean isAlphanumeric(final String input, final int offset,
+            final int length) {
+        if (input.length() < offset + length) {
+            return false;
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            final char c = input.charAt(i);
+
+            if (!isInt(c) && !(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces each tooltip (of the form <code>TIP text TIP content TIP</code>,
+     * within a single line) with its content.
+     *
+     * @param chars The characters to be processed
+     * @param length The number of characters to process
+     * @return A string with the tooltips replaced
+     */
+    private static String stripTooltips(final char[] chars, final int length) {
+        final StringBuilder res = new StringBuilder(length);
+        int i = 0;
+
+        while (i < length) {
+            if (chars[i] == CODE_TOOLTIP) {
+                final int middle = findTooltipCode(chars, i + 1, length);
+                final int end = middle == -1 ? -1
+                        : findTooltipCode(chars, middle + 1, length);
+
+                if (end != -1) {
+                    res.append(chars, middle + 1, end - middle - 1);
+                    i = end + 1;
+                    continue;
+                }
+            }
+
+            res.append(chars[i++]);
+        }
+
+        return res.toString();
+    }
+
+    /**
+     * Finds the next tooltip code before the end of the current line.
+     *
+     * @param chars The characters to be searched
+     * @param offset The offset to start searching from
+     * @param length The number of characters in the array
+     * @return The index of the next tooltip code, or -1 if there isn't one
+     */
+    private static int findTooltipCode(final char[] chars, final int offset,
+            final int length) {
+        for (int i = offset; i < length; i++) {
+            final char c = chars[i];
+
+            if (c == CODE_TOOLTIP) {
+                return i;
+            } else if (c == '\n' || c == '\r' || c == '\u0085'
+                    || c == '\u2028' || c == '\u2029') {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Builds a lookup table for the specified control codes.
+     *
+     * @param codes The codes to be included in the table
+     * @return A table indexed by character, true for each of the codes
+     */
+    private static boolean[] getCodeTable(final char ... codes) {
+        final boolean[] table = new boolean[32];
+
+        for (char code : codes) {
+            table[code] = true;
+        }
+
+        return table;
     }
 
     /**
@@ -392,35 +737,17 @@ public class Styliser implements ConfigChangeListener {
      * @return A substring of the input containing no control characters
      */
     public static String readUntilControl(final String input) {
-        int pos = input.length();
-
-        pos = checkChar(pos, input.indexOf(CODE_BOLD));
-        pos = checkChar(pos, input.indexOf(CODE_UNDERLINE));
-        pos = checkChar(pos, input.indexOf(CODE_STOP));
-        pos = checkChar(pos, input.indexOf(CODE_COLOUR));
-        pos = checkChar(pos, input.indexOf(CODE_HEXCOLOUR));
-        pos = checkChar(pos, input.indexOf(CODE_ITALIC));
-        pos = checkChar(pos, input.indexOf(CODE_FIXED));
-        pos = checkChar(pos, input.indexOf(CODE_HYPERLINK));
-        pos = checkChar(pos, input.indexOf(CODE_NICKNAME));
-        pos = checkChar(pos, input.indexOf(CODE_CHANNEL));
-        pos = checkChar(pos, input.indexOf(CODE_SMILIE));
-        pos = checkChar(pos, input.indexOf(CODE_NEGATE));
-        pos = checkChar(pos, input.indexOf(CODE_TOOLTIP));
-
-        return input.substring(0, pos);
-    }
-
-    /**
-     * Helper function used in readUntilControl. Checks if i is a valid index of
-     * the string (i.e., it's not -1), and then returns the minimum of pos and i.
-     * @param pos The current position in the string
-     * @param i The index of the first occurance of some character
-     * @return The new position (see implementation)
-     */
-    private static int checkChar(final int pos, final int i) {
-        if (i < pos && i != -1) { return i; }
-        return pos;
+        final int length = input.length();
+
+        for (int pos = 0; pos < length; pos++) {
+            final char c = input.charAt(pos);
+
+            if (c < CONTROL_CODES.length && CONTROL_CODES[c]) {
+                return input.substring(0, pos);
+            }
+        }
+
+        return input;
     }
 
     /**
@@ -875,7 +1202,9 @@ public class Styliser implements ConfigChangeListener {
     /** {@inheritDoc} */
     @Override
     public void configChanged(final String domain, final String key) {
-        if ("stylelinks".equals(key)) {
+        if ("icon".equals(domain)) {
+            smilies = null;
+        } else if ("stylelinks".equals(key)) {
             styleURIs = configManager.getOptionBool("ui", "stylelinks");
         } else if ("stylechannels".equals(key)) {
             styleChannels = configManager.getOptionBool("ui", "stylechannels");
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FrameContainerTest {
+
+    @Test
+    public void testSanitiseFileName() {
+        assertEquals("#dmdirc", FrameContainer.sanitiseFileName("#dmdirc"));
+        assertEquals("%2Efoo.bar", FrameContainer.sanitiseFileName(".foo.bar"));
+        assertEquals("a%2Fb%5Cc%25", FrameContainer.sanitiseFileName("a/b\\c%"));
+    }
+
+    @Test
+    public void testDistinctNamesStayDistinct() {
+        assertEquals("#%C3%BC", FrameContainer.sanitiseFileName("#\u00fc"));
+        assertEquals("#%C3%A9", FrameContainer.sanitiseFileName("#\u00e9"));
+        assertFalse(FrameContainer.sanitiseFileName("a_b").equals(
+                FrameContainer.sanitiseFileName("a b")));
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import com.dmdirc.actions.ActionManager;
+import com.dmdirc.actions.CoreActionType;
+import com.dmdirc.config.IdentityManager;
+import com.dmdirc.config.InvalidIdentityFileException;
+import com.dmdirc.interfaces.ActionListener;
+import com.dmdirc.ui.messages.IRCDocument;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class LineBatchTest {
+
+    private final List<String[]> added = new ArrayList<String[]>();
+
+    @BeforeClass
+    public static void setUpClass() throws InvalidIdentityFileException {
+        IdentityManager.load();
+        ActionManager.getActionManager().initialise();
+    }
+
+    @SuppressWarnings("unchecked")
+    private FrameContainer mockContainer() {
+        final FrameContainer container = mock(FrameContainer.class);
+        final IRCDocument document = mock(IRCDocument.class);
+
+        when(container.getConfigManager()).thenReturn(IdentityManager.getGlobalConfig());
+        when(container.getDocument()).thenReturn(document);
+        doAnswer(new Answer<Object>() {
+
+            /** {@inheritDoc} */
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                added.addAll((List<String[]>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(document).addText(anyList());
+
+        return container;
+    }
+
+    @Test
+    public void testEventSequence() {
+        final FrameContainer container = mockContainer();
+        final ActionListener listener = mock(ActionListener.class);
+        ActionManager.getActionManager().registerListener(listener,
+                CoreActionType.CLIENT_LINE_ADDED, CoreActionType.CLIENT_LINES_ADDED);
+
+        final LineBatch batch = new LineBatch(container);
+        batch.addLine("one\ntwo", (Date) null);
+        assertEquals(2, batch.size());
+        batch.commit();
+
+        final InOrder order = inOrder(listener, container.getDocument());
+        order.verify(listener).processEvent(CoreActionType.CLIENT_LINE_ADDED,
+                null, container, "one");
+        order.verify(listener).processEvent(CoreActionType.CLIENT_LINE_ADDED,
+                null, container, "two");
+        order.verify(listener).processEvent(eq(CoreActionType.CLIENT_LINES_ADDED),
+                (StringBuffer) isNull(), same(container), anyObject());
+        order.verify(container.getDocument()).addText(anyList());
+
+        assertEquals(0, batch.size());
+        batch.commit();
+        verify(container.getDocument(), times(1)).addText(anyList());
+
+        ActionManager.getActionManager().unregisterListener(listener);
+    }
+
+    @Test
+    public void testNoBulkEventWithoutHandlers() {
+        final FrameContainer container = mockContainer();
+        final ActionListener listener = mock(ActionListener.class);
+        ActionManager.getActionManager().registerListener(listener,
+                CoreActionType.CLIENT_LINE_ADDED);
+
+        final LineBatch batch = new LineBatch(container);
+        batch.addLine("one", (Date) null);
+        batch.commit();
+
+        verify(listener).processEvent(CoreActionType.CLIENT_LINE_ADDED,
+                null, container, "one");
+        assertFalse(ActionManager.getActionManager().hasHandlers(
+                CoreActionType.CLIENT_LINES_ADDED));
+
+        ActionManager.getActionManager().unregisterListener(listener);
+    }
+
+    @Test
+    public void testTimestamps() {
+        final LineBatch batch = new LineBatch(mockContainer());
+        final Date date = new Date(1000000L);
+
+        batch.addLine("one", date);
+        batch.addLine("two", new Date(date.getTime()));
+        batch.addLine("three", (Date) null);
+        batch.commit();
+
+        assertEquals(3, added.size());
+        assertEquals(2, added.get(0).length);
+        assertEquals("one", added.get(0)[1]);
+        assertSame(added.get(0)[0], added.get(1)[0]);
+        assertEquals("two", added.get(1)[1]);
+        assertArrayEquals(new String[]{"three"}, added.get(2));
+    }
+
+}
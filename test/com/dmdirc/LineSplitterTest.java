@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LineSplitterTest {
+
+    private final LineSplitter utf8 = new LineSplitter(Charset.forName("UTF-8"));
+
+    @Test
+    public void testSplitUTF8() {
+        final String[][][] tests = new String[][][]{
+            {{""}, {""}},
+            {{"0123456789"}, {"0123456789"}},
+            {{"01234567890"}, {"0123456789", "0"}},
+            {{"01234567890123456789"}, {"0123456789", "0123456789"}},
+            {{"012345678→"}, {"012345678", "→"}},
+            {{"0123456→"}, {"0123456→"}},
+            {{"01→2345678"}, {"01→23456", "78"}},
+            {{"01→23456\n78"}, {"01→23456", "78"}},
+            {{"→→→00"}, {"→→→0", "0"}},
+        };
+
+        for (String[][] test : tests) {
+            assertEquals(Arrays.asList(test[1]), utf8.split(test[0][0], 10));
+        }
+    }
+
+    @Test
+    public void testSurrogatePairs() {
+        final String clef = new String(Character.toChars(0x1D11E));
+
+        assertEquals(Arrays.asList("012345", clef + "0"),
+                utf8.split("012345" + clef + "0", 8));
+        assertEquals(Arrays.asList(clef, clef), utf8.split(clef + clef, 2));
+    }
+
+    @Test
+    public void testSingleByteCharset() {
+        final LineSplitter latin1 = new LineSplitter(Charset.forName("ISO-8859-1"));
+
+        assertEquals(Arrays.asList("éééé", "é"),
+                latin1.split("ééééé", 4));
+    }
+
+    @Test
+    public void testNoLimit() {
+        assertEquals(Arrays.asList("0123456789"), utf8.split("0123456789", -1));
+        assertEquals(3, utf8.countLines("a\r\nb\rc", -1));
+    }
+
+    @Test
+    public void testCountLines() {
+        assertEquals(0, utf8.countLines("", 10));
+        assertEquals(0, utf8.countLines("\r\n", 10));
+        assertEquals(1, utf8.countLines("\r\n123456789", 10));
+        assertEquals(2, utf8.countLines("012345\r\n\r\n34567890", 10));
+        assertEquals(2, utf8.countLines("→→→00", 10));
+    }
+
+    @Test
+    public void testUnsupportedEncoding() {
+        assertEquals(Charset.defaultCharset(),
+                LineSplitter.forEncoding("not-a-real-encoding").getCharset());
+        assertEquals(Charset.defaultCharset(),
+                LineSplitter.forEncoding(null).getCharset());
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc;
+
+import com.dmdirc.config.ConfigManager;
+import com.dmdirc.interfaces.ConfigChangeListener;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class NotificationRouteTest {
+
+    private final Date date = new Date();
+
+    @Test
+    public void testSelf() {
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+
+        NotificationRoute.compile(mock(ConfigManager.class), "self")
+                .despatch(source, date, "type", "a", "b");
+
+        verify(source).addLine("type", date, "a", "b");
+    }
+
+    @Test
+    public void testFormat() {
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+
+        NotificationRoute.compile(mock(ConfigManager.class), "format:other:self")
+                .despatch(source, date, "type", "a");
+
+        verify(source).addLine("other", date, "a");
+    }
+
+    @Test
+    public void testServer() {
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+        final Server server = mock(Server.class);
+        when(source.getServer()).thenReturn(server);
+
+        NotificationRoute.compile(mock(ConfigManager.class), "server")
+                .despatch(source, date, "type", "a");
+
+        verify(server).addLine("type", date, "a");
+        verify(source, never()).addLine("type", date, "a");
+    }
+
+    @Test
+    public void testForkPassesFormatToChildren() {
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+        final Server server = mock(Server.class);
+        when(source.getServer()).thenReturn(server);
+
+        NotificationRoute.compile(mock(ConfigManager.class),
+                "format:other:fork:self|server").despatch(source, date, "type", "a");
+
+        verify(source).addLine("other", date, "a");
+        verify(server).addLine("other", date, "a");
+    }
+
+    @Test
+    public void testGroup() {
+        final ConfigManager config = mock(ConfigManager.class);
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+        final Server server = mock(Server.class);
+        when(source.getServer()).thenReturn(server);
+        when(config.hasOptionString("notifications", "grp")).thenReturn(true);
+        when(config.getOption("notifications", "grp")).thenReturn("server");
+
+        NotificationRoute.compile(config, "group:grp").despatch(source, date, "type");
+
+        verify(server).addLine("type", date);
+    }
+
+    @Test
+    public void testNone() {
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+
+        NotificationRoute.compile(mock(ConfigManager.class), "none")
+                .despatch(source, date, "type", "a");
+
+        verify(source, never()).addLine("type", date, "a");
+    }
+
+    @Test
+    public void testChannelFallback() {
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+        final Server server = mock(Server.class);
+        when(source.getServer()).thenReturn(server);
+        when(server.hasChannel("#foo")).thenReturn(false);
+
+        NotificationRoute.compile(mock(ConfigManager.class), "channel:#%1$s server")
+                .despatch(source, date, "type", "foo");
+
+        verify(server).hasChannel("#foo");
+        verify(server).addLine("type", date, "foo");
+    }
+
+    @Test
+    public void testRoutesAreCached() {
+        final ConfigManager config = mock(ConfigManager.class);
+        when(config.hasOptionString("notifications", "type")).thenReturn(true);
+        when(config.getOption("notifications", "type")).thenReturn("self");
+
+        final NotificationRoute route = NotificationRoute.getRoute(config, "type");
+        assertSame(route, NotificationRoute.getRoute(config, "type"));
+        verify(config, times(1)).getOption("notifications", "type");
+        verify(config).addChangeListener(eq("notifications"),
+                any(ConfigChangeListener.class));
+    }
+
+    @Test
+    public void testChangeWhileReadingIsNotCached() {
+        final ConfigManager config = mock(ConfigManager.class);
+        final ConfigChangeListener[] listener = new ConfigChangeListener[1];
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                listener[0] = (ConfigChangeListener) invocation.getArguments()[1];
+                return null;
+            }
+        }).when(config).addChangeListener(eq("notifications"),
+                any(ConfigChangeListener.class));
+        when(config.hasOptionString("notifications", "type")).thenReturn(true);
+        when(config.getOption("notifications", "type")).thenAnswer(new Answer<String>() {
+            private boolean first = true;
+
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                if (first) {
+                    // The target changes just after the old value is read
+                    first = false;
+                    listener[0].configChanged("notifications", "type");
+                    return "self";
+                }
+
+                return "server";
+            }
+        });
+
+        final WritableFrameContainer source = mock(WritableFrameContainer.class);
+        final Server server = mock(Server.class);
+        when(source.getServer()).thenReturn(server);
+
+        NotificationRoute.getRoute(config, "type").despatch(source, date, "type", "a");
+        NotificationRoute.getRoute(config, "type").despatch(source, date, "type", "b");
+
+        verify(source).addLine("type", date, "a");
+        verify(server).addLine("type", date, "b");
+    }
+
+}
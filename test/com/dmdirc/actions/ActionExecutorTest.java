@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.actions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ActionExecutorTest {
+
+    @Test
+    public void testOrderedPerKey() throws InterruptedException {
+        final ActionExecutor executor = new ActionExecutor(1000, 4);
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            executor.submit("key", new Runnable() {
+
+                /** {@inheritDoc} */
+                @Override
+                public void run() {
+                    results.add(value);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testBlocksWhenFull() throws InterruptedException {
+        final ActionExecutor executor = new ActionExecutor(2, 1);
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch block = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        executor.submit("key", new Runnable() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void run() {
+                started.countDown();
+
+                try {
+                    block.await();
+                } catch (InterruptedException ex) {
+                    // Do nothing
+                }
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final Thread producer = new Thread(new Runnable() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    executor.submit("key", new Recorder(results, i));
+                }
+                executor.submit("key", new Runnable() {
+
+                    /** {@inheritDoc} */
+                    @Override
+                    public void run() {
+                        finished.countDown();
+                    }
+                });
+            }
+        });
+        producer.start();
+
+        // The producer must wait for the blocked task rather than skip ahead
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertTrue(results.isEmpty());
+        assertEquals(1, executor.getBlocked());
+        assertEquals(2, executor.getMaxDepth());
+
+        block.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testWorkersDoNotBlock() throws InterruptedException {
+        final ActionExecutor executor = new ActionExecutor(1, 1);
+        final CountDownLatch finished = new CountDownLatch(5);
+
+        executor.submit("key", new Runnable() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void run() {
+                for (int i = 0; i < 5; i++) {
+                    executor.submit("key", new Runnable() {
+
+                        /** {@inheritDoc} */
+                        @Override
+                        public void run() {
+                            finished.countDown();
+                        }
+                    });
+                }
+            }
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getBlocked());
+    }
+
+    private static class Recorder implements Runnable {
+
+        private final List<Integer> results;
+
+        private final int value;
+
+        public Recorder(final List<Integer> results, final int value) {
+            this.results = results;
+            this.value = value;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            results.add(value);
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.actions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ActionIndexTest {
+
+    private Action mockAction(final String tree, final ActionCondition ... conditions) {
+        final Action action = mock(Action.class);
+        final List<ActionCondition> list = new ArrayList<ActionCondition>(
+                Arrays.asList(conditions));
+
+        when(action.getStatus()).thenReturn(ActionStatus.ACTIVE);
+        when(action.getConditions()).thenReturn(list);
+        when(action.getRealConditionTree()).thenReturn(tree == null
+                ? ConditionTree.createConjunction(list.size())
+                : ConditionTree.parseString(tree));
+
+        return action;
+    }
+
+    private ActionCondition condition(final CoreActionComparison comparison,
+            final String target) {
+        return new ActionCondition(2, CoreActionComponent.STRING_STRING, comparison, target);
+    }
+
+    private List<Action> candidates(final ActionIndex index, final String message) {
+        return Arrays.asList(index.getCandidates(new Object[]{null, null, message}));
+    }
+
+    @Test
+    public void testCandidates() {
+        final Action equals = mockAction(null,
+                condition(CoreActionComparison.STRING_EQUALS, "Hello World"));
+        final Action prefix = mockAction(null,
+                condition(CoreActionComparison.STRING_STARTSWITH, "hello"));
+        final Action contains = mockAction(null,
+                condition(CoreActionComparison.STRING_CONTAINS, "wor"));
+        final Action otherContains = mockAction(null,
+                condition(CoreActionComparison.STRING_CONTAINS, "xyz"));
+        final Action disjunction = mockAction("0|1",
+                condition(CoreActionComparison.STRING_CONTAINS, "xyz"),
+                condition(CoreActionComparison.STRING_CONTAINS, "abc"));
+        final Action unconditional = mockAction(null);
+
+        final ActionIndex index = new ActionIndex(new Action[]{
+            equals, prefix, contains, otherContains, disjunction, unconditional,
+        });
+
+        assertEquals(Arrays.asList(equals, prefix, contains, disjunction, unconditional),
+                candidates(index, "hello world"));
+        assertEquals(Arrays.asList(otherContains, disjunction, unconditional),
+                candidates(index, "HELLO xyz"));
+    }
+
+    @Test
+    public void testOverlappingSubstrings() {
+        final Action she = mockAction(null,
+                condition(CoreActionComparison.STRING_CONTAINS, "she"));
+        final Action he = mockAction(null,
+                condition(CoreActionComparison.STRING_CONTAINS, "he"));
+        final Action hers = mockAction(null,
+                condition(CoreActionComparison.STRING_CONTAINS, "hers"));
+        final Action his = mockAction(null,
+                condition(CoreActionComparison.STRING_CONTAINS, "his"));
+
+        final ActionIndex index = new ActionIndex(new Action[]{she, he, hers, his});
+
+        assertEquals(Arrays.asList(she, he, hers), candidates(index, "ushers"));
+        assertEquals(Arrays.asList(his), candidates(index, "this"));
+    }
+
+    @Test
+    public void testNonStringValue() {
+        final Action action = mockAction(null,
+                condition(CoreActionComparison.STRING_EQUALS, "foo"));
+        final ActionIndex index = new ActionIndex(new Action[]{action});
+
+        assertEquals(Arrays.asList(action), Arrays.asList(index.getCandidates(
+                new Object[]{null, null, null})));
+    }
+
+}
@@ -23,6 +23,7 @@ package com.dmdirc.actions;
 
 import com.dmdirc.actions.interfaces.ActionType;
 import com.dmdirc.config.IdentityManager;
+import com.dmdirc.interfaces.ActionListener;
 import java.io.File;
 
 import java.util.ArrayList;
@@ -30,6 +31,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class ActionManagerTest {
 
@@ -107,4 +109,20 @@ public class ActionManagerTest {
                 new File(ActionManager.getDirectory() + "unit-test").isDirectory());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testListenerDispatch() {
+        final ActionListener listener = mock(ActionListener.class);
+
+        ActionManager.getActionManager().registerListener(listener,
+                CoreActionType.CLIENT_FOCUS_LOST);
+        assertTrue(ActionManager.getActionManager().triggerEvent(
+                CoreActionType.CLIENT_FOCUS_LOST, null));
+        verify(listener).processEvent(CoreActionType.CLIENT_FOCUS_LOST, null);
+
+        ActionManager.getActionManager().unregisterListener(listener);
+        assertTrue(ActionManager.getActionManager().triggerEvent(
+                CoreActionType.CLIENT_FOCUS_LOST, null));
+        verify(listener, times(1)).processEvent(CoreActionType.CLIENT_FOCUS_LOST, null);
+    }
+
+}
@@ -169,4 +169,26 @@ public class ActionModelTest {
         assertTrue("test must pass if both conditions in conjunction pass",
                 model.test(sub, null, null, "abcdeeeeeeeeef"));
     }
+
+    @Test
+    public void testRemoveConditionBeforeTree() {
+        final ActionModel model = new ActionModel("group", "name",
+                new ActionType[]{CoreActionType.CHANNEL_ACTION},
+                new String[0], Arrays.asList(new ActionCondition[]{
+                    new ActionCondition(2, CoreActionComponent.STRING_STRING,
+                            CoreActionComparison.STRING_REGEX, ".*e{5}.*"),
+                    new ActionCondition(2, CoreActionComponent.STRING_STRING,
+                            CoreActionComparison.STRING_STARTSWITH, "abc"),
+                }), ConditionTree.parseString("0|1"), null);
+        final ActionSubstitutor sub = new ActionSubstitutor(CoreActionType.CHANNEL_ACTION);
+
+        model.setConditions(Arrays.asList(new ActionCondition[]{
+                    new ActionCondition(2, CoreActionComponent.STRING_STRING,
+                            CoreActionComparison.STRING_STARTSWITH, "abc"),
+                }));
+        model.setConditionTree(ConditionTree.parseString("0"));
+
+        assertTrue(model.test(sub, null, null, "abcdef"));
+        assertFalse(model.test(sub, null, null, "bcdeeeeeeeeef"));
+    }
 }
\ No newline at end of file
@@ -101,6 +101,14 @@ public class ActionSubstitutorTest {
         assertEquals(expected, substitutor.doSubstitution(input, args));
     }
 
+    @Test
+    public void testCompiledTemplate() {
+        final ActionSubstitutor.Template template = substitutor.compile(input);
+
+        assertEquals(expected, substitutor.doSubstitution(template, args));
+        assertEquals(expected, substitutor.doSubstitution(template, args));
+    }
+
     @Parameterized.Parameters
     public static List<String[]> data() {
         final String[][] tests = {
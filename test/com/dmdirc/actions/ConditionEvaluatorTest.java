@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.actions;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ConditionEvaluatorTest {
+
+    private final ActionSubstitutor sub = new ActionSubstitutor(CoreActionType.CLIENT_CLOSED);
+
+    private ActionCondition mockCondition(final int cost, final boolean result) {
+        final ActionCondition condition = mock(ActionCondition.class);
+        when(condition.getCost()).thenReturn(cost);
+        when(condition.test(same(sub), (Object[]) anyVararg())).thenReturn(result);
+        return condition;
+    }
+
+    @Test
+    public void testConjunctionShortCircuits() {
+        final ActionCondition first = mockCondition(1, false);
+        final ActionCondition second = mockCondition(1, true);
+        final ConditionEvaluator evaluator = new ConditionEvaluator(
+                ConditionTree.parseString("0&1"), Arrays.asList(first, second));
+
+        assertFalse(evaluator.evaluate(sub, new Object[0]));
+        verify(second, never()).test(same(sub), (Object[]) anyVararg());
+    }
+
+    @Test
+    public void testDisjunctionShortCircuits() {
+        final ActionCondition first = mockCondition(1, true);
+        final ActionCondition second = mockCondition(1, false);
+        final ConditionEvaluator evaluator = new ConditionEvaluator(
+                ConditionTree.parseString("0|1"), Arrays.asList(first, second));
+
+        assertTrue(evaluator.evaluate(sub, new Object[0]));
+        verify(second, never()).test(same(sub), (Object[]) anyVararg());
+    }
+
+    @Test
+    public void testCheapConditionsFirst() {
+        final ActionCondition expensive = mockCondition(5, true);
+        final ActionCondition cheap = mockCondition(1, false);
+        final ConditionEvaluator evaluator = new ConditionEvaluator(
+                ConditionTree.parseString("0&1"), Arrays.asList(expensive, cheap));
+
+        assertFalse(evaluator.evaluate(sub, new Object[0]));
+        verify(expensive, never()).test(same(sub), (Object[]) anyVararg());
+    }
+
+    @Test
+    public void testNegation() {
+        final ConditionEvaluator evaluator = new ConditionEvaluator(
+                ConditionTree.parseString("!0"), Arrays.asList(mockCondition(1, false)));
+
+        assertTrue(evaluator.evaluate(sub, new Object[0]));
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ConfigHandleTest {
+
+    @Test
+    public void testReadsOnce() {
+        final CountingHandle handle = new CountingHandle(false);
+        assertEquals(1, (int) handle.get());
+        assertEquals(1, (int) handle.get());
+        assertEquals(1, handle.reads);
+    }
+
+    @Test
+    public void testRereadsAfterChange() {
+        final CountingHandle handle = new CountingHandle(false);
+        handle.get();
+        handle.configChanged("domain", "option");
+        assertEquals(2, (int) handle.get());
+        assertEquals(2, (int) handle.get());
+    }
+
+    @Test
+    public void testChangeDuringRead() {
+        final CountingHandle handle = new CountingHandle(true);
+        assertEquals(2, (int) handle.get());
+        assertEquals(2, (int) handle.get());
+        assertEquals(2, handle.reads);
+    }
+
+    private static class CountingHandle extends ConfigHandle<Integer> {
+
+        private final boolean changeOnFirstRead;
+
+        private int reads;
+
+        public CountingHandle(final boolean changeOnFirstRead) {
+            super(mock(ConfigManager.class), "domain", "option");
+            this.changeOnFirstRead = changeOnFirstRead;
+        }
+
+        @Override
+        protected Integer read(final ConfigManager manager,
+                final String domain, final String option) {
+            reads++;
+            if (reads == 1 && changeOnFirstRead) {
+                configChanged(domain, option);
+            }
+            return reads;
+        }
+
+    }
+
+}
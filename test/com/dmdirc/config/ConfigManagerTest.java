@@ -22,7 +22,16 @@
 package com.dmdirc.config;
 
 import com.dmdirc.interfaces.ConfigChangeListener;
+import com.dmdirc.interfaces.ConfigChangeSetListener;
 import com.dmdirc.util.validators.PermissiveValidator;
+import com.dmdirc.util.validators.Validator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -38,10 +47,23 @@ public class ConfigManagerTest {
     @Test
     public void testStats() {
         final ConfigManager cm = new ConfigManager("", "", "", "");
-        assertNull(ConfigManager.getStats().get("unit-test123.baz"));
-        cm.hasOption("unit-test123", "baz", new PermissiveValidator<String>());
-        assertNotNull(ConfigManager.getStats().get("unit-test123.baz"));
-        assertEquals(1, (int) ConfigManager.getStats().get("unit-test123.baz"));
+        ConfigStats.setEnabled(true);
+
+        try {
+            assertNull(ConfigManager.getStats().get("unit-test123.baz"));
+            cm.hasOption("unit-test123", "baz", new PermissiveValidator<String>());
+            assertNotNull(ConfigManager.getStats().get("unit-test123.baz"));
+            assertEquals(1, (int) ConfigManager.getStats().get("unit-test123.baz"));
+        } finally {
+            ConfigStats.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testStatsDisabled() {
+        final ConfigManager cm = new ConfigManager("", "", "", "");
+        cm.hasOption("unit-test123", "disabled", new PermissiveValidator<String>());
+        assertNull(ConfigManager.getStats().get("unit-test123.disabled"));
     }
 
     @Test
@@ -73,4 +95,173 @@ public class ConfigManagerTest {
         verify(listener).configChanged("unit-test", "foo");
     }
 
-}
\ No newline at end of file
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolvedValuesInvalidated() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setServer("unit-test-server");
+
+        final Identity identity = mock(Identity.class);
+        when(identity.getTarget()).thenReturn(target);
+        when(identity.getDomains()).thenReturn(new HashSet<String>());
+        when(identity.hasOption(eq("unit-test"), eq("cached"), any(Validator.class)))
+                .thenReturn(true);
+        when(identity.getOption(eq("unit-test"), eq("cached"), any(Validator.class)))
+                .thenReturn("one", "two");
+
+        final ConfigManager cm = new ConfigManager("", "", "", "unit-test-server");
+        cm.checkIdentity(identity);
+
+        assertEquals("one", cm.getOption("unit-test", "cached"));
+        assertTrue(cm.hasOptionString("unit-test", "cached"));
+        assertEquals("one", cm.getOption("unit-test", "cached"));
+        verify(identity, times(1)).getOption(eq("unit-test"), eq("cached"),
+                any(Validator.class));
+
+        cm.configChanged("unit-test", "cached");
+        assertEquals("two", cm.getOption("unit-test", "cached"));
+
+        cm.removeIdentity(identity);
+        assertNull(cm.getOption("unit-test", "cached"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBoundHandles() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setServer("unit-test-bound");
+
+        final Identity identity = mock(Identity.class);
+        when(identity.getTarget()).thenReturn(target);
+        when(identity.getDomains()).thenReturn(new HashSet<String>());
+        when(identity.hasOption(eq("unit-test"), eq("number"), any(Validator.class)))
+                .thenReturn(true);
+        when(identity.getOption(eq("unit-test"), eq("number"), any(Validator.class)))
+                .thenReturn("12", "34");
+
+        final ConfigManager cm = new ConfigManager("", "", "", "unit-test-bound");
+        cm.checkIdentity(identity);
+
+        final ConfigHandle<Integer> handle = cm.bindInt("unit-test", "number");
+        assertEquals(12, (int) handle.get());
+        assertEquals(12, (int) handle.get());
+
+        cm.configChanged("unit-test", "other");
+        assertEquals(12, (int) handle.get());
+
+        cm.configChanged("unit-test", "number");
+        assertEquals(34, (int) handle.get());
+
+        final ConfigHandle<Boolean> missing = cm.bindBool("unit-test", "missing");
+        assertFalse(missing.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSourceChurnDuringReads() throws InterruptedException {
+        final ConfigTarget target = new ConfigTarget();
+        target.setServer("unit-test-churn");
+
+        final Identity stable = mock(Identity.class);
+        when(stable.getTarget()).thenReturn(target);
+        when(stable.getDomains()).thenReturn(new HashSet<String>());
+        when(stable.hasOption(eq("unit-test"), eq("stable"), any(Validator.class)))
+                .thenReturn(true);
+        when(stable.getOption(eq("unit-test"), eq("stable"), any(Validator.class)))
+                .thenReturn("yes");
+
+        final Identity churn = mock(Identity.class);
+        when(churn.getTarget()).thenReturn(target);
+        when(churn.getDomains()).thenReturn(new HashSet<String>());
+        when(churn.hasOption(eq("unit-test"), eq("churn"), any(Validator.class)))
+                .thenReturn(true);
+        when(churn.getOption(eq("unit-test"), eq("churn"), any(Validator.class)))
+                .thenReturn("value");
+
+        final ConfigManager cm = new ConfigManager("", "", "", "unit-test-churn");
+        cm.checkIdentity(stable);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] readers = new Thread[4];
+
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                /** {@inheritDoc} */
+                @Override
+                public void run() {
+                    try {
+                        while (!Thread.currentThread().isInterrupted()) {
+                            assertEquals("yes", cm.getOption("unit-test", "stable"));
+
+                            final String value = cm.getOption("unit-test", "churn");
+                            assertTrue(value == null || "value".equals(value));
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (int i = 0; i < 500; i++) {
+            cm.checkIdentity(churn);
+            assertEquals("value", cm.getOption("unit-test", "churn"));
+            cm.removeIdentity(churn);
+            assertNull(cm.getOption("unit-test", "churn"));
+        }
+
+        for (Thread reader : readers) {
+            reader.interrupt();
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(cm.getSources().contains(stable));
+        assertFalse(cm.getSources().contains(churn));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrateBatchesChanges() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setServer("unit-test-migrate");
+
+        final Map<String, String> options = new HashMap<String, String>();
+        options.put("first", "1");
+        options.put("second", "2");
+
+        final Identity identity = mock(Identity.class);
+        when(identity.getTarget()).thenReturn(target);
+        when(identity.getDomains()).thenReturn(new HashSet<String>(Arrays.asList("unit-test")));
+        when(identity.getOptions("unit-test")).thenReturn(options);
+        when(identity.hasOption(eq("unit-test"), anyString(), any(Validator.class)))
+                .thenReturn(true);
+        when(identity.getOption(eq("unit-test"), eq("first"), any(Validator.class)))
+                .thenReturn("1");
+        when(identity.getOption(eq("unit-test"), eq("second"), any(Validator.class)))
+                .thenReturn("2");
+
+        final ConfigManager cm = new ConfigManager("", "", "", "unit-test-migrate");
+        cm.checkIdentity(identity);
+        assertEquals("1", cm.getOption("unit-test", "first"));
+
+        final ConfigChangeSetListener batched = mock(ConfigChangeSetListener.class);
+        final ConfigChangeListener single = mock(ConfigChangeListener.class);
+        cm.addChangeListener("unit-test", batched);
+        cm.addChangeListener("unit-test", single);
+
+        cm.migrate("", "", "", "unit-test-elsewhere");
+
+        final Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+        expected.put("unit-test", new HashSet<String>(options.keySet()));
+
+        verify(batched).configChanged(expected);
+        verify(batched, never()).configChanged(anyString(), anyString());
+        verify(single).configChanged("unit-test", "first");
+        verify(single).configChanged("unit-test", "second");
+        assertNull(cm.getOption("unit-test", "first"));
+        assertFalse(cm.getSources().contains(identity));
+    }
+
+}
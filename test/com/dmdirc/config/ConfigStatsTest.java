@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConfigStatsTest {
+
+    @After
+    public void tearDown() {
+        ConfigStats.reset();
+    }
+
+    @Test
+    public void testRecording() {
+        ConfigStats.recordLookup("unit-test", "option");
+        ConfigStats.recordLookup("unit-test", "option");
+        ConfigStats.recordHit("unit-test", "option");
+        ConfigStats.recordMiss("unit-test", "option", 1500);
+
+        final List<ConfigStats.OptionStats> stats = ConfigStats.getAllStats();
+        assertEquals(1, stats.size());
+        assertEquals("unit-test", stats.get(0).getDomain());
+        assertEquals("option", stats.get(0).getOption());
+        assertEquals(2, stats.get(0).getLookups());
+        assertEquals(1, stats.get(0).getHits());
+        assertEquals(1, stats.get(0).getMisses());
+        assertEquals(1500, stats.get(0).getResolveTime());
+    }
+
+    @Test
+    public void testTopStats() {
+        ConfigStats.recordLookup("unit-test", "rare");
+        ConfigStats.recordLookup("unit-test", "common");
+        ConfigStats.recordLookup("unit-test", "common");
+        ConfigStats.recordLookup("other", "common");
+
+        final List<ConfigStats.OptionStats> stats = ConfigStats.getTopStats(2);
+        assertEquals(2, stats.size());
+        assertEquals("common", stats.get(0).getOption());
+        assertEquals(2, stats.get(0).getLookups());
+        assertEquals(1, stats.get(1).getLookups());
+    }
+
+    @Test
+    public void testReset() {
+        ConfigStats.recordLookup("unit-test", "option");
+        ConfigStats.reset();
+        assertTrue(ConfigStats.getAllStats().isEmpty());
+    }
+
+}
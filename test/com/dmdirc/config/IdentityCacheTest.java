@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IdentityCacheTest {
+
+    private Identity identity;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        final ConfigTarget target = new ConfigTarget();
+        target.setChannel("#unittest-cache@unittest");
+        target.setOrder(1234);
+
+        identity = Identity.buildIdentity(target);
+        cacheFile = File.createTempFile("dmdirc-identities", ".cache");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        identity.file.delete();
+        cacheFile.delete();
+    }
+
+    @Test
+    public void testEmptyCache() {
+        assertNull(IdentityCache.read(cacheFile).get(identity.getFile()));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        assertTrue(identity.getFile().setLastModified(System.currentTimeMillis()
+                - 2 * IdentityCache.MTIME_GRANULARITY));
+        IdentityCache.write(cacheFile, Arrays.asList(identity),
+                System.currentTimeMillis());
+
+        final IdentityCache cache = IdentityCache.read(cacheFile);
+        final Identity cached = cache.get(identity.getFile());
+
+        assertNotNull(cached);
+        assertTrue(cached.isFile(identity.getFile()));
+        assertEquals(identity.getName(), cached.getName());
+        assertEquals(identity.getTarget(), cached.getTarget());
+        assertEquals(identity.getTarget().getOrder(), cached.getTarget().getOrder());
+        assertEquals(identity.getOptions("identity"), cached.getOptions("identity"));
+        assertTrue(cache.isCurrent(1));
+    }
+
+    @Test
+    public void testChangedFileIgnored() throws Exception {
+        assertTrue(identity.getFile().setLastModified(System.currentTimeMillis()
+                - 2 * IdentityCache.MTIME_GRANULARITY));
+        IdentityCache.write(cacheFile, Arrays.asList(identity),
+                System.currentTimeMillis());
+        assertTrue(identity.getFile().setLastModified(
+                identity.getFile().lastModified() - 10000));
+
+        assertNull(IdentityCache.read(cacheFile).get(identity.getFile()));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIgnored() throws Exception {
+        // The file may change again without its modification time changing
+        assertTrue(identity.getFile().setLastModified(System.currentTimeMillis()
+                - IdentityCache.MTIME_GRANULARITY / 2));
+        IdentityCache.write(cacheFile, Arrays.asList(identity),
+                System.currentTimeMillis());
+
+        assertNull(IdentityCache.read(cacheFile).get(identity.getFile()));
+    }
+
+}
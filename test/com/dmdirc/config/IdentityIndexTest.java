@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class IdentityIndexTest {
+
+    private IdentityIndex index;
+
+    @Before
+    public void setUp() {
+        index = new IdentityIndex();
+    }
+
+    private Identity getIdentity(final ConfigTarget target) {
+        final Identity identity = mock(Identity.class);
+        when(identity.getTarget()).thenReturn(target);
+        return identity;
+    }
+
+    @Test
+    public void testLiteralTargets() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setChannel("#DMDirc@Quakenet");
+        final Identity identity = getIdentity(target);
+        index.add(identity);
+
+        assertSame(identity, index.find(ConfigTarget.TYPE.CHANNEL, "#dmdirc@quakenet"));
+        assertNull(index.find(ConfigTarget.TYPE.SERVER, "#dmdirc@quakenet"));
+        assertNull(index.find(ConfigTarget.TYPE.CHANNEL, "#other@quakenet"));
+
+        final List<Identity> results = new ArrayList<Identity>();
+        index.findMatching(ConfigTarget.TYPE.CHANNEL, "#DMDIRC@QuakeNet", results);
+        assertEquals(1, results.size());
+
+        index.remove(identity);
+        assertNull(index.find(ConfigTarget.TYPE.CHANNEL, "#dmdirc@quakenet"));
+    }
+
+    @Test
+    public void testPatternTargets() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setServer("re:.*\\.quakenet\\.org");
+        final Identity identity = getIdentity(target);
+        index.add(identity);
+
+        final List<Identity> results = new ArrayList<Identity>();
+        index.findMatching(ConfigTarget.TYPE.SERVER, "irc.quakenet.org", results);
+        index.findMatching(ConfigTarget.TYPE.SERVER, "irc.quakenet.org.uk", results);
+        index.findMatching(ConfigTarget.TYPE.NETWORK, "irc.quakenet.org", results);
+        assertEquals(1, results.size());
+        assertSame(identity, results.get(0));
+        assertNull(index.find(ConfigTarget.TYPE.SERVER, "re:.*\\.quakenet\\.org"));
+
+        index.remove(identity);
+        results.clear();
+        index.findMatching(ConfigTarget.TYPE.SERVER, "irc.quakenet.org", results);
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void testCustomIgnored() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setCustom("profile");
+        index.add(getIdentity(target));
+
+        assertNull(index.find(ConfigTarget.TYPE.CUSTOM, "profile"));
+    }
+
+    @Test
+    public void testClear() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setGlobal();
+        index.add(getIdentity(target));
+        index.clear();
+
+        final List<Identity> results = new ArrayList<Identity>();
+        index.findMatching(ConfigTarget.TYPE.GLOBAL, "", results);
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void testTargetChange() {
+        final ConfigTarget target = new ConfigTarget();
+        target.setNetwork("Quakenet");
+        final Identity identity = getIdentity(target);
+        index.add(identity);
+
+        target.setServer("irc.quakenet.org");
+        assertNull(index.find(ConfigTarget.TYPE.NETWORK, "quakenet"));
+        assertSame(identity, index.find(ConfigTarget.TYPE.SERVER, "irc.quakenet.org"));
+
+        index.remove(identity);
+        target.setNetwork("Quakenet");
+        assertNull(index.find(ConfigTarget.TYPE.NETWORK, "quakenet"));
+    }
+
+    @Test
+    public void testDefaultLocaleIgnored() {
+        final Locale locale = Locale.getDefault();
+
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            final ConfigTarget target = new ConfigTarget();
+            target.setNetwork("IRCnet");
+            final Identity identity = getIdentity(target);
+            index.add(identity);
+
+            assertSame(identity, index.find(ConfigTarget.TYPE.NETWORK, "ircnet"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testPatternCache() {
+        assertSame(IdentityIndex.getPattern("a+b"), IdentityIndex.getPattern("a+b"));
+    }
+
+}
@@ -43,5 +43,16 @@ public class IdentityManagerTest {
                     || identity.getTarget().getType() == ConfigTarget.TYPE.THEME);
         }
     }
+
+    @Test
+    public void testReloadDoesNotDuplicate() {
+        final int profiles = IdentityManager.getCustomIdentities("profile").size();
+        final int sources = IdentityManager.getGlobalConfig().getSources().size();
+
+        IdentityManager.loadUser();
+
+        assertEquals(profiles, IdentityManager.getCustomIdentities("profile").size());
+        assertEquals(sources, IdentityManager.getGlobalConfig().getSources().size());
+    }
     
 }
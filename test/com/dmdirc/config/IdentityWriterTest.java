@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+public class IdentityWriterTest {
+
+    @Test
+    public void testCoalescesSaves() throws InterruptedException {
+        final IdentityWriter writer = new IdentityWriter(50);
+        final Identity identity = mock(Identity.class);
+
+        writer.schedule(identity);
+        writer.schedule(identity);
+        writer.schedule(identity);
+
+        Thread.sleep(500);
+        verify(identity, times(1)).save();
+    }
+
+    @Test
+    public void testMaximumDelay() throws InterruptedException {
+        final IdentityWriter writer = new IdentityWriter(200, 300);
+        final Identity identity = mock(Identity.class);
+
+        for (int i = 0; i < 20; i++) {
+            writer.schedule(identity);
+            Thread.sleep(50);
+        }
+
+        verify(identity, atLeastOnce()).save();
+    }
+
+    @Test
+    public void testFlush() {
+        final IdentityWriter writer = new IdentityWriter(60000);
+        final Identity first = mock(Identity.class);
+        final Identity second = mock(Identity.class);
+
+        writer.schedule(first);
+        writer.schedule(second);
+        writer.flush();
+
+        verify(first).save();
+        verify(second).save();
+
+        writer.flush();
+        verify(first, times(1)).save();
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.config;
+
+import com.dmdirc.interfaces.ConfigChangeListener;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ListenerIndexTest {
+
+    @Test
+    public void testUnknownDomain() {
+        assertNull(new ListenerIndex().get("unit-test"));
+    }
+
+    @Test
+    public void testDomainAndKeyListeners() {
+        final ListenerIndex index = new ListenerIndex();
+        final ConfigChangeListener domain = mock(ConfigChangeListener.class);
+        final ConfigChangeListener key = mock(ConfigChangeListener.class);
+
+        index.add("unit-test", null, domain);
+        index.add("unit-test", "key", key);
+
+        assertArrayEquals(new ConfigChangeListener[]{domain},
+                index.get("unit-test").getDomainListeners());
+        assertArrayEquals(new ConfigChangeListener[]{key},
+                index.get("unit-test").getKeyListeners("key"));
+        assertEquals(0, index.get("unit-test").getKeyListeners("other").length);
+    }
+
+    @Test
+    public void testRemove() {
+        final ListenerIndex index = new ListenerIndex();
+        final ConfigChangeListener first = mock(ConfigChangeListener.class);
+        final ConfigChangeListener second = mock(ConfigChangeListener.class);
+
+        index.add("unit-test", null, first);
+        index.add("unit-test", "key", first);
+        index.add("other", "key", first);
+        index.add("unit-test", "key", second);
+
+        final ConfigChangeListener[] before = index.get("unit-test").getKeyListeners("key");
+        index.remove(first);
+
+        assertEquals(2, before.length);
+        assertEquals(0, index.get("unit-test").getDomainListeners().length);
+        assertArrayEquals(new ConfigChangeListener[]{second},
+                index.get("unit-test").getKeyListeners("key"));
+        assertEquals(0, index.get("other").getKeyListeners("key").length);
+    }
+
+}
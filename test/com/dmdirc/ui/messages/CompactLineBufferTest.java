@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompactLineBufferTest {
+
+    private Line line(final String... parts) {
+        return new Line(null, parts, 12, "Dialog");
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("12:00", " <foo> ", "héllo ☃ 😀"));
+        buffer.add(line());
+
+        assertEquals(2, buffer.size());
+        assertArrayEquals(new String[]{"12:00", " <foo> ", "héllo ☃ 😀"},
+                buffer.get(0).getLineParts());
+        assertEquals(0, buffer.get(1).getLineParts().length);
+        assertEquals(12, buffer.get(0).getFontSize());
+    }
+
+    @Test
+    public void testSameLineReturned() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("foo"));
+
+        assertSame(buffer.get(0), buffer.get(0));
+    }
+
+    @Test
+    public void testRecordsSpanManySlabs() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog", 64);
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(line("line ", String.valueOf(i)));
+        }
+        buffer.add(line("a very long line which does not fit in a single slab"
+                + " of the configured size"));
+
+        assertEquals(1001, buffer.size());
+        assertEquals("line 500", buffer.get(500).getStyledText());
+        assertEquals(75, buffer.get(1000).getLength());
+    }
+
+    @Test
+    public void testTrimReleasesSlabs() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog", 64);
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(line("line " + i));
+        }
+
+        final long allocated = buffer.getAllocatedBytes();
+        assertEquals(990, buffer.trim(10));
+        assertEquals(10, buffer.size());
+        assertEquals(990, buffer.getFirstLineNumber());
+        assertEquals("line 990", buffer.get(0).getStyledText());
+        assertTrue(buffer.getAllocatedBytes() < allocated / 10);
+        assertNull(buffer.getByLineNumber(989));
+        assertEquals("line 999", buffer.getByLineNumber(999).getStyledText());
+    }
+
+    @Test
+    public void testSlabsGrow() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("line"));
+        assertEquals(CompactLineBuffer.INITIAL_SLAB_SIZE, buffer.getAllocatedBytes());
+
+        long allocated = buffer.getAllocatedBytes();
+        long slab = CompactLineBuffer.INITIAL_SLAB_SIZE;
+        int maximumSlabs = 0;
+        while (maximumSlabs < 2) {
+            while (buffer.getAllocatedBytes() == allocated) {
+                buffer.add(line("line"));
+            }
+
+            slab = Math.min(slab * 2, CompactLineBuffer.DEFAULT_SLAB_SIZE);
+            assertEquals(allocated + slab, buffer.getAllocatedBytes());
+            allocated = buffer.getAllocatedBytes();
+
+            if (slab == CompactLineBuffer.DEFAULT_SLAB_SIZE) {
+                maximumSlabs++;
+            }
+        }
+    }
+
+    @Test
+    public void testGetLength() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("12:00", " hello"));
+
+        assertEquals(11, buffer.getLength(0));
+        assertEquals(buffer.get(0).getLength(), buffer.getLength(0));
+    }
+
+    @Test
+    public void testTrimChars() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        for (int i = 0; i < 10; i++) {
+            buffer.add(line("abcde"));
+        }
+
+        assertEquals(50, buffer.getRetainedChars());
+        assertEquals(6, buffer.trimChars(20));
+        assertEquals(20, buffer.getRetainedChars());
+        assertEquals(4, buffer.size());
+    }
+
+    @Test
+    public void testClear() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("foo"));
+        buffer.add(line("bar"));
+        buffer.clear();
+        buffer.add(line("baz"));
+
+        assertEquals(1, buffer.size());
+        assertEquals(2, buffer.getFirstLineNumber());
+        assertEquals("baz", buffer.get(0).getStyledText());
+    }
+
+    @Test
+    public void testSetFont() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("foo"));
+        buffer.setFont("Monospaced", 20);
+        buffer.add(line("bar"));
+
+        assertEquals(20, buffer.get(0).getFontSize());
+        assertEquals(12, buffer.get(1).getFontSize());
+    }
+
+    @Test
+    public void testSetFontThenAddFirst() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog");
+        buffer.add(line("foo"));
+        buffer.setFont("Monospaced", 20);
+        buffer.add(line("bar"));
+        buffer.addFirst(new Line(null, new String[]{"baz"}, 20, "Monospaced"));
+
+        assertEquals(20, buffer.get(0).getFontSize());
+        assertEquals(20, buffer.get(1).getFontSize());
+        assertEquals(12, buffer.get(2).getFontSize());
+    }
+
+    @Test
+    public void testAddFirst() {
+        final CompactLineBuffer buffer = new CompactLineBuffer(null, "Dialog", 64);
+        for (int i = 50; i < 100; i++) {
+            buffer.add(line("line " + i));
+        }
+        for (int i = 49; i >= 0; i--) {
+            buffer.addFirst(line("line " + i));
+        }
+
+        assertEquals(100, buffer.size());
+        assertEquals(-50, buffer.getFirstLineNumber());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("line " + i, buffer.get(i).getStyledText());
+            assertEquals("line " + i, buffer.getByLineNumber(i - 50).getStyledText());
+            assertEquals(12, buffer.get(i).getFontSize());
+        }
+        assertNull(buffer.getByLineNumber(-51));
+
+        assertEquals(90, buffer.trim(10));
+        assertEquals("line 90", buffer.get(0).getStyledText());
+        assertEquals("line 99", buffer.get(9).getStyledText());
+    }
+
+}
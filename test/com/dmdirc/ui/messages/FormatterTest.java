@@ -21,9 +21,14 @@
  */
 package com.dmdirc.ui.messages;
 
+import com.dmdirc.config.ConfigManager;
 import com.dmdirc.harness.TestConfigManagerOptionToggle;
+import com.dmdirc.interfaces.ConfigChangeListener;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class FormatterTest {
     
@@ -56,6 +61,59 @@ public class FormatterTest {
         assertEquals("HELLO!", Formatter.formatMessage(mcm, "1%1$S", "Hello!"));
     }
     
+    @Test
+    public void testChangeWhileReadingIsNotCached() {
+        final ConfigManager config = mock(ConfigManager.class);
+        final ConfigChangeListener[] listener = new ConfigChangeListener[1];
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                listener[0] = (ConfigChangeListener) invocation.getArguments()[1];
+                return null;
+            }
+        }).when(config).addChangeListener(eq("formatter"), (ConfigChangeListener) any());
+        when(config.hasOptionString("formatter", "type")).thenReturn(true);
+        when(config.getOption("formatter", "type")).thenAnswer(new Answer<String>() {
+            private boolean first = true;
+
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                if (first) {
+                    // The formatter changes just after the old value is read
+                    first = false;
+                    listener[0].configChanged("formatter", "type");
+                    return "old";
+                }
+
+                return "new";
+            }
+        });
+
+        assertEquals("old", Formatter.formatMessage(config, "type"));
+        assertEquals("new", Formatter.formatMessage(config, "type"));
+    }
+
+    @Test
+    public void testLastArgument() {
+        assertEquals("c", Formatter.formatMessage(mcm, "1%-1$s", "a", "b", "c"));
+        assertEquals("a", Formatter.formatMessage(mcm, "1%-1$s", "a"));
+    }
+
+    @Test
+    public void testLiteralsAndFlags() {
+        assertEquals("[ab   ] 100%", Formatter.formatMessage(mcm,
+                "1[%1$-5s] %2$s%%", "ab", "100"));
+        assertEquals("a b a", Formatter.formatMessage(mcm, "1%s %s %1$s", "a", "b"));
+    }
+
+    @Test
+    public void testDates() {
+        final java.util.Date date = new java.util.Date();
+        assertEquals(String.format("%1$tH:%1$tM", date),
+                Formatter.formatMessage(mcm, "1%1$tH:%<tM", date));
+    }
+
     @Test
     public void testFormatDuration() {
         assertEquals("1 minute, 1 second", Formatter.formatMessage(mcm, "1%1$u", "61"));
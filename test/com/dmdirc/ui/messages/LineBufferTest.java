@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LineBufferTest {
+
+    private Line line(final String text) {
+        return new Line(null, new String[]{text}, 12, "Dialog");
+    }
+
+    @Test
+    public void testAddAndGet() {
+        final LineBuffer buffer = new LineBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.add(line("line " + i));
+        }
+
+        assertEquals(100, buffer.size());
+        assertEquals("line 0", buffer.get(0).getStyledText());
+        assertEquals("line 99", buffer.get(99).getStyledText());
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testGetOutOfRange() {
+        final LineBuffer buffer = new LineBuffer();
+        buffer.add(line("foo"));
+        buffer.get(1);
+    }
+
+    @Test
+    public void testTrimKeepsNewestLines() {
+        final LineBuffer buffer = new LineBuffer();
+        for (int i = 0; i < 50; i++) {
+            buffer.add(line("line " + i));
+        }
+
+        assertEquals(0, buffer.trim(60));
+        assertEquals(40, buffer.trim(10));
+        assertEquals(10, buffer.size());
+        assertEquals("line 40", buffer.get(0).getStyledText());
+        assertEquals("line 49", buffer.get(9).getStyledText());
+    }
+
+    @Test
+    public void testWrapAround() {
+        final LineBuffer buffer = new LineBuffer();
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(line(String.valueOf(i)));
+            buffer.trim(10);
+        }
+
+        assertEquals(10, buffer.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(String.valueOf(990 + i), buffer.get(i).getStyledText());
+        }
+    }
+
+    @Test
+    public void testLineNumbers() {
+        final LineBuffer buffer = new LineBuffer();
+        for (int i = 0; i < 20; i++) {
+            buffer.add(line(String.valueOf(i)));
+        }
+        buffer.trim(5);
+
+        assertEquals(15, buffer.getFirstLineNumber());
+        assertNull(buffer.getByLineNumber(14));
+        assertEquals("17", buffer.getByLineNumber(17).getStyledText());
+        assertNull(buffer.getByLineNumber(20));
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(20, buffer.getFirstLineNumber());
+    }
+
+    @Test
+    public void testTrimChars() {
+        final LineBuffer buffer = new LineBuffer();
+        for (int i = 0; i < 10; i++) {
+            buffer.add(line("abcde"));
+        }
+
+        assertEquals(50, buffer.getRetainedChars());
+        assertEquals(6, buffer.trimChars(20));
+        assertEquals(4, buffer.size());
+        assertEquals(20, buffer.getRetainedChars());
+        assertEquals(3, buffer.trimChars(0));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void testAddFirst() {
+        final LineBuffer buffer = new LineBuffer();
+        for (int i = 50; i < 100; i++) {
+            buffer.add(line("line " + i));
+        }
+        for (int i = 49; i >= 0; i--) {
+            buffer.addFirst(line("line " + i));
+        }
+
+        assertEquals(100, buffer.size());
+        assertEquals(-50, buffer.getFirstLineNumber());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("line " + i, buffer.get(i).getStyledText());
+            assertEquals("line " + i, buffer.getByLineNumber(i - 50).getStyledText());
+        }
+        assertNull(buffer.getByLineNumber(-51));
+
+        assertEquals(90, buffer.trim(10));
+        assertEquals("line 90", buffer.get(0).getStyledText());
+        assertEquals("line 99", buffer.get(9).getStyledText());
+    }
+
+}
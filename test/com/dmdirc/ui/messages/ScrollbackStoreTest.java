@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScrollbackStoreTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("scrollback", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private void fill(final ScrollbackStore store, final int count)
+            throws IOException {
+        for (int i = 0; i < count; i++) {
+            store.append(new String[]{"12:00 ", "line " + i}, i * 1000L);
+        }
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        final ScrollbackStore store = new ScrollbackStore(directory);
+        store.append(new String[]{"foo", "bär ☃"}, 1);
+        store.append(new String[0], 2);
+
+        final List<String[]> lines = store.read(0, 10);
+        assertEquals(2, lines.size());
+        assertArrayEquals(new String[]{"foo", "bär ☃"}, lines.get(0));
+        assertEquals(0, lines.get(1).length);
+        store.close();
+    }
+
+    @Test
+    public void testAppendsAreBuffered() throws IOException {
+        final ScrollbackStore store = new ScrollbackStore(directory);
+        fill(store, 10);
+
+        final File segment = new File(directory, String.format("%019d.log", 0));
+        assertEquals(0, segment.length());
+        store.flush();
+        assertTrue(segment.length() > 0);
+
+        fill(store, 10);
+        assertEquals(10, store.read(5, 10).size());
+        store.close();
+    }
+
+    @Test
+    public void testQueuedLinesWrittenInBackground() throws IOException,
+            InterruptedException {
+        final ScrollbackStore store = new ScrollbackStore(directory);
+        fill(store, 10);
+
+        final File segment = new File(directory, String.format("%019d.log", 0));
+        final long deadline = System.currentTimeMillis()
+                + ScrollbackStore.MAX_FLUSH_DELAY + 5000;
+        while (segment.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertTrue(segment.length() > 0);
+        store.close();
+    }
+
+    @Test
+    public void testReadAcrossSegments() throws IOException {
+        final ScrollbackStore store = new ScrollbackStore(directory, 256);
+        fill(store, 500);
+
+        assertEquals(500, store.getNextLineNumber());
+        final List<String[]> lines = store.read(195, 10);
+        assertEquals(10, lines.size());
+        assertEquals("line 195", lines.get(0)[1]);
+        assertEquals("line 204", lines.get(9)[1]);
+        assertEquals(5, store.read(495, 10).size());
+        store.close();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        ScrollbackStore store = new ScrollbackStore(directory, 1024);
+        fill(store, 300);
+        store.close();
+
+        store = new ScrollbackStore(directory, 1024);
+        assertEquals(300, store.getNextLineNumber());
+        store.append(new String[]{"new"}, 0);
+        assertEquals("line 299", store.read(299, 1).get(0)[1]);
+        assertEquals("new", store.read(300, 1).get(0)[0]);
+        store.close();
+    }
+
+    @Test
+    public void testRecoversFromPartialRecord() throws IOException {
+        ScrollbackStore store = new ScrollbackStore(directory);
+        fill(store, 100);
+        store.close();
+
+        final File segment = new File(directory, String.format("%019d.log", 0));
+        final RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+        new File(directory, String.format("%019d.idx", 0)).delete();
+
+        store = new ScrollbackStore(directory);
+        assertEquals(99, store.getNextLineNumber());
+        assertEquals("line 98", store.read(98, 1).get(0)[1]);
+        store.close();
+    }
+
+    @Test
+    public void testFindLine() throws IOException {
+        final ScrollbackStore store = new ScrollbackStore(directory);
+        fill(store, 500);
+
+        assertEquals(0, store.findLine(0));
+        assertEquals(128, store.findLine(100 * 1000L));
+        assertEquals(500, store.findLine(1000 * 1000L));
+        store.close();
+    }
+
+    @Test
+    public void testMaxSize() throws IOException {
+        final ScrollbackStore store = new ScrollbackStore(directory, 256);
+        fill(store, 500);
+        store.flush();
+        store.setMaxSize(1024);
+
+        assertTrue(store.getFirstLineNumber() > 0);
+        assertEquals("line 499", store.read(499, 1).get(0)[1]);
+        assertEquals(0, store.read(0, 1).size());
+        assertEquals("line " + store.getFirstLineNumber(),
+                store.read(0, (int) store.getFirstLineNumber() + 1).get(0)[1]);
+        store.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    @Test
+    public void testFindsMatchingLines() {
+        final SearchIndex index = new SearchIndex();
+        index.add(0, "hello world");
+        index.add(1, "goodbye world");
+        index.add(2, "hello again");
+
+        assertArrayEquals(new long[]{0, 2}, index.getCandidates("hello", 0));
+        assertArrayEquals(new long[]{0, 1}, index.getCandidates("world", 0));
+        assertArrayEquals(new long[]{1}, index.getCandidates("bye w", 0));
+    }
+
+    @Test
+    public void testLinesAddedBeforeStart() {
+        final SearchIndex index = new SearchIndex();
+        index.add(10, "hello world");
+        index.add(11, "hello again");
+        index.add(9, "hello there");
+        index.add(8, "goodbye world");
+        index.add(9, "hello there");
+
+        assertArrayEquals(new long[]{9, 10, 11}, index.getCandidates("hello", 0));
+        assertArrayEquals(new long[]{8, 10}, index.getCandidates("world", 0));
+        assertArrayEquals(new long[]{10, 11}, index.getCandidates("hello", 10));
+    }
+
+    @Test
+    public void testNoMatches() {
+        final SearchIndex index = new SearchIndex();
+        index.add(0, "hello world");
+
+        assertEquals(0, index.getCandidates("xyz", 0).length);
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        final SearchIndex index = new SearchIndex();
+        index.add(0, "Hello World");
+
+        assertArrayEquals(new long[]{0}, index.getCandidates("hELLO", 0));
+    }
+
+    @Test
+    public void testDiscardsTrimmedLines() {
+        final SearchIndex index = new SearchIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(i, "line " + i);
+        }
+
+        final long[] candidates = index.getCandidates("line", 95);
+        assertArrayEquals(new long[]{95, 96, 97, 98, 99}, candidates);
+    }
+
+    @Test
+    public void testClear() {
+        final SearchIndex index = new SearchIndex();
+        index.add(0, "hello world");
+        index.clear();
+
+        assertEquals(0, index.getCandidates("hello", 0).length);
+    }
+
+    @Test
+    public void testDiscardBeforePrunesAllGrams() {
+        final SearchIndex index = new SearchIndex();
+        index.add(0, "abcdef");
+        index.add(1, "uvwxyz");
+        final int grams = index.getGramCount();
+
+        index.discardBefore(1);
+        assertEquals(grams / 2, index.getGramCount());
+        assertEquals(0, index.getCandidates("abc", 1).length);
+        assertArrayEquals(new long[]{1}, index.getCandidates("xyz", 1));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2006-2011 Chris Smith, Shane Mc Cormack, Gregory Holmes
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.ui.messages;
+
+import java.text.AttributedString;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StyledLineCacheTest {
+
+    private Line line(final String text) {
+        return new Line(null, new String[]{text}, 12, "Dialog");
+    }
+
+    @Test
+    public void testLineNumberKeys() {
+        final StyledLineCache cache = new StyledLineCache(10000);
+        final AttributedString styled = new AttributedString("foo");
+
+        cache.put(1, line("foo"), styled);
+        assertSame(styled, cache.get(1));
+        assertNull(cache.get(2));
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final StyledLineCache cache = new StyledLineCache(1000);
+
+        cache.put(1, line("one"), new AttributedString("one"));
+        cache.put(2, line("two"), new AttributedString("two"));
+        cache.setMaxSize(cache.getSize());
+        cache.get(1);
+        cache.put(3, line("six"), new AttributedString("six"));
+
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+
+    @Test
+    public void testClear() {
+        final StyledLineCache cache = new StyledLineCache(1000);
+        cache.put(1, line("foo"), new AttributedString("foo"));
+        cache.clear();
+
+        assertEquals(0, cache.getLineCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testRemove() {
+        final StyledLineCache cache = new StyledLineCache(10000);
+
+        cache.put(1, line("foo"), new AttributedString("foo"));
+        cache.put(2, line("bar"), new AttributedString("bar"));
+        final long size = cache.getSize();
+
+        cache.remove(1);
+        assertFalse(cache.contains(1));
+        assertTrue(cache.contains(2));
+        assertEquals(1, cache.getLineCount());
+        assertTrue(cache.getSize() < size);
+
+        cache.remove(2);
+        assertEquals(0, cache.getSize());
+    }
+
+}
@@ -27,6 +27,8 @@ import com.dmdirc.config.ConfigManager;
 import com.dmdirc.config.IdentityManager;
 import com.dmdirc.config.InvalidIdentityFileException;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -57,6 +59,42 @@ public class StyliserTest {
         assertEquals(expResult, result);
     }
 
+    @Test
+    public void testStripControlCodesArguments() {
+        String input = ((char) 3) + "12,05This" + ((char) 3) + "4, is "
+                + ((char) 4) + "FF0000,00FF00a " + ((char) 4) + "test";
+
+        assertEquals("This, is a test", Styliser.stipControlCodes(input));
+    }
+
+    @Test
+    public void testStripTooltips() {
+        String input = "This " + ((char) 19) + "tip" + ((char) 19) + "is"
+                + ((char) 19) + " a test" + ((char) 19);
+
+        assertEquals("This is a test" + ((char) 19),
+                Styliser.stipControlCodes(input));
+    }
+
+    @Test
+    public void testSmilies() {
+        final ConfigManager manager = mock(ConfigManager.class);
+        final Map<String, String> icons = new HashMap<String, String>();
+        icons.put("smilie-:)", "smile.png");
+        icons.put("nosmilie", "foo.png");
+        when(manager.getOptions("icon")).thenReturn(icons);
+
+        final Styliser styliser = new Styliser(null, manager);
+        assertEquals("hi " + ((char) 7) + ":)" + ((char) 7) + " there :):)",
+                styliser.doSmilies("hi :) there :):)"));
+
+        icons.put("smilie-:):)", "smiles.png");
+        styliser.configChanged("icon", "smilie-:):)");
+        assertEquals("hi " + ((char) 7) + ":)" + ((char) 7) + " there "
+                + ((char) 7) + ":):)" + ((char) 7),
+                styliser.doSmilies("hi :) there :):)"));
+    }
+
     @Test
     public void testReadUntilControl1() {
         String input = "This"+((char) 2)+" is "+((char) 17)+"a test";